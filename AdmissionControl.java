@@ -0,0 +1,222 @@
+package com.example.timetableapp;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Admission control for the command dispatcher.
+// At most WORKERS commands execute at once; the rest wait in one bounded queue per priority class. A freed slot
+// always goes to the oldest waiting READ, then WRITE, then BULK command, and BULK commands (IMPORT_CSV,
+// IMPORT_ICS, EARLY_LECTURES, SYNC) never hold more than BULK_WORKERS slots, so interactive reads keep a free path while bulk work
+// runs. A command is shed (the client gets BUSY) when the waiting queue is full or it waits longer than MAX_WAIT_MS.
+// Each connection also has a token bucket (TokenBucket) so one client cannot take the whole capacity.
+public final class AdmissionControl {
+    public enum Priority { READ, WRITE, BULK }
+
+    static final int WORKERS = Integer.getInteger("timetable.admission.workers",
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    static final int BULK_WORKERS = Integer.getInteger("timetable.admission.bulkWorkers", 1);
+    static final int QUEUE = Integer.getInteger("timetable.admission.queue", 256);
+    static final long MAX_WAIT_MS = Long.getLong("timetable.admission.maxWaitMs", 2000);
+    static final double RATE = Double.parseDouble(System.getProperty("timetable.admission.rate", "200"));
+    static final double BURST = Double.parseDouble(System.getProperty("timetable.admission.burst", "400"));
+
+    private final ReentrantLock lock = new ReentrantLock();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Ticket>[] waiting = new ArrayDeque[Priority.values().length];   // guarded by lock
+    private int running;        // guarded by lock
+    private int runningBulk;    // guarded by lock
+    private int queued;         // guarded by lock
+    private final LongAdder shedQueueFull = new LongAdder();
+    private final LongAdder shedTimeout = new LongAdder();
+    private final LongAdder shedRateLimited = new LongAdder();
+    private final LongAdder admitted = new LongAdder();
+
+    private static final class Ticket {
+        final Condition granted;
+        boolean admitted;
+
+        Ticket(Condition granted) {
+            this.granted = granted;
+        }
+    }
+
+    public AdmissionControl() {
+        for (Priority p : Priority.values())
+            waiting[p.ordinal()] = new ArrayDeque<>();
+    }
+
+    // Which class a protocol command belongs to, or null for commands that bypass admission (connection control
+    // and monitoring, which must keep working when the server is overloaded).
+    public static Priority classify(String command) {
+        switch (ServerMetrics.commandName(command)) {
+            case "VIEW_TIMETABLE":
+            case "VIEW_HISTORY":
+            case "GET_LECTURES":
+            case "CHANGES":
+            case "STATS_HOURS":
+            case "OCCURRENCES":
+            case "EXPORT_ICS":
+            case "QUERY":
+            case "RESOURCE":
+            case "HOLDS":
+            case "MIN_VERSION":
+                return Priority.READ;
+            case "IMPORT_CSV":
+            case "EARLY_LECTURES":
+            case "IMPORT_ICS":
+            case "SYNC":
+                return Priority.BULK;
+            case "STATS":
+            case "VERSION":
+            case "PROMOTE":
+            case "COMPRESS":
+            case "PING":
+            case "STOP_CONNECTION":
+                return null;
+            default:
+                return Priority.WRITE;
+        }
+    }
+
+    // Blocks until the command may run. Returns false if it was shed; otherwise the caller must call release().
+    public boolean acquire(Priority priority) throws InterruptedException {
+        lock.lock();
+        try {
+            if (canRun(priority) && !waitingAtOrAbove(priority)) {
+                start(priority);
+                return true;
+            }
+            if (queued >= QUEUE) {
+                shedQueueFull.increment();
+                return false;
+            }
+            Ticket ticket = new Ticket(lock.newCondition());
+            waiting[priority.ordinal()].addLast(ticket);
+            queued++;
+            long remaining = TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MS);
+            try {
+                while (!ticket.admitted) {
+                    if (remaining <= 0) {
+                        waiting[priority.ordinal()].remove(ticket);
+                        queued--;
+                        shedTimeout.increment();
+                        return false;
+                    }
+                    remaining = ticket.granted.awaitNanos(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                if (ticket.admitted)
+                    releaseLocked(priority);
+                else {
+                    waiting[priority.ordinal()].remove(ticket);
+                    queued--;
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(Priority priority) {
+        lock.lock();
+        try {
+            releaseLocked(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked(Priority priority) {
+        running--;
+        if (priority == Priority.BULK)
+            runningBulk--;
+        // Hand freed slots to waiters in priority order; a BULK waiter at its cap does not block those behind it.
+        for (Priority p : Priority.values()) {
+            ArrayDeque<Ticket> queue = waiting[p.ordinal()];
+            while (!queue.isEmpty() && canRun(p)) {
+                Ticket next = queue.pollFirst();
+                queued--;
+                start(p);
+                next.admitted = true;
+                next.granted.signal();
+            }
+        }
+    }
+
+    // Whether anyone of this or a higher priority is already waiting (FIFO within a class, no overtaking).
+    private boolean waitingAtOrAbove(Priority priority) {
+        for (int p = 0; p <= priority.ordinal(); p++) {
+            if (!waiting[p].isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    private boolean canRun(Priority priority) {
+        return running < WORKERS && (priority != Priority.BULK || runningBulk < BULK_WORKERS);
+    }
+
+    private void start(Priority priority) {
+        running++;
+        if (priority == Priority.BULK)
+            runningBulk++;
+        admitted.increment();
+    }
+
+    void recordRateLimited() {
+        shedRateLimited.increment();
+    }
+
+    // key=value lines for STATS.
+    String report() {
+        int run, wait;
+        lock.lock();
+        try {
+            run = running;
+            wait = queued;
+        } finally {
+            lock.unlock();
+        }
+        return "admission.running=" + run + "\n"
+                + "admission.queued=" + wait + "\n"
+                + "admission.admitted=" + admitted.sum() + "\n"
+                + "admission.shed.queueFull=" + shedQueueFull.sum() + "\n"
+                + "admission.shed.timeout=" + shedTimeout.sum() + "\n"
+                + "admission.shed.rateLimited=" + shedRateLimited.sum() + "\n";
+    }
+
+    //---------------------- Per-connection rate limit ----------------------
+    // Classic token bucket: `rate` tokens per second up to `burst`; each command takes one. Owned by one
+    // connection's handler thread, so it needs no synchronization.
+    public static final class TokenBucket {
+        private final double rate;
+        private final double burst;
+        private double tokens;
+        private long last = System.nanoTime();
+
+        public TokenBucket() {
+            this(RATE, BURST);
+        }
+
+        public TokenBucket(double rate, double burst) {
+            this.rate = rate;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        public boolean tryTake() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - last) * rate / 1e9);
+            last = now;
+            if (tokens < 1)
+                return false;
+            tokens -= 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.timetableapp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Asynchronous server log.
+// Callers enqueue onto a lock-free queue and return immediately; a single daemon thread formats events,
+// writes them in batches and rolls the file by size. When the queue is full new events are dropped and
+// counted instead of blocking the request path.
+//
+// Configured with system properties:
+//   timetable.log.level       TRACE, DEBUG, INFO, WARN, ERROR or OFF (default INFO)
+//   timetable.log.file        log file path (default timetable-server.log)
+//   timetable.log.maxBytes    size at which the file is rolled (default 10 MB)
+//   timetable.log.files       rolled files kept, as file.1 .. file.N (default 5)
+//   timetable.log.queue       maximum queued events (default 65536)
+//   timetable.log.traceSample log one in N command traces per connection (default 100)
+public final class AsyncLog {
+
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final int BATCH = 512;
+
+    private static final Level level = Level.valueOf(System.getProperty("timetable.log.level", "INFO").toUpperCase());
+    private static final String fileName = System.getProperty("timetable.log.file", "timetable-server.log");
+    private static final long maxBytes = Long.getLong("timetable.log.maxBytes", 10L * 1024 * 1024);
+    private static final int maxFiles = Integer.getInteger("timetable.log.files", 5);
+    private static final int capacity = Integer.getInteger("timetable.log.queue", 65536);
+    static final int traceSample = Math.max(1, Integer.getInteger("timetable.log.traceSample", 100));
+
+    private static final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final LongAdder dropped = new LongAdder();
+    private static final Thread writer;
+
+    static {
+        writer = new Thread(AsyncLog::drainLoop, "async-log-writer");
+        writer.setDaemon(true);
+        if (level != Level.OFF)
+            writer.start();
+    }
+
+    private AsyncLog() {
+    }
+
+    //---------------------- Producer side ----------------------
+    public static boolean isEnabled(Level l) {
+        return l.compareTo(level) >= 0 && level != Level.OFF;
+    }
+
+    public static void trace(String message) { log(Level.TRACE, message, null); }
+    public static void debug(String message) { log(Level.DEBUG, message, null); }
+    public static void info(String message) { log(Level.INFO, message, null); }
+    public static void warn(String message) { log(Level.WARN, message, null); }
+    public static void error(String message, Throwable t) { log(Level.ERROR, message, t); }
+
+    public static void log(Level l, String message, Throwable t) {
+        if (!isEnabled(l))
+            return;
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(new Event(System.currentTimeMillis(), l, Thread.currentThread().getName(), message, t));
+    }
+
+    public static long droppedCount() {
+        return dropped.sum();
+    }
+
+    // Per-connection sampler for high-volume traces: lets through the first and then every Nth event.
+    public static final class Sampler {
+        private long seen;
+
+        public boolean sample() {
+            return isEnabled(Level.TRACE) && seen++ % traceSample == 0;
+        }
+    }
+
+    //---------------------- Writer thread ----------------------
+    private static void drainLoop() {
+        File file = new File(fileName);
+        Writer out = null;
+        long written = file.length();
+        StringBuilder batch = new StringBuilder(16 * 1024);
+        while (true) {
+            try {
+                if (out == null)
+                    out = open(file);
+                int n = 0;
+                Event e;
+                while (n < BATCH && (e = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    format(e, batch);
+                    n++;
+                }
+                if (n == 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+                    continue;
+                }
+                out.write(batch.toString());
+                out.flush();
+                written += batch.length();
+                batch.setLength(0);
+                if (written >= maxBytes) {
+                    out.close();
+                    out = null;
+                    roll(file);
+                    written = 0;
+                }
+            } catch (IOException ex) {
+                // Nowhere left to report to; discard the batch and retry the file after a pause. The writer is
+                // closed so its descriptor is not leaked, and the size is re-read because a failed write (or a
+                // roll that failed halfway) leaves the file at an unknown length.
+                dropped.increment();
+                batch.setLength(0);
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                    }
+                    out = null;
+                }
+                written = file.length();
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private static void roll(File file) {
+        new File(file.getPath() + "." + maxFiles).delete();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File from = new File(file.getPath() + "." + i);
+            if (from.exists())
+                from.renameTo(new File(file.getPath() + "." + (i + 1)));
+        }
+        file.renameTo(new File(file.getPath() + ".1"));
+    }
+
+    private static void format(Event e, StringBuilder sb) {
+        sb.append(TIMESTAMP.format(Instant.ofEpochMilli(e.time))).append(' ')
+                .append(String.format("%-5s", e.level)).append(" [").append(e.thread).append("] ")
+                .append(e.message).append('\n');
+        if (e.error != null) {
+            StringWriter trace = new StringWriter();
+            e.error.printStackTrace(new PrintWriter(trace));
+            sb.append(trace);
+        }
+    }
+
+    private record Event(long time, Level level, String thread, String message, Throwable error) {
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.timetableapp;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closes client connections that have gone quiet, from one thread for all of them.
+// Each session sits in one bucket of a hashed timer wheel (WHEEL_SIZE buckets of TICK_MS). Sessions are not
+// rescheduled on every command; when a bucket comes round the reaper looks at each session's state and either
+// closes it or puts it back in the bucket of its current deadline, so a busy connection costs nothing between
+// checks and there is no timer per connection. No session goes unchecked for longer than READ_TIMEOUT_MS, so a
+// request body that stalls is noticed within twice the read timeout whatever the idle timeout is.
+//   waiting for a command:            closed after IDLE_TIMEOUT_MS without one (PING counts)
+//   receiving a request body (CSV):   closed after READ_TIMEOUT_MS without a byte
+//   executing a command:              never closed
+public final class ConnectionReaper {
+    static final long IDLE_TIMEOUT_MS = Long.getLong("timetable.conn.idleTimeoutMs", 300_000);
+    static final long READ_TIMEOUT_MS = Long.getLong("timetable.conn.readTimeoutMs", 30_000);
+    static final long TICK_MS = Long.getLong("timetable.conn.tickMs", 1000);
+    private static final int WHEEL_SIZE = 512;
+
+    private enum State { WAITING, RECEIVING, EXECUTING }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentLinkedQueue<Session>[] wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final LongAdder reapedIdle = new LongAdder();
+    private final LongAdder reapedReadTimeout = new LongAdder();
+    private volatile long currentTick;   // written by the reaper thread only
+
+    public ConnectionReaper() {
+        for (int i = 0; i < WHEEL_SIZE; i++)
+            wheel[i] = new ConcurrentLinkedQueue<>();
+    }
+
+    public Session register(Closeable connection) {
+        if (started.compareAndSet(false, true)) {
+            Thread reaper = new Thread(this::run, "connection-reaper");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+        Session session = new Session(connection);
+        sessions.add(session);
+        schedule(session, session.since + Math.min(IDLE_TIMEOUT_MS, READ_TIMEOUT_MS));
+        return session;
+    }
+
+    // Puts the session in the bucket of its deadline; anything beyond one turn of the wheel is checked after one
+    // turn and rescheduled then.
+    private void schedule(Session session, long deadline) {
+        long ticks = Math.max(1, Math.min(WHEEL_SIZE - 1, (deadline - System.currentTimeMillis() + TICK_MS - 1) / TICK_MS));
+        wheel[(int) ((currentTick + ticks) % WHEEL_SIZE)].add(session);
+    }
+
+    private void run() {
+        long next = System.currentTimeMillis() + TICK_MS;
+        while (true) {
+            try {
+                Thread.sleep(Math.max(0, next - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                return;
+            }
+            next += TICK_MS;
+            currentTick++;
+            ConcurrentLinkedQueue<Session> bucket = wheel[(int) (currentTick % WHEEL_SIZE)];
+            // Only what is in the bucket now: sessions rescheduled during this pass land in other buckets.
+            for (int n = bucket.size(); n > 0; n--) {
+                Session session = bucket.poll();
+                if (session == null)
+                    break;
+                check(session);
+            }
+        }
+    }
+
+    private void check(Session session) {
+        if (session.closed)
+            return;
+        long now = System.currentTimeMillis();
+        long deadline;
+        LongAdder counter;
+        switch (session.state) {
+            case WAITING:
+                deadline = session.since + IDLE_TIMEOUT_MS;
+                counter = reapedIdle;
+                break;
+            case RECEIVING:
+                deadline = session.lastRead + READ_TIMEOUT_MS;
+                counter = reapedReadTimeout;
+                break;
+            default:
+                schedule(session, now + READ_TIMEOUT_MS);
+                return;
+        }
+        if (now < deadline) {
+            schedule(session, Math.min(deadline, now + READ_TIMEOUT_MS));
+            return;
+        }
+        counter.increment();
+        AsyncLog.info("Closing " + (counter == reapedIdle ? "idle" : "stalled") + " connection");
+        session.close();
+        try {
+            session.connection.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    //---------------------- Gauges ----------------------
+    public int openSessions() {
+        return sessions.size();
+    }
+
+    // Connections currently waiting for their next command.
+    public int idleSessions() {
+        int idle = 0;
+        for (Session s : sessions) {
+            if (s.state == State.WAITING)
+                idle++;
+        }
+        return idle;
+    }
+
+    public long reapedIdle() {
+        return reapedIdle.sum();
+    }
+
+    public long reapedReadTimeout() {
+        return reapedReadTimeout.sum();
+    }
+
+    //---------------------- Session ----------------------
+    // Per-connection state, updated by the connection's handler thread and read by the reaper.
+    public final class Session {
+        private final Closeable connection;
+        private volatile State state = State.WAITING;
+        private volatile long since = System.currentTimeMillis();
+        private volatile long lastRead = since;
+        private volatile boolean closed;
+
+        private Session(Closeable connection) {
+            this.connection = connection;
+        }
+
+        public void waiting() {
+            enter(State.WAITING);
+        }
+
+        public void receiving() {
+            lastRead = System.currentTimeMillis();
+            enter(State.RECEIVING);
+        }
+
+        public void executing() {
+            enter(State.EXECUTING);
+        }
+
+        private void enter(State next) {
+            since = System.currentTimeMillis();
+            state = next;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        // Unregisters the session; the reaper drops it the next time its bucket comes round.
+        public void close() {
+            closed = true;
+            sessions.remove(this);
+        }
+
+        // Stream wrapper that records when bytes last arrived, for the read timeout.
+        public InputStream track(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    lastRead = System.currentTimeMillis();
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buf, int off, int len) throws IOException {
+                    int n = super.read(buf, off, len);
+                    lastRead = System.currentTimeMillis();
+                    return n;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.timetableapp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Consistent-hash ring: each node owns the keys hashing between its predecessor's points and its own.
+// Nodes are placed at many virtual points so load stays even, and adding a node only moves the keys that land
+// on the new node's points; every other key keeps its owner. Immutable, so a router can swap rings atomically.
+public final class ConsistentHashRing {
+    private final int virtualNodes;
+    private final TreeMap<Long, String> points = new TreeMap<>();
+    private final List<String> nodes;
+
+    public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty())
+            throw new IllegalArgumentException("A ring needs at least one node.");
+        this.virtualNodes = virtualNodes;
+        this.nodes = List.copyOf(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++)
+                points.put(hash(node + "#" + i), node);
+        }
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public String nodeFor(String key) {
+        Map.Entry<Long, String> e = points.ceilingEntry(hash(key));
+        return e != null ? e.getValue() : points.firstEntry().getValue();
+    }
+
+    public ConsistentHashRing withNode(String node) {
+        if (nodes.contains(node))
+            return this;
+        List<String> grown = new ArrayList<>(nodes);
+        grown.add(node);
+        return new ConsistentHashRing(grown, virtualNodes);
+    }
+
+    // First 8 bytes of MD5: cheap, stable across JVMs and well spread, which String.hashCode is not.
+    private static long hash(String key) {
+        try {
+            byte[] d = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++)
+                h = (h << 8) | (d[i] & 0xff);
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
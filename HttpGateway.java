@@ -0,0 +1,570 @@
+package com.example.timetableapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Optional HTTP/JSON front door next to the socket protocol, on the JDK's built-in server with one virtual thread
+// per exchange. Writes go through the same ClientHandler code (and so the same lock, log and history) as socket
+// clients; reads render straight from a snapshot.
+//   GET    /lectures[?asOf=<version|timestamp>]         all lectures, streamed as a chunked JSON array
+//   GET    /lectures/{day}/{time}[?asOf=...]            one lecture
+//   POST   /lectures                                    {"day","time","className","module","type"}
+//   DELETE /lectures/{day}/{time}                       remove (undoable)
+//   POST   /lectures/{day}/{time}/restore               undo a remove
+//   GET    /history                                     history entries, streamed as a chunked JSON array
+//   POST   /imports[?mode=merge]                        text/csv body in the IMPORT_CSV layout; replaces the timetable,
+//                                                       or with mode=merge applies only the slots that differ
+//   GET    /calendar.ics[?from=<date>&asOf=...]         the timetable as iCalendar (text/calendar), streamed
+//   POST   /calendar.ics                                text/calendar body; events merged into their slots
+// GET responses carry an ETag (the snapshot or log version) and answer If-None-Match with 304.
+// Requests share the socket commands' admission queue (GETs as reads, imports as bulk); shed requests get 503.
+public class HttpGateway {
+    private final int port;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public HttpGateway(int port) {
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/lectures", this::lectures);
+        server.createContext("/history", this::history);
+        server.createContext("/imports", this::imports);
+        server.createContext("/calendar.ics", this::calendar);
+        server.start();
+        AsyncLog.info("HTTP gateway listening on port " + port);
+    }
+
+    public void stop() {
+        if (server != null)
+            server.stop(0);
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    //---------------------- Resources ----------------------
+    private void lectures(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            AdmissionControl.Priority priority = exchange.getRequestMethod().equals("GET")
+                    ? AdmissionControl.Priority.READ : AdmissionControl.Priority.WRITE;
+            if (!admit(exchange, priority))
+                return;
+            try {
+                routeLectures(exchange);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } finally {
+                TimetableServer.admission.release(priority);
+            }
+        }
+    }
+
+    private void routeLectures(HttpExchange exchange) throws IOException {
+        String[] path = segments(exchange, "/lectures");
+        String method = exchange.getRequestMethod();
+        if (path.length == 0 && method.equals("GET")) {
+            listLectures(exchange);
+        } else if (path.length == 0 && method.equals("POST")) {
+            addLecture(exchange);
+        } else if (path.length == 2 && method.equals("GET")) {
+            getLecture(exchange, path[0], path[1]);
+        } else if (path.length == 2 && method.equals("DELETE")) {
+            reply(exchange, command("REMOVE_LECTURE," + path[0] + "," + path[1]),
+                    "Lecture removed", 200, "No lecture scheduled", 404);
+        } else if (path.length == 3 && path[2].equals("restore") && method.equals("POST")) {
+            reply(exchange, command("UNDO_REMOVE," + path[0] + "," + path[1]),
+                    "Undo successful", 200, "No lecture to undo", 404);
+        } else {
+            sendError(exchange, path.length <= 3 ? 405 : 404, "No such resource or method.");
+        }
+    }
+
+    private void listLectures(HttpExchange exchange) throws IOException {
+        TimetableSnapshot snapshot = snapshot(exchange);
+        String q = query(exchange).get("q");
+        // Compiled before any response is sent, so a bad query is still a 400.
+        LectureQuery filter = q == null ? null : LectureQuery.compile(q);
+        if (notModified(exchange, String.valueOf(snapshot.version())))
+            return;
+        if (filter != null) {
+            try (Writer out = streamJson(exchange, 200)) {
+                out.write('[');
+                boolean[] first = {true};
+                filter.run(snapshot, lecture -> {
+                    try {
+                        if (!first[0])
+                            out.write(',');
+                        first[0] = false;
+                        writeLecture(out, lecture);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                out.write("]\n");
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+        List<String> days = new ArrayList<>(snapshot.days());
+        Collections.sort(days);
+        try (Writer out = streamJson(exchange, 200)) {
+            out.write('[');
+            boolean first = true;
+            for (String day : days) {
+                List<TimetableServer.Lecture> slots = new ArrayList<>(snapshot.day(day).values());
+                slots.sort(Comparator.comparingInt(TimetableServer.Lecture::slotOrdinal));
+                for (TimetableServer.Lecture lecture : slots) {
+                    if (!first)
+                        out.write(',');
+                    first = false;
+                    writeLecture(out, lecture);
+                }
+            }
+            out.write("]\n");
+        }
+    }
+
+    private void getLecture(HttpExchange exchange, String day, String time) throws IOException {
+        TimetableSnapshot snapshot = snapshot(exchange);
+        TimetableServer.Lecture lecture = snapshot.get(day, time);
+        if (lecture == null) {
+            sendError(exchange, 404, "No lecture scheduled in this time slot.");
+            return;
+        }
+        if (notModified(exchange, String.valueOf(snapshot.version())))
+            return;
+        try (Writer out = streamJson(exchange, 200)) {
+            writeLecture(out, lecture);
+            out.write('\n');
+        }
+    }
+
+    private void addLecture(HttpExchange exchange) throws IOException {
+        Map<String, String> body = parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String command = String.join(",", "ADD_LECTURE", field(body, "time"), field(body, "day"),
+                field(body, "className"), field(body, "module"), field(body, "type"),
+                optionalField(body, "room"), optionalField(body, "lecturer"));
+        reply(exchange, command(command), "Lecture added", 201, "Timeslot already taken", 409);
+    }
+
+    private void history(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (segments(exchange, "/history").length != 0 || !exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Only GET /history is supported.");
+                return;
+            }
+            if (!admit(exchange, AdmissionControl.Priority.READ))
+                return;
+            try (Writer out = historyBody(exchange)) {
+                if (out == null)
+                    return;
+                out.write('[');
+                // Indexed reads, one short lock each, so writers are never held up by a slow HTTP client.
+                List<String> log = TimetableServer.historyLog;
+                for (int i = 0; i < log.size(); i++) {
+                    String entry;
+                    try {
+                        entry = log.get(i);
+                    } catch (IndexOutOfBoundsException cleared) {
+                        break;   // a replica reinstalled its state mid-stream
+                    }
+                    if (i > 0)
+                        out.write(',');
+                    quote(out, entry);
+                }
+                out.write("]\n");
+            } finally {
+                TimetableServer.admission.release(AdmissionControl.Priority.READ);
+            }
+        }
+    }
+
+    // Every history entry is a logged record, so the log version changes whenever the history does.
+    // Null if the client's copy is current (304 already sent).
+    private static Writer historyBody(HttpExchange exchange) throws IOException {
+        if (notModified(exchange, String.valueOf(TimetableServer.replicationLog.version())))
+            return null;
+        return streamJson(exchange, 200);
+    }
+
+    private void imports(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (segments(exchange, "/imports").length != 0 || !exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "Only POST /imports is supported.");
+                return;
+            }
+            if (!admit(exchange, AdmissionControl.Priority.BULK))
+                return;
+            try {
+                importCsv(exchange);
+            } finally {
+                TimetableServer.admission.release(AdmissionControl.Priority.BULK);
+            }
+        }
+    }
+
+    private void importCsv(HttpExchange exchange) throws IOException {
+        // The body is fed to the IMPORT_CSV handler as the socket protocol would deliver it.
+        InputStream csv = new SequenceInputStream(new SequenceInputStream(
+                bytes("BEGIN_CSV\n"), exchange.getRequestBody()), bytes("\nEND_CSV\n"));
+        StringWriter response = new StringWriter();
+        TimetableServer.ClientHandler handler = new TimetableServer.ClientHandler(
+                new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8)), new PrintWriter(response, true));
+        handler.handleImportCSV("merge".equals(query(exchange).get("mode")));
+        reply(exchange, response.toString().trim(), "Timetable imported", 201, null, 0);
+    }
+
+    private void calendar(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (segments(exchange, "/calendar.ics").length != 0 || !(method.equals("GET") || method.equals("POST"))) {
+                sendError(exchange, 405, "Only GET and POST /calendar.ics are supported.");
+                return;
+            }
+            AdmissionControl.Priority priority = method.equals("GET")
+                    ? AdmissionControl.Priority.READ : AdmissionControl.Priority.BULK;
+            if (!admit(exchange, priority))
+                return;
+            try {
+                if (method.equals("GET"))
+                    exportCalendar(exchange);
+                else
+                    importCalendar(exchange);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } finally {
+                TimetableServer.admission.release(priority);
+            }
+        }
+    }
+
+    // The anchor week changes the output, so it is part of the ETag.
+    private static void exportCalendar(HttpExchange exchange) throws IOException {
+        TimetableSnapshot snapshot = snapshot(exchange);
+        String from = query(exchange).get("from");
+        LocalDate anchor;
+        try {
+            anchor = from == null ? LocalDate.now() : LocalDate.parse(from);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid from date: " + from);
+        }
+        if (notModified(exchange, snapshot.version() + "-" + anchor))
+            return;
+        exchange.getResponseHeaders().set("Content-Type", "text/calendar; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            IcsCalendar.write(snapshot, anchor, out);
+        }
+    }
+
+    // The body goes to the IMPORT_ICS handler unbuffered; it reads one event at a time.
+    private static void importCalendar(HttpExchange exchange) throws IOException {
+        StringWriter response = new StringWriter();
+        TimetableServer.ClientHandler handler = new TimetableServer.ClientHandler(
+                new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)),
+                new PrintWriter(response, true));
+        handler.handleImportIcs();
+        reply(exchange, response.toString().trim(), "Calendar imported", 201, null, 0);
+    }
+
+    //---------------------- Helpers ----------------------
+    // Waits for a slot in the shared admission queue; a shed request gets 503 with Retry-After.
+    private static boolean admit(HttpExchange exchange, AdmissionControl.Priority priority) throws IOException {
+        boolean admitted;
+        try {
+            admitted = TimetableServer.admission.acquire(priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "Server busy, retry later.");
+        }
+        return admitted;
+    }
+
+    // Runs one protocol command in-process and returns the reply text.
+    private static String command(String command) {
+        StringWriter response = new StringWriter();
+        TimetableServer.ClientHandler handler = new TimetableServer.ClientHandler(
+                new BufferedReader(new StringReader("")), new PrintWriter(response, true));
+        String name = ServerMetrics.commandName(command);
+        switch (name) {
+            case "ADD_LECTURE": handler.handleAddLecture(command); break;
+            case "REMOVE_LECTURE": handler.handleRemoveLecture(command); break;
+            case "UNDO_REMOVE": handler.handleUndoRemove(command); break;
+            default: throw new IllegalArgumentException(name);
+        }
+        return response.toString().trim();
+    }
+
+    // Maps a protocol reply to a status: success prefix, one expected failure prefix, READ_ONLY (503), else 400.
+    private static void reply(HttpExchange exchange, String message, String ok, int okStatus,
+                              String conflict, int conflictStatus) throws IOException {
+        int status;
+        if (message.startsWith(ok))
+            status = okStatus;
+        else if (conflict != null && message.startsWith(conflict))
+            status = conflictStatus;
+        else if (message.startsWith("Clash"))
+            status = 409;
+        else if (message.startsWith("READ_ONLY"))
+            status = 503;
+        else
+            status = 400;
+        sendJson(exchange, status, "{\"message\":" + quote(message) + "}\n");
+    }
+
+    private static TimetableSnapshot snapshot(HttpExchange exchange) {
+        String asOf = query(exchange).get("asOf");
+        return asOf == null ? TimetableServer.timetable.get() : TimetableServer.snapshotAsOf(asOf);
+    }
+
+    // Sets the ETag and answers 304 if the client already has this version.
+    private static boolean notModified(HttpExchange exchange, String version) throws IOException {
+        String etag = "\"" + version + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null || !(ifNoneMatch.equals(etag) || ifNoneMatch.equals("*")))
+            return false;
+        exchange.sendResponseHeaders(304, -1);
+        return true;
+    }
+
+    // Response length 0 = chunked transfer encoding: the body is written as it is produced.
+    private static Writer streamJson(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + quote(message) + "}\n");
+    }
+
+    private static void writeLecture(Writer out, TimetableServer.Lecture lecture) throws IOException {
+        out.write("{\"day\":");
+        quote(out, lecture.getDay());
+        out.write(",\"time\":");
+        quote(out, lecture.getTime());
+        out.write(",\"className\":");
+        quote(out, lecture.getClassName());
+        out.write(",\"module\":");
+        quote(out, lecture.getModule());
+        out.write(",\"type\":");
+        quote(out, lecture.getLectureType());
+        if (!lecture.getRoom().isEmpty()) {
+            out.write(",\"room\":");
+            quote(out, lecture.getRoom());
+        }
+        if (!lecture.getLecturer().isEmpty()) {
+            out.write(",\"lecturer\":");
+            quote(out, lecture.getLecturer());
+        }
+        if (lecture.getRecurrence() != Recurrence.WEEKLY) {
+            out.write(",\"recurrence\":");
+            quote(out, lecture.getRecurrence().encode());
+        }
+        out.write('}');
+    }
+
+    // Path segments after the context prefix, already percent-decoded.
+    private static String[] segments(HttpExchange exchange, String prefix) {
+        String rest = exchange.getRequestURI().getPath().substring(prefix.length());
+        if (rest.startsWith("/"))
+            rest = rest.substring(1);
+        if (rest.endsWith("/"))
+            rest = rest.substring(0, rest.length() - 1);
+        return rest.isEmpty() ? new String[0] : rest.split("/");
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null)
+            return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0)
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    // A protocol field: present, and free of the separators the line protocol cannot carry.
+    private static String field(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null || value.isBlank())
+            throw new IllegalArgumentException("Missing field: " + name);
+        if (value.contains(",") || value.contains("\n") || value.contains("\r"))
+            throw new IllegalArgumentException("Field " + name + " may not contain commas or line breaks.");
+        return value.trim();
+    }
+
+    // As field(), but may be left out ("").
+    private static String optionalField(Map<String, String> body, String name) {
+        return body.get(name) == null || body.get(name).isBlank() ? "" : field(body, name);
+    }
+
+    private static InputStream bytes(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //---------------------- JSON ----------------------
+    static String quote(String s) {
+        StringWriter out = new StringWriter();
+        try {
+            quote(out, s);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    static void quote(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        out.write(String.format("\\u%04x", (int) c));
+                    else
+                        out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    // Parses a flat JSON object of string (or bare scalar) values, which is all the resources accept.
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> fields = new HashMap<>();
+        int[] pos = {skip(json, 0)};
+        expect(json, pos, '{');
+        if (peek(json, pos) == '}')
+            return fields;
+        while (true) {
+            String key = string(json, pos);
+            expect(json, pos, ':');
+            String value = peek(json, pos) == '"' ? string(json, pos) : scalar(json, pos);
+            fields.put(key, value);
+            if (peek(json, pos) == ',') {
+                pos[0]++;
+                continue;
+            }
+            expect(json, pos, '}');
+            return fields;
+        }
+    }
+
+    private static int skip(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i)))
+            i++;
+        return i;
+    }
+
+    private static char peek(String s, int[] pos) {
+        pos[0] = skip(s, pos[0]);
+        if (pos[0] >= s.length())
+            throw new IllegalArgumentException("Malformed JSON: unexpected end.");
+        return s.charAt(pos[0]);
+    }
+
+    private static void expect(String s, int[] pos, char c) {
+        if (peek(s, pos) != c)
+            throw new IllegalArgumentException("Malformed JSON: expected '" + c + "' at " + pos[0] + ".");
+        pos[0]++;
+    }
+
+    private static String string(String s, int[] pos) {
+        expect(s, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        int i = pos[0];
+        while (true) {
+            if (i >= s.length())
+                throw new IllegalArgumentException("Malformed JSON: unterminated string.");
+            char c = s.charAt(i++);
+            if (c == '"')
+                break;
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= s.length())
+                throw new IllegalArgumentException("Malformed JSON: unterminated string.");
+            char e = s.charAt(i++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 > s.length())
+                        throw new IllegalArgumentException("Malformed JSON: bad escape.");
+                    sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+        pos[0] = i;
+        return sb.toString();
+    }
+
+    private static String scalar(String s, int[] pos) {
+        int start = pos[0], i = start;
+        while (i < s.length() && ",}".indexOf(s.charAt(i)) < 0 && !Character.isWhitespace(s.charAt(i)))
+            i++;
+        if (i == start)
+            throw new IllegalArgumentException("Malformed JSON: expected a value at " + start + ".");
+        pos[0] = i;
+        return s.substring(start, i);
+    }
+}
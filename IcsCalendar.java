@@ -0,0 +1,408 @@
+package com.example.timetableapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+// iCalendar (RFC 5545) export and import of the timetable, one VEVENT per lecture.
+//   SUMMARY     class name             DTSTART/DTEND   first occurrence, in the slot's hour (floating local time)
+//   CATEGORIES  lecture type           RRULE           FREQ=WEEKLY;INTERVAL=1|2;BYDAY=..;UNTIL=.., EXDATE exceptions
+//   DESCRIPTION module and type (for people), X-TIMETABLE-MODULE / X-TIMETABLE-RULE (exact, for re-import)
+//   LOCATION    room                   X-TIMETABLE-LECTURER  lecturer
+// Both directions stream: the writer emits each event as it goes, and the reader holds one event at a time and
+// stops at END:VCALENDAR without reading further, so it can consume a calendar straight off the protocol socket.
+// Times with a TZID or in UTC are converted to the server's zone; no time zone data is fetched.
+public final class IcsCalendar {
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final DateTimeFormatter DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final List<String> DAYS = List.of("Monday", "Tuesday", "Wednesday", "Thursday", "Friday");
+    private static final String[] BYDAY = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+
+    private IcsCalendar() {
+    }
+
+    //---------------------- Export ----------------------
+    // Writes the whole calendar. Lectures without a start date are anchored at the week containing `anchor`.
+    public static void write(TimetableSnapshot snapshot, LocalDate anchor, Writer out) throws IOException {
+        String stamp = LocalDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS).format(DATE_TIME) + "Z";
+        LocalDate monday = anchor.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        line(out, "BEGIN:VCALENDAR");
+        line(out, "VERSION:2.0");
+        line(out, "PRODID:-//TimetableApp//Timetable//EN");
+        line(out, "CALSCALE:GREGORIAN");
+        for (String day : DAYS) {
+            List<TimetableServer.Lecture> slots = new ArrayList<>(snapshot.day(day).values());
+            slots.sort(Comparator.comparingInt(TimetableServer.Lecture::slotOrdinal));
+            for (TimetableServer.Lecture lecture : slots)
+                writeEvent(lecture, monday, stamp, out);
+        }
+        line(out, "END:VCALENDAR");
+        out.flush();
+    }
+
+    private static void writeEvent(TimetableServer.Lecture lecture, LocalDate monday, String stamp, Writer out)
+            throws IOException {
+        int startHour = startHour(lecture.getTime());
+        Recurrence rule = lecture.getRecurrence();
+        LocalDate first = firstOccurrence(lecture.getDay(), rule, monday);
+        // A rule whose window has no matching weekday never occurs; there is nothing to put in a calendar.
+        if (startHour < 0 || first == null)
+            return;
+        LocalDateTime start = first.atTime(startHour, 0);
+        line(out, "BEGIN:VEVENT");
+        line(out, "UID:" + lecture.getDay() + "-" + lecture.getTime() + "@timetableapp");
+        line(out, "DTSTAMP:" + stamp);
+        line(out, "DTSTART:" + start.format(DATE_TIME));
+        line(out, "DTEND:" + start.plusHours(1).format(DATE_TIME));
+        StringBuilder rrule = new StringBuilder("RRULE:FREQ=WEEKLY;INTERVAL=").append(rule.interval())
+                .append(";BYDAY=").append(BYDAY[first.getDayOfWeek().ordinal()]);
+        if (!rule.end().equals(LocalDate.MAX))
+            rrule.append(";UNTIL=").append(rule.end().format(DATE)).append("T235959");
+        line(out, rrule.toString());
+        if (!rule.exceptions().isEmpty()) {
+            StringBuilder exdate = new StringBuilder("EXDATE:");
+            rule.exceptions().stream().sorted().forEach(d ->
+                    exdate.append(exdate.length() > 7 ? "," : "").append(d.atTime(startHour, 0).format(DATE_TIME)));
+            line(out, exdate.toString());
+        }
+        line(out, "SUMMARY:" + text(lecture.getClassName()));
+        line(out, "DESCRIPTION:" + text("Module: " + lecture.getModule() + "\nType: " + lecture.getLectureType()));
+        line(out, "CATEGORIES:" + text(lecture.getLectureType()));
+        line(out, "X-TIMETABLE-MODULE:" + text(lecture.getModule()));
+        line(out, "X-TIMETABLE-RULE:" + rule.encode());
+        if (!lecture.getRoom().isEmpty())
+            line(out, "LOCATION:" + text(lecture.getRoom()));
+        if (!lecture.getLecturer().isEmpty())
+            line(out, "X-TIMETABLE-LECTURER:" + text(lecture.getLecturer()));
+        line(out, "END:VEVENT");
+    }
+
+    // The first date on the lecture's weekday that the rule allows, ignoring exceptions (EXDATE covers those).
+    private static LocalDate firstOccurrence(String day, Recurrence rule, LocalDate monday) {
+        int weekday = DAYS.indexOf(day);
+        if (weekday < 0)
+            return null;
+        LocalDate from = rule.start().equals(LocalDate.MIN) ? monday : rule.start();
+        LocalDate date = from.with(TemporalAdjusters.nextOrSame(DayOfWeek.of(weekday + 1)));
+        if (rule.interval() > 1) {
+            long weeks = ChronoUnit.WEEKS.between(from.with(DayOfWeek.MONDAY), date.with(DayOfWeek.MONDAY));
+            date = date.plusWeeks((rule.interval() - weeks % rule.interval()) % rule.interval());
+        }
+        return date.isAfter(rule.end()) ? null : date;
+    }
+
+    // Content line, folded at 75 octets as the RFC requires.
+    private static void line(Writer out, String content) throws IOException {
+        int octets = 0;
+        for (int i = 0; i < content.length(); ) {
+            int cp = content.codePointAt(i);
+            int size = new String(Character.toChars(cp)).getBytes(StandardCharsets.UTF_8).length;
+            if (octets + size > 75) {
+                out.write("\r\n ");
+                octets = 1;
+            }
+            out.write(Character.toChars(cp));
+            octets += size;
+            i += Character.charCount(cp);
+        }
+        out.write("\r\n");
+    }
+
+    private static String text(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case ';': sb.append("\\;"); break;
+                case ',': sb.append("\\,"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    //---------------------- Import ----------------------
+    // Reads one calendar, from BEGIN:VCALENDAR up to and including END:VCALENDAR, and passes each event to
+    // `sink` as a lecture. An event that cannot be mapped does not stop the read (the rest of the calendar
+    // still has to be consumed); the first such error is thrown as IllegalArgumentException at the end.
+    public static int read(BufferedReader in, Consumer<TimetableServer.Lecture> sink) throws IOException {
+        Unfolder lines = new Unfolder(in);
+        String first = lines.next();
+        if (first == null || !first.equalsIgnoreCase("BEGIN:VCALENDAR"))
+            throw new IllegalArgumentException("Expected BEGIN:VCALENDAR.");
+        String error = null;
+        int events = 0;
+        Event event = null;
+        int nested = 0;   // components inside the current VEVENT (VALARM), whose properties are skipped
+        String line;
+        while ((line = lines.next()) != null) {
+            if (line.equalsIgnoreCase("END:VCALENDAR")) {
+                if (error != null)
+                    throw new IllegalArgumentException(error);
+                return events;
+            }
+            if (line.equalsIgnoreCase("BEGIN:VEVENT")) {
+                event = new Event();
+                nested = 0;
+            } else if (event == null) {
+                continue;
+            } else if (line.regionMatches(true, 0, "BEGIN:", 0, 6)) {
+                nested++;
+            } else if (line.regionMatches(true, 0, "END:", 0, 4)) {
+                if (nested > 0) {
+                    nested--;
+                    continue;
+                }
+                try {
+                    sink.accept(event.toLecture());
+                    events++;
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    if (error == null)
+                        error = "Event " + event.describe() + ": " + e.getMessage();
+                }
+                event = null;
+            } else if (nested == 0) {
+                // A bad DTSTART, EXDATE or TZID is recorded like any other event error; the read goes on.
+                try {
+                    event.add(line);
+                } catch (RuntimeException e) {
+                    if (error == null)
+                        error = "Event " + event.describe() + ": " + e.getMessage();
+                }
+            }
+        }
+        throw new IllegalArgumentException("Calendar ended without END:VCALENDAR.");
+    }
+
+    // Joins folded lines. It never reads past END:VCALENDAR, because what follows belongs to someone else.
+    private static final class Unfolder {
+        private final BufferedReader in;
+        private String pending;
+
+        Unfolder(BufferedReader in) {
+            this.in = in;
+        }
+
+        String next() throws IOException {
+            String line = pending != null ? pending : in.readLine();
+            pending = null;
+            if (line == null || line.equalsIgnoreCase("END:VCALENDAR"))
+                return line;
+            StringBuilder sb = new StringBuilder(line);
+            String peek;
+            while ((peek = in.readLine()) != null && !peek.isEmpty() && (peek.charAt(0) == ' ' || peek.charAt(0) == '\t'))
+                sb.append(peek, 1, peek.length());
+            pending = peek;
+            return sb.toString();
+        }
+    }
+
+    // The properties of one VEVENT that the timetable uses.
+    private static final class Event {
+        String uid, summary, description, categories, module, rule, rrule, location, lecturer;
+        LocalDateTime start;
+        final List<String> exdates = new ArrayList<>();
+
+        void add(String line) {
+            int colon = valueStart(line);
+            if (colon < 0)
+                return;
+            String head = line.substring(0, colon);
+            String value = line.substring(colon + 1);
+            int semi = head.indexOf(';');
+            String name = (semi < 0 ? head : head.substring(0, semi)).toUpperCase(Locale.ROOT);
+            String tzid = param(head, "TZID");
+            switch (name) {
+                case "UID": uid = unescape(value); break;
+                case "SUMMARY": summary = unescape(value); break;
+                case "DESCRIPTION": description = unescape(value); break;
+                case "CATEGORIES": categories = unescape(value.split("(?<!\\\\),")[0]); break;
+                case "X-TIMETABLE-MODULE": module = unescape(value); break;
+                case "X-TIMETABLE-RULE": rule = value.trim(); break;
+                case "LOCATION": location = unescape(value); break;
+                case "X-TIMETABLE-LECTURER": lecturer = unescape(value); break;
+                case "RRULE": rrule = value.trim(); break;
+                case "DTSTART": start = dateTime(value, tzid); break;
+                case "EXDATE":
+                    for (String v : value.split(","))
+                        exdates.add(dateTime(v, tzid).toLocalDate().toString());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        String describe() {
+            return "'" + (summary != null ? summary : uid != null ? uid : "?") + "'";
+        }
+
+        TimetableServer.Lecture toLecture() {
+            if (start == null)
+                throw new IllegalArgumentException("no DTSTART.");
+            int weekday = start.getDayOfWeek().ordinal();
+            if (weekday >= DAYS.size())
+                throw new IllegalArgumentException("falls on a weekend.");
+            String day = DAYS.get(weekday);
+            String time = slot(start.getHour());
+            String type = categories;
+            String moduleName = module;
+            if (description != null) {
+                for (String part : description.split("\n")) {
+                    if (moduleName == null && part.startsWith("Module:"))
+                        moduleName = part.substring(7).trim();
+                    if (type == null && part.startsWith("Type:"))
+                        type = part.substring(5).trim();
+                }
+            }
+            String className = plain("SUMMARY", summary);
+            TimetableServer.Lecture lecture = new TimetableServer.Lecture(time, day, className,
+                    plain("module", moduleName), plain("type (CATEGORIES)", type));
+            return lecture.withRecurrence(rule != null ? Recurrence.decode(rule) : recurrence(start.toLocalDate()))
+                    .withResources(resource(location), resource(lecturer));
+        }
+
+        // The RRULE as a Recurrence: weekly or fortnightly, on the DTSTART weekday, until UNTIL or COUNT.
+        private Recurrence recurrence(LocalDate first) {
+            String[] except = exdates.toArray(new String[0]);
+            if (rrule == null)
+                return Recurrence.parse("WEEKLY", first.toString(), first.toString(), except);
+            int interval = 1;
+            String end = "*";
+            for (String part : rrule.split(";")) {
+                int eq = part.indexOf('=');
+                if (eq < 0)
+                    continue;
+                String key = part.substring(0, eq).toUpperCase(Locale.ROOT);
+                String value = part.substring(eq + 1);
+                switch (key) {
+                    case "FREQ":
+                        if (!value.equalsIgnoreCase("WEEKLY"))
+                            throw new IllegalArgumentException("only weekly rules are supported (FREQ=" + value + ").");
+                        break;
+                    case "INTERVAL":
+                        interval = Integer.parseInt(value);
+                        if (interval != 1 && interval != 2)
+                            throw new IllegalArgumentException("only weekly and fortnightly rules are supported.");
+                        break;
+                    case "BYDAY":
+                        if (!value.equalsIgnoreCase(BYDAY[first.getDayOfWeek().ordinal()]))
+                            throw new IllegalArgumentException("BYDAY=" + value + " does not match DTSTART.");
+                        break;
+                    case "UNTIL":
+                        end = dateTime(value, null).toLocalDate().toString();
+                        break;
+                    case "COUNT":
+                        end = first.plusWeeks((long) (Integer.parseInt(value) - 1) * interval).toString();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unsupported RRULE part " + key + ".");
+                }
+            }
+            return Recurrence.parse(interval == 1 ? "WEEKLY" : "FORTNIGHTLY", first.toString(), end, except);
+        }
+    }
+
+    // Index of the ':' that ends the property name and parameters (quoted parameter values may contain ':').
+    private static int valueStart(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"')
+                quoted = !quoted;
+            else if (c == ':' && !quoted)
+                return i;
+        }
+        return -1;
+    }
+
+    private static String param(String head, String name) {
+        for (String p : head.split(";")) {
+            int eq = p.indexOf('=');
+            if (eq > 0 && p.substring(0, eq).equalsIgnoreCase(name))
+                return p.substring(eq + 1).replace("\"", "");
+        }
+        return null;
+    }
+
+    // DATE-TIME (floating, UTC "Z" or with a TZID) or DATE, as a local date-time in the server's zone.
+    private static LocalDateTime dateTime(String value, String tzid) {
+        value = value.trim();
+        try {
+            if (value.length() == 8)
+                return LocalDate.parse(value, DATE).atStartOfDay();
+            if (value.endsWith("Z"))
+                return LocalDateTime.parse(value.substring(0, value.length() - 1), DATE_TIME)
+                        .atZone(ZoneOffset.UTC).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+            LocalDateTime local = LocalDateTime.parse(value, DATE_TIME);
+            if (tzid == null)
+                return local;
+            return local.atZone(ZoneId.of(tzid)).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date-time " + value + ".");
+        }
+    }
+
+    private static String unescape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char n = value.charAt(++i);
+                sb.append(n == 'n' || n == 'N' ? '\n' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // A name the line protocol can carry: present, without commas or line breaks.
+    // Room or lecturer: optional, and other calendars often write "Room 1, Building A", so separators that the
+    // line protocol cannot carry become spaces instead of rejecting the event.
+    private static String resource(String value) {
+        return value == null ? "" : value.replaceAll("[,\\r\\n]+", " ").replaceAll(" +", " ").trim();
+    }
+
+    private static String plain(String what, String value) {
+        if (value == null || value.isBlank())
+            throw new IllegalArgumentException("no " + what + ".");
+        if (value.contains(",") || value.contains("\n") || value.contains("\r"))
+            throw new IllegalArgumentException(what + " may not contain commas or line breaks.");
+        return value.trim();
+    }
+
+    // "9-10" .. "5-6" to the hour the slot starts on a 24-hour clock (9 .. 17), or -1.
+    static int startHour(String time) {
+        try {
+            int h = Integer.parseInt(time.split("-")[0].trim());
+            return h < 9 ? h + 12 : h;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String slot(int hour) {
+        if (hour < 9 || hour > 17)
+            throw new IllegalArgumentException("starts at " + hour + ":00, outside the 9-10 .. 5-6 slots.");
+        int from = hour > 12 ? hour - 12 : hour;
+        return from + "-" + (from % 12 + 1);
+    }
+}
@@ -0,0 +1,609 @@
+package com.example.timetableapp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// The QUERY expression language over the lectures of a snapshot, e.g.
+//   day in (Mon,Tue) and type = Lab and slot >= 2-3 order by slot limit 20
+// Grammar (keywords ignore case):
+//   query  := [expr] [ORDER BY key {, key}] [LIMIT n]        key := field [ASC | DESC]
+//   expr   := term {OR term}                                  term := factor {AND factor}
+//   factor := NOT factor | ( expr ) | field op value | field [NOT] IN ( value {, value} )
+//   field  := day | slot (or time) | class | module | type | room | lecturer
+//   op     := = | != | < | <= | > | >= | ~ (contains)
+// Values are bare words or 'quoted'. Days may be abbreviated (Mon) and compare in weekday order, slots compare in
+// time order (9-10 < 12-1 < 2-3), and the other fields compare ignoring case (no room or lecturer is '').
+// A query is parsed once into a plan: one predicate per comparison, plus the days and slots that top-level AND
+// terms allow, which are looked up directly in the snapshot's day -> slot index rather than tested per lecture.
+// Ordered by day and/or slot (or not at all), the plan walks the index in that order and stops at the limit;
+// any other order keeps only the best `limit` matches in a heap. Plans are cached by query text.
+public final class LectureQuery {
+    static final int CACHE_SIZE = Integer.getInteger("timetable.query.cacheSize", 256);
+    private static final String[] WEEK = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"};
+
+    private static final Map<String, LectureQuery> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LectureQuery> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private static final LongAdder cacheHits = new LongAdder();
+    private static final LongAdder cacheMisses = new LongAdder();
+
+    //---------------------- Fields ----------------------
+    enum Field {
+        DAY(TimetableServer.Lecture::getDay, Comparator.comparingInt(LectureQuery::dayRank)
+                .thenComparing(String.CASE_INSENSITIVE_ORDER)),
+        SLOT(TimetableServer.Lecture::getTime, Comparator.comparingInt(IcsCalendar::startHour)
+                .thenComparing(Comparator.naturalOrder())),
+        CLASS(TimetableServer.Lecture::getClassName, String.CASE_INSENSITIVE_ORDER),
+        MODULE(TimetableServer.Lecture::getModule, String.CASE_INSENSITIVE_ORDER),
+        TYPE(TimetableServer.Lecture::getLectureType, String.CASE_INSENSITIVE_ORDER),
+        ROOM(TimetableServer.Lecture::getRoom, String.CASE_INSENSITIVE_ORDER),
+        LECTURER(TimetableServer.Lecture::getLecturer, String.CASE_INSENSITIVE_ORDER);
+
+        final Function<TimetableServer.Lecture, String> value;
+        final Comparator<String> order;
+
+        Field(Function<TimetableServer.Lecture, String> value, Comparator<String> order) {
+            this.value = value;
+            this.order = order;
+        }
+
+        Comparator<TimetableServer.Lecture> lectureOrder() {
+            return Comparator.comparing(value, order);
+        }
+
+        static Field of(String name) {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "day": return DAY;
+                case "slot":
+                case "time": return SLOT;
+                case "class": return CLASS;
+                case "module": return MODULE;
+                case "type": return TYPE;
+                case "room": return ROOM;
+                case "lecturer": return LECTURER;
+                default:
+                    throw new IllegalArgumentException("unknown field '" + name
+                            + "' (day, slot, class, module, type, room, lecturer).");
+            }
+        }
+
+        // Full day names for abbreviations; slots must look like 9-10.
+        String normalize(String v) {
+            if (this == DAY) {
+                for (String day : WEEK) {
+                    if (v.length() >= 3 && day.regionMatches(true, 0, v, 0, v.length()))
+                        return day;
+                }
+            } else if (this == SLOT && IcsCalendar.startHour(v) < 0) {
+                throw new IllegalArgumentException("'" + v + "' is not a slot (e.g. 9-10, 2-3).");
+            }
+            return v;
+        }
+    }
+
+    private static int dayRank(String day) {
+        for (int i = 0; i < WEEK.length; i++) {
+            if (WEEK[i].equalsIgnoreCase(day))
+                return i;
+        }
+        return WEEK.length;
+    }
+
+    //---------------------- Plan ----------------------
+    private final Predicate<TimetableServer.Lecture> residual;    // the terms the index lookups do not answer
+    private final Predicate<String> dayFilter;
+    private final Set<String> days;       // exact days to look up, or null for every day passing dayFilter
+    private final Predicate<String> slotFilter;
+    private final Set<String> slots;      // exact slots to look up, or null for every slot passing slotFilter
+    private final List<Field> orderBy;
+    private final List<Boolean> descending;
+    private final int limit;
+
+    private LectureQuery(Node where, List<Field> orderBy, List<Boolean> descending, int limit) {
+        List<Node> conjuncts = where == null ? List.of()
+                : where instanceof And ? ((And) where).terms : List.of(where);
+        List<Predicate<TimetableServer.Lecture>> rest = new ArrayList<>();
+        Predicate<String> dayFilter = d -> true, slotFilter = s -> true;
+        Set<String> days = null, slots = null;
+        for (Node term : conjuncts) {
+            Field field = term.field();
+            if (field == Field.DAY) {
+                dayFilter = dayFilter.and(term.keyTest());
+                days = intersect(days, term.exactValues());
+            } else if (field == Field.SLOT) {
+                slotFilter = slotFilter.and(term.keyTest());
+                slots = intersect(slots, term.exactValues());
+            } else {
+                rest.add(term.compile());
+            }
+        }
+        this.residual = rest.stream().reduce(l -> true, Predicate::and);
+        this.dayFilter = dayFilter;
+        this.days = days;
+        this.slotFilter = slotFilter;
+        this.slots = slots;
+        this.orderBy = orderBy;
+        this.descending = descending;
+        this.limit = limit;
+    }
+
+    private static Set<String> intersect(Set<String> current, Set<String> values) {
+        if (values == null)
+            return current;
+        if (current == null)
+            return values;
+        Set<String> both = new LinkedHashSet<>(current);
+        both.retainAll(values);
+        return both;
+    }
+
+    // Parses (or takes from the cache) the plan for this query text.
+    public static LectureQuery compile(String text) {
+        String key = text.trim();
+        synchronized (cache) {
+            LectureQuery plan = cache.get(key);
+            if (plan != null) {
+                cacheHits.increment();
+                return plan;
+            }
+        }
+        cacheMisses.increment();
+        LectureQuery plan = new Parser(key).query();
+        synchronized (cache) {
+            cache.put(key, plan);
+        }
+        return plan;
+    }
+
+    // Feeds the matching lectures to `sink` in query order and returns how many there were.
+    public int run(TimetableSnapshot snapshot, Consumer<TimetableServer.Lecture> sink) {
+        Field first = orderBy.isEmpty() ? Field.DAY : orderBy.get(0);
+        Field second = orderBy.size() > 1 ? orderBy.get(1) : null;
+        boolean indexOrder = orderBy.size() <= 2 && (first == Field.DAY || first == Field.SLOT)
+                && (second == null || second == (first == Field.DAY ? Field.SLOT : Field.DAY));
+        if (!indexOrder)
+            return runSorted(snapshot, sink);
+
+        boolean firstDesc = !orderBy.isEmpty() && descending.get(0);
+        boolean secondDesc = second != null && descending.get(1);
+        List<String> dayKeys = candidateDays(snapshot);
+        int emitted = 0;
+        if (first == Field.DAY) {
+            dayKeys.sort(direction(Field.DAY.order, firstDesc));
+            for (String day : dayKeys) {
+                List<String> slotKeys = candidateSlots(snapshot.day(day).keySet());
+                slotKeys.sort(direction(Field.SLOT.order, secondDesc));
+                for (String time : slotKeys) {
+                    if (emitted == limit)
+                        return emitted;
+                    emitted += emit(snapshot.get(day, time), sink);
+                }
+            }
+        } else {
+            Set<String> allSlots = new TreeSet<>(direction(Field.SLOT.order, firstDesc));
+            for (String day : dayKeys)
+                allSlots.addAll(candidateSlots(snapshot.day(day).keySet()));
+            dayKeys.sort(direction(Field.DAY.order, secondDesc));
+            for (String time : allSlots) {
+                for (String day : dayKeys) {
+                    if (emitted == limit)
+                        return emitted;
+                    emitted += emit(snapshot.get(day, time), sink);
+                }
+            }
+        }
+        return emitted;
+    }
+
+    private int emit(TimetableServer.Lecture lecture, Consumer<TimetableServer.Lecture> sink) {
+        if (lecture == null || !residual.test(lecture))
+            return 0;
+        sink.accept(lecture);
+        return 1;
+    }
+
+    // Orders by class, module or type: a bounded heap holding the best `limit` matches, worst on top.
+    private int runSorted(TimetableSnapshot snapshot, Consumer<TimetableServer.Lecture> sink) {
+        Comparator<TimetableServer.Lecture> order = null;
+        for (int i = 0; i < orderBy.size(); i++) {
+            Comparator<TimetableServer.Lecture> key = orderBy.get(i).lectureOrder();
+            key = descending.get(i) ? key.reversed() : key;
+            order = order == null ? key : order.thenComparing(key);
+        }
+        order = order.thenComparing(Field.DAY.lectureOrder()).thenComparing(Field.SLOT.lectureOrder());
+        PriorityQueue<TimetableServer.Lecture> best = new PriorityQueue<>(order.reversed());
+        for (String day : candidateDays(snapshot)) {
+            for (String time : candidateSlots(snapshot.day(day).keySet())) {
+                TimetableServer.Lecture lecture = snapshot.get(day, time);
+                if (lecture == null || !residual.test(lecture))
+                    continue;
+                best.add(lecture);
+                if (best.size() > limit)
+                    best.poll();
+            }
+        }
+        List<TimetableServer.Lecture> matches = new ArrayList<>(best);
+        matches.sort(order);
+        matches.forEach(sink);
+        return matches.size();
+    }
+
+    private List<String> candidateDays(TimetableSnapshot snapshot) {
+        Collection<String> keys = days == null ? snapshot.days() : days;
+        List<String> result = new ArrayList<>();
+        for (String day : keys) {
+            if (dayFilter.test(day) && !snapshot.day(day).isEmpty())
+                result.add(day);
+        }
+        return result;
+    }
+
+    private List<String> candidateSlots(Set<String> present) {
+        Collection<String> keys = slots == null ? present : slots;
+        List<String> result = new ArrayList<>();
+        for (String time : keys) {
+            if (slotFilter.test(time))
+                result.add(time);
+        }
+        return result;
+    }
+
+    private static Comparator<String> direction(Comparator<String> order, boolean descending) {
+        return descending ? order.reversed() : order;
+    }
+
+    //---------------------- Cache gauges ----------------------
+    public static int cachedPlans() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public static long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    public static long cacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    //---------------------- Syntax tree ----------------------
+    private interface Node {
+        Predicate<TimetableServer.Lecture> compile();
+
+        // The field a single comparison is on, or null for AND/OR/NOT.
+        default Field field() {
+            return null;
+        }
+
+        // The comparison as a test on the field value alone (for index keys).
+        default Predicate<String> keyTest() {
+            throw new IllegalStateException();
+        }
+
+        // Values an `=` or `in` comparison allows, or null if it is not that kind of comparison.
+        default Set<String> exactValues() {
+            return null;
+        }
+    }
+
+    private static final class And implements Node {
+        final List<Node> terms;
+
+        And(List<Node> terms) {
+            this.terms = terms;
+        }
+
+        public Predicate<TimetableServer.Lecture> compile() {
+            return terms.stream().map(Node::compile).reduce(Predicate::and).orElse(l -> true);
+        }
+    }
+
+    private static final class Or implements Node {
+        final List<Node> terms;
+
+        Or(List<Node> terms) {
+            this.terms = terms;
+        }
+
+        public Predicate<TimetableServer.Lecture> compile() {
+            return terms.stream().map(Node::compile).reduce(Predicate::or).orElse(l -> false);
+        }
+    }
+
+    private static final class Not implements Node {
+        final Node term;
+
+        Not(Node term) {
+            this.term = term;
+        }
+
+        public Predicate<TimetableServer.Lecture> compile() {
+            return term.compile().negate();
+        }
+
+        // "not day = Mon" still restricts the day key, just not to exact values.
+        public Field field() {
+            return term.field();
+        }
+
+        public Predicate<String> keyTest() {
+            return term.keyTest().negate();
+        }
+    }
+
+    private static final class Compare implements Node {
+        final Field field;
+        final String op;
+        final String value;
+
+        Compare(Field field, String op, String value) {
+            this.field = field;
+            this.op = op;
+            this.value = field.normalize(value);
+        }
+
+        public Predicate<TimetableServer.Lecture> compile() {
+            Predicate<String> test = keyTest();
+            return lecture -> test.test(field.value.apply(lecture));
+        }
+
+        public Field field() {
+            return field;
+        }
+
+        public Predicate<String> keyTest() {
+            Comparator<String> order = field.order;
+            String v = value;
+            switch (op) {
+                case "=": return s -> order.compare(s, v) == 0;
+                case "!=": return s -> order.compare(s, v) != 0;
+                case "<": return s -> order.compare(s, v) < 0;
+                case "<=": return s -> order.compare(s, v) <= 0;
+                case ">": return s -> order.compare(s, v) > 0;
+                case ">=": return s -> order.compare(s, v) >= 0;
+                default: {
+                    String needle = v.toLowerCase(Locale.ROOT);
+                    return s -> s.toLowerCase(Locale.ROOT).contains(needle);
+                }
+            }
+        }
+
+        // Only days and slots are looked up by key, and the stored keys are their canonical names.
+        public Set<String> exactValues() {
+            return op.equals("=") && field == Field.SLOT ? Set.of(value)
+                    : op.equals("=") && field == Field.DAY && dayRank(value) < WEEK.length ? Set.of(value) : null;
+        }
+    }
+
+    private static final class In implements Node {
+        final Field field;
+        final Set<String> values = new LinkedHashSet<>();
+
+        In(Field field, List<String> values) {
+            this.field = field;
+            for (String v : values)
+                this.values.add(field.normalize(v));
+        }
+
+        public Predicate<TimetableServer.Lecture> compile() {
+            Predicate<String> test = keyTest();
+            return lecture -> test.test(field.value.apply(lecture));
+        }
+
+        public Field field() {
+            return field;
+        }
+
+        public Predicate<String> keyTest() {
+            Comparator<String> order = field.order;
+            List<String> options = List.copyOf(values);
+            return s -> {
+                for (String v : options) {
+                    if (order.compare(s, v) == 0)
+                        return true;
+                }
+                return false;
+            };
+        }
+
+        public Set<String> exactValues() {
+            if (field == Field.SLOT)
+                return values;
+            for (String v : values) {
+                if (field != Field.DAY || dayRank(v) == WEEK.length)
+                    return null;
+            }
+            return values;
+        }
+    }
+
+    //---------------------- Parser ----------------------
+    // Recursive descent over a token list; every error names what was expected and where.
+    private static final class Parser {
+        private static final Set<String> OPERATORS = Set.of("=", "!=", "<", "<=", ">", ">=", "~");
+        private static final Set<String> SYMBOLS = Set.of("(", ")", ",", "=", "!=", "<", "<=", ">", ">=", "~");
+
+        private final List<String> tokens = new ArrayList<>();
+        private final List<Boolean> quoted = new ArrayList<>();
+        private int pos;
+
+        Parser(String text) {
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '\'') {
+                    int end = text.indexOf('\'', i + 1);
+                    if (end < 0)
+                        throw new IllegalArgumentException("unterminated quote.");
+                    add(text.substring(i + 1, end), true);
+                    i = end + 1;
+                } else if ("(),=~".indexOf(c) >= 0) {
+                    add(String.valueOf(c), false);
+                    i++;
+                } else if (c == '<' || c == '>' || c == '!') {
+                    boolean eq = i + 1 < text.length() && text.charAt(i + 1) == '=';
+                    if (c == '!' && !eq)
+                        throw new IllegalArgumentException("'!' must be followed by '='.");
+                    add(text.substring(i, eq ? i + 2 : i + 1), false);
+                    i += eq ? 2 : 1;
+                } else {
+                    int start = i;
+                    while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                            && "(),=~<>!'".indexOf(text.charAt(i)) < 0)
+                        i++;
+                    add(text.substring(start, i), false);
+                }
+            }
+        }
+
+        private void add(String token, boolean isQuoted) {
+            tokens.add(token);
+            quoted.add(isQuoted);
+        }
+
+        LectureQuery query() {
+            Node where = null;
+            if (!atEnd() && !keyword("order") && !keyword("limit"))
+                where = expr();
+            List<Field> orderBy = new ArrayList<>();
+            List<Boolean> descending = new ArrayList<>();
+            if (acceptKeyword("order")) {
+                expectKeyword("by");
+                do {
+                    orderBy.add(Field.of(word("a field")));
+                    boolean desc = acceptKeyword("desc");
+                    if (!desc)
+                        acceptKeyword("asc");
+                    descending.add(desc);
+                } while (accept(","));
+            }
+            int limit = Integer.MAX_VALUE;
+            if (acceptKeyword("limit")) {
+                String n = word("a number");
+                try {
+                    limit = Integer.parseInt(n);
+                } catch (NumberFormatException e) {
+                    limit = -1;
+                }
+                if (limit < 1)
+                    throw new IllegalArgumentException("limit must be a positive number, got '" + n + "'.");
+            }
+            if (!atEnd())
+                throw new IllegalArgumentException("unexpected '" + tokens.get(pos) + "'.");
+            return new LectureQuery(where, orderBy, descending, limit);
+        }
+
+        private Node expr() {
+            List<Node> terms = new ArrayList<>(List.of(term()));
+            while (acceptKeyword("or"))
+                terms.add(term());
+            return terms.size() == 1 ? terms.get(0) : new Or(terms);
+        }
+
+        private Node term() {
+            // Parenthesised ANDs are flattened so their day and slot terms can still be looked up by key.
+            List<Node> factors = new ArrayList<>();
+            do {
+                Node factor = factor();
+                if (factor instanceof And)
+                    factors.addAll(((And) factor).terms);
+                else
+                    factors.add(factor);
+            } while (acceptKeyword("and"));
+            return factors.size() == 1 ? factors.get(0) : new And(factors);
+        }
+
+        private Node factor() {
+            if (acceptKeyword("not"))
+                return new Not(factor());
+            if (accept("(")) {
+                Node inner = expr();
+                expect(")");
+                return inner;
+            }
+            Field field = Field.of(word("a field"));
+            boolean negated = acceptKeyword("not");
+            if (acceptKeyword("in")) {
+                expect("(");
+                List<String> values = new ArrayList<>();
+                do {
+                    values.add(word("a value"));
+                } while (accept(","));
+                expect(")");
+                Node in = new In(field, values);
+                return negated ? new Not(in) : in;
+            }
+            if (negated)
+                throw new IllegalArgumentException("expected 'in' after 'not'.");
+            String op = atEnd() ? "" : tokens.get(pos);
+            if (!OPERATORS.contains(op) || quoted.get(pos))
+                throw new IllegalArgumentException("expected an operator after '" + field.name().toLowerCase(Locale.ROOT)
+                        + "' (=, !=, <, <=, >, >=, ~, in).");
+            pos++;
+            return new Compare(field, op, word("a value"));
+        }
+
+        //---------------------- Tokens ----------------------
+        private boolean atEnd() {
+            return pos >= tokens.size();
+        }
+
+        private boolean keyword(String k) {
+            return !atEnd() && !quoted.get(pos) && tokens.get(pos).equalsIgnoreCase(k);
+        }
+
+        private boolean acceptKeyword(String k) {
+            if (!keyword(k))
+                return false;
+            pos++;
+            return true;
+        }
+
+        private void expectKeyword(String k) {
+            if (!acceptKeyword(k))
+                throw new IllegalArgumentException("expected '" + k + "'" + near() + ".");
+        }
+
+        private boolean accept(String symbol) {
+            if (atEnd() || quoted.get(pos) || !tokens.get(pos).equals(symbol))
+                return false;
+            pos++;
+            return true;
+        }
+
+        private void expect(String symbol) {
+            if (!accept(symbol))
+                throw new IllegalArgumentException("expected '" + symbol + "'" + near() + ".");
+        }
+
+        // A bare word or quoted string; symbols are not values.
+        private String word(String what) {
+            if (atEnd() || (!quoted.get(pos) && SYMBOLS.contains(tokens.get(pos))))
+                throw new IllegalArgumentException("expected " + what + near() + ".");
+            return tokens.get(pos++);
+        }
+
+        private String near() {
+            return atEnd() ? " at the end" : " at '" + tokens.get(pos) + "'";
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.timetableapp;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Lazily expands one timetable snapshot into dated occurrences between two dates (inclusive), ordered by date
+// then slot. It keeps the abstract week (at most a few dozen lectures per weekday) and the current position,
+// never the expanded calendar, so a year-long or decade-long range runs in the same memory as a single week.
+final class OccurrenceIterator implements Iterator<OccurrenceIterator.Occurrence> {
+
+    record Occurrence(LocalDate date, TimetableServer.Lecture lecture) {
+    }
+
+    private final TimetableServer.Lecture[][] week = new TimetableServer.Lecture[7][];   // by DayOfWeek, slot order
+    private final LocalDate to;
+    private LocalDate date;   // null once `to` is done
+    private int index;
+    private Occurrence next;
+
+    OccurrenceIterator(TimetableSnapshot snapshot, LocalDate from, LocalDate to) {
+        for (int d = 0; d < 7; d++)
+            week[d] = new TimetableServer.Lecture[0];
+        for (Map.Entry<String, Map<String, TimetableServer.Lecture>> e : snapshot.asMap().entrySet()) {
+            int d = weekday(e.getKey());
+            if (d < 0)
+                continue;
+            List<TimetableServer.Lecture> slots = new ArrayList<>(e.getValue().values());
+            slots.sort(Comparator.comparingInt(TimetableServer.Lecture::slotOrdinal));
+            week[d] = slots.toArray(new TimetableServer.Lecture[0]);
+        }
+        this.date = from.isAfter(to) ? null : from;
+        this.to = to;
+    }
+
+    // 0 = Monday ... 6 = Sunday, or -1 for a day name that is not a weekday.
+    private static int weekday(String day) {
+        try {
+            return DayOfWeek.valueOf(day.toUpperCase(Locale.ROOT)).ordinal();
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && date != null) {
+            TimetableServer.Lecture[] slots = week[date.getDayOfWeek().getValue() - 1];
+            if (index < slots.length) {
+                TimetableServer.Lecture lecture = slots[index++];
+                if (lecture.getRecurrence().occursOn(date))
+                    next = new Occurrence(date, lecture);
+            } else {
+                // Stop at `to` itself rather than stepping past it, which would overflow at LocalDate.MAX.
+                date = date.equals(to) ? null : date.plusDays(1);
+                index = 0;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Occurrence next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Occurrence occurrence = next;
+        next = null;
+        return occurrence;
+    }
+}
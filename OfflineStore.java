@@ -0,0 +1,378 @@
+package com.example.timetableapp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// The client's on-disk state for one server: the last timetable listing the server sent, and the outbox of
+// edits made while the server could not be reached. Both live under timetable.client.cacheDir (default
+// ~/.timetableapp), so a restarted client shows the last known timetable at once and still has its unsent edits.
+// The listing shown to the user is the server's listing with the pending edits applied on top. Each edit is
+// kept in its SYNC form, which names the lecture it expects in the slot, so the server can tell an edit that
+// already happened (SKIPPED) from one that conflicts with somebody else's change.
+// Queuing coalesces per slot: removing a lecture whose add is still queued drops both, and undoing a queued
+// remove drops the remove, so the server only sees the net change.
+// Files are replaced atomically (write a temp file, then move it over), so a crash leaves the old or new version.
+// A failed write is reported to the status listener; the store keeps working from memory.
+public class OfflineStore {
+    static final Path DIR = Paths.get(System.getProperty("timetable.client.cacheDir",
+            Paths.get(System.getProperty("user.home"), ".timetableapp").toString()));
+
+    // A queued edit: one SYNC item line. Sent edits are in flight until their batch's reply is handled; they
+    // can no longer be coalesced away.
+    public static final class Edit {
+        final String item;
+        final String day, time;
+        final String[] lecture;   // class, module, type
+        boolean inFlight;
+
+        Edit(String item) {
+            this.item = item;
+            String[] parts = item.split(",");
+            boolean add = parts[0].equals("ADD_LECTURE");
+            this.day = parts[add ? 2 : 1].trim();
+            this.time = parts[add ? 1 : 2].trim();
+            this.lecture = new String[]{parts[3].trim(), parts[4].trim(), parts[5].trim()};
+        }
+
+        String command() {
+            return item.substring(0, item.indexOf(','));
+        }
+
+        String slot() {
+            return day + "," + time;
+        }
+
+        boolean sameLecture(Edit other) {
+            return Arrays.equals(lecture, other.lecture);
+        }
+
+        @Override
+        public String toString() {
+            String what = command().equals("ADD_LECTURE") ? "add"
+                    : command().equals("REMOVE_LECTURE") ? "remove" : "undo";
+            return what + " " + lecture[0] + " on " + day + " " + time;
+        }
+    }
+
+    private final List<String> days;
+    private final List<String> times;
+    private final Path cacheFile;
+    private final Path outboxFile;
+    private final Consumer<String> statusListener;
+    private final Map<String, String> server = new HashMap<>();  // "day,time" -> listing line, as last received
+    private final List<Edit> outbox = new ArrayList<>();
+    private final Set<String> stale = new HashSet<>();           // slots whose queued edits came or went
+    private long version = -1;                                   // server version of `server`, -1 if unknown
+    private Instant cachedAt;
+
+    public OfflineStore(String host, int port, List<String> days, List<String> times,
+                        Consumer<String> statusListener) {
+        this.statusListener = statusListener;
+        this.days = List.copyOf(days);
+        this.times = List.copyOf(times);
+        String name = host.replaceAll("[^A-Za-z0-9.-]", "_") + "-" + port;
+        this.cacheFile = DIR.resolve(name + ".timetable");
+        this.outboxFile = DIR.resolve(name + ".outbox");
+        load();
+    }
+
+    //---------------------- Timetable cache ----------------------
+    // When the cached listing was received, or null if there is none.
+    public synchronized Instant cachedAt() {
+        return cachedAt;
+    }
+
+    // The last server listing with the queued edits applied, in GET_LECTURES format.
+    public synchronized String listing() {
+        Map<String, String> view = new HashMap<>(server);
+        for (Edit edit : outbox)
+            apply(view, edit);
+        StringBuilder sb = new StringBuilder();
+        for (String day : days) {
+            for (String time : times) {
+                String line = view.get(day + "," + time);
+                if (line != null)
+                    sb.append(line).append('\n');
+            }
+        }
+        return sb.length() == 0 ? "No lectures available." : sb.toString();
+    }
+
+    // Stores a full GET_LECTURES reply as the new server state. It carries no version, so the next CHANGES
+    // asks for everything.
+    public synchronized void saveListing(String listing) {
+        server.clear();
+        for (String line : listing.split("\n")) {
+            String[] fields = parseLine(line);
+            if (fields != null)
+                server.put(fields[0] + "," + fields[1], line.trim());
+        }
+        version = -1;
+        cachedAt = Instant.now();
+        write(cacheFile, String.join("\n", server.values()));
+    }
+
+    // The server version the cached listing is at, for CHANGES; -1 if unknown.
+    public synchronized long version() {
+        return version;
+    }
+
+    // Called on every (re)connect: the server may have restarted, and its versions may mean something else now.
+    public synchronized void forgetVersion() {
+        version = -1;
+    }
+
+    // Applies a CHANGES reply (see TimetableServer.handleChanges) to the server state. Returns the slots whose
+    // shown line may have changed, "day,time" -> line in the offline view (null for an empty slot): the slots
+    // the reply names, plus those whose queued edits came or went since the last call.
+    public synchronized Map<String, String> applyChanges(String reply) {
+        String[] lines = reply.split("\n");
+        String[] header = lines[0].trim().split(" ");
+        Set<String> slots = new HashSet<>(stale);
+        stale.clear();
+        if (header.length > 2) {
+            slots.addAll(server.keySet());
+            server.clear();
+        }
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].trim();
+            int colon = line.indexOf(": ");
+            int comma = line.indexOf(',');
+            if (colon < 0 || comma < 0 || comma > colon)
+                continue;
+            String slot = line.substring(0, comma).trim() + "," + line.substring(comma + 1, colon).trim();
+            slots.add(slot);
+            if (line.substring(colon + 2).equals("-"))
+                server.remove(slot);
+            else
+                server.put(slot, line);
+        }
+        version = Long.parseLong(header[1]);
+        cachedAt = Instant.now();
+        write(cacheFile, String.join("\n", server.values()));
+        Map<String, String> shown = new HashMap<>();
+        for (String slot : slots) {
+            Map<String, String> view = new HashMap<>();
+            if (server.containsKey(slot))
+                view.put(slot, server.get(slot));
+            for (Edit edit : outbox) {
+                if (edit.slot().equals(slot))
+                    apply(view, edit);
+            }
+            shown.put(slot, view.get(slot));
+        }
+        return shown;
+    }
+
+    //---------------------- Outbox ----------------------
+    public synchronized int pending() {
+        return outbox.size();
+    }
+
+    // Queues a SYNC item, checked against the offline view as the server would check it. Returns the reply
+    // to show the user.
+    public synchronized String queue(String item) {
+        Edit edit = new Edit(item);
+        Map<String, String> view = new HashMap<>(server);
+        for (Edit queued : outbox)
+            apply(view, queued);
+        String current = view.get(edit.slot());
+        switch (edit.command()) {
+            case "ADD_LECTURE":
+                if (current != null)
+                    return "Timeslot already taken! Choose another time.";
+                break;
+            case "REMOVE_LECTURE":
+                if (current == null)
+                    return "No lecture scheduled in this time slot.";
+                break;
+            default:
+                if (current != null)
+                    return "Undo failed: Timeslot already occupied.";
+                break;
+        }
+        Edit last = lastFor(edit.slot());
+        boolean cancels = last != null && !last.inFlight && last.sameLecture(edit)
+                && (edit.command().equals("REMOVE_LECTURE") && last.command().equals("ADD_LECTURE")
+                || edit.command().equals("UNDO_REMOVE") && last.command().equals("REMOVE_LECTURE"));
+        if (cancels)
+            outbox.remove(last);
+        else
+            outbox.add(edit);
+        stale.add(edit.slot());
+        saveOutbox();
+        if (cancels)
+            return "Offline: cancelled the queued " + last + ".";
+        return "Offline: queued " + edit + " (" + outbox.size() + " pending).";
+    }
+
+    // Up to max queued edits that are not already in flight, marked as in flight.
+    public synchronized List<Edit> nextBatch(int max) {
+        List<Edit> batch = new ArrayList<>();
+        for (Edit edit : outbox) {
+            if (batch.size() == max)
+                break;
+            if (!edit.inFlight) {
+                edit.inFlight = true;
+                batch.add(edit);
+            }
+        }
+        return batch;
+    }
+
+    // The server has answered for these edits (applied, skipped or conflicting); they leave the outbox.
+    public synchronized void acknowledge(List<Edit> batch) {
+        outbox.removeAll(batch);
+        for (Edit edit : batch)
+            stale.add(edit.slot());
+        saveOutbox();
+    }
+
+    // The batch got no per-item answer (connection lost, server busy); its edits stay queued.
+    public synchronized void retry(List<Edit> batch) {
+        for (Edit edit : batch)
+            edit.inFlight = false;
+    }
+
+    private Edit lastFor(String slot) {
+        for (int i = outbox.size() - 1; i >= 0; i--) {
+            if (outbox.get(i).slot().equals(slot))
+                return outbox.get(i);
+        }
+        return null;
+    }
+
+    // Applies a queued edit to a "day,time" -> listing line view. A restored lecture is shown without its
+    // room and lecturer until the server's listing comes back.
+    private static void apply(Map<String, String> view, Edit edit) {
+        String[] parts = edit.item.split(",");
+        switch (edit.command()) {
+            case "REMOVE_LECTURE":
+                view.remove(edit.slot());
+                break;
+            case "ADD_LECTURE": {
+                String room = parts.length > 6 ? parts[6].trim() : "";
+                String lecturer = parts.length > 7 ? parts[7].trim() : "";
+                String suffix = room.isEmpty() && lecturer.isEmpty() ? ""
+                        : " @ " + (room.isEmpty() ? "-" : room) + (lecturer.isEmpty() ? "" : ", " + lecturer);
+                view.put(edit.slot(), line(edit) + suffix);
+                break;
+            }
+            default:
+                view.put(edit.slot(), line(edit));
+                break;
+        }
+    }
+
+    private static String line(Edit edit) {
+        return edit.slot() + ": " + edit.lecture[0] + " (" + edit.lecture[1] + ", " + edit.lecture[2] + ")";
+    }
+
+    //---------------------- Listing lines ----------------------
+    // "day,time: class (module, type)[ @ room[, lecturer]]" as {day, time, class, module, type}, or null if the
+    // line is not a lecture.
+    public static String[] parseLine(String line) {
+        int colon = line.indexOf(": ");
+        int comma = line.indexOf(',');
+        if (colon < 0 || comma < 0 || comma > colon)
+            return null;
+        String entry = line.substring(colon + 2).trim();
+        int at = entry.lastIndexOf(") @ ");
+        if (at >= 0)
+            entry = entry.substring(0, at + 1);
+        int open = entry.lastIndexOf(" (");
+        int split = entry.lastIndexOf(", ");
+        if (open < 0 || split < open || !entry.endsWith(")"))
+            return null;
+        return new String[]{line.substring(0, comma).trim(), line.substring(comma + 1, colon).trim(),
+                entry.substring(0, open), entry.substring(open + 2, split),
+                entry.substring(split + 2, entry.length() - 1)};
+    }
+
+    //---------------------- Files ----------------------
+    // The listing cache and the outbox are read independently: a damaged cache only costs the instant start (the
+    // server listing replaces it), and must never take the unsent edits with it. An unreadable outbox line is
+    // skipped rather than dropping the edits around it; the original file is then copied aside first, since the
+    // next save rewrites the outbox from memory.
+    private void load() {
+        try {
+            if (Files.exists(cacheFile)) {
+                for (String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+                    String[] fields = parseLine(line);
+                    if (fields != null)
+                        server.put(fields[0] + "," + fields[1], line);
+                }
+                cachedAt = Files.getLastModifiedTime(cacheFile).toInstant();
+            }
+        } catch (IOException | RuntimeException e) {
+            server.clear();
+            cachedAt = null;
+            statusListener.accept("Could not read the cached timetable " + cacheFile + ": " + e.getMessage());
+        }
+        try {
+            if (Files.exists(outboxFile)) {
+                int skipped = 0;
+                for (String line : Files.readAllLines(outboxFile, StandardCharsets.UTF_8)) {
+                    try {
+                        outbox.add(new Edit(line.trim()));
+                    } catch (RuntimeException e) {
+                        if (!line.isBlank())
+                            skipped++;
+                    }
+                }
+                if (skipped > 0)
+                    statusListener.accept("Skipped " + skipped + " unreadable edits in " + outboxFile + "; "
+                            + setAside(false) + ".");
+            }
+        } catch (IOException e) {
+            statusListener.accept("Could not read the offline edits in " + outboxFile + " (" + e.getMessage()
+                    + "); " + setAside(true) + ".");
+        }
+    }
+
+    // Keeps the outbox file as it is on disk out of the way of the next save; returns where it went.
+    private String setAside(boolean move) {
+        Path aside = outboxFile.resolveSibling(outboxFile.getFileName() + ".unreadable");
+        try {
+            if (move)
+                Files.move(outboxFile, aside, StandardCopyOption.REPLACE_EXISTING);
+            else
+                Files.copy(outboxFile, aside, StandardCopyOption.REPLACE_EXISTING);
+            return "the original is kept as " + aside;
+        } catch (IOException e) {
+            return "the original could not be kept: " + e.getMessage();
+        }
+    }
+
+    private void saveOutbox() {
+        StringBuilder sb = new StringBuilder();
+        for (Edit edit : outbox)
+            sb.append(edit.item).append('\n');
+        write(outboxFile, sb.toString());
+    }
+
+    private void write(Path file, String content) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Still usable in memory; the next successful write brings the file up to date.
+            statusListener.accept("Could not write " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.timetableapp;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+
+// When a lecture actually takes place. The timetable is one abstract week; a rule maps a lecture's weekday slot
+// onto real dates: every `interval` weeks from `start` to `end` (inclusive), minus exception dates (weeks off,
+// one-off cancellations). A lecture without a rule runs every week with no end, i.e. WEEKLY.
+public final class Recurrence {
+    public static final Recurrence WEEKLY = new Recurrence(1, LocalDate.MIN, LocalDate.MAX, Set.of());
+
+    private final int interval;            // in weeks: 1 = weekly, 2 = fortnightly
+    private final LocalDate start;
+    private final LocalDate end;
+    private final Set<LocalDate> exceptions;
+
+    private Recurrence(int interval, LocalDate start, LocalDate end, Set<LocalDate> exceptions) {
+        this.interval = interval;
+        this.start = start;
+        this.end = end;
+        this.exceptions = exceptions;
+    }
+
+    // SET_RECURRENCE fields: WEEKLY|FORTNIGHTLY, start date, end date, then any exception dates (ISO yyyy-mm-dd).
+    // "*" leaves a weekly rule open at that end. Throws IllegalArgumentException on anything malformed.
+    public static Recurrence parse(String pattern, String start, String end, String... exceptions) {
+        int interval;
+        switch (pattern) {
+            case "WEEKLY": interval = 1; break;
+            case "FORTNIGHTLY": interval = 2; break;
+            default: throw new IllegalArgumentException("Unknown recurrence pattern: " + pattern);
+        }
+        LocalDate from = start.equals("*") ? LocalDate.MIN : date(start);
+        LocalDate to = end.equals("*") ? LocalDate.MAX : date(end);
+        if (interval > 1 && from.equals(LocalDate.MIN))
+            throw new IllegalArgumentException("A fortnightly rule needs a start date.");
+        if (to.isBefore(from))
+            throw new IllegalArgumentException("Recurrence ends before it starts.");
+        Set<LocalDate> skipped = new TreeSet<>();
+        for (String exception : exceptions) {
+            if (!exception.isBlank())
+                skipped.add(date(exception.trim()));
+        }
+        if (interval == 1 && from.equals(LocalDate.MIN) && to.equals(LocalDate.MAX) && skipped.isEmpty())
+            return WEEKLY;
+        return new Recurrence(interval, from, to, Set.copyOf(skipped));
+    }
+
+    private static LocalDate date(String text) {
+        try {
+            return LocalDate.parse(text.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + text);
+        }
+    }
+
+    public boolean occursOn(LocalDate date) {
+        if (date.isBefore(start) || date.isAfter(end) || exceptions.contains(date))
+            return false;
+        if (interval == 1)
+            return true;
+        long weeks = ChronoUnit.WEEKS.between(start.with(DayOfWeek.MONDAY), date.with(DayOfWeek.MONDAY));
+        return weeks % interval == 0;
+    }
+
+    // LocalDate.MIN / MAX for an open start or end.
+    int interval() {
+        return interval;
+    }
+
+    LocalDate start() {
+        return start;
+    }
+
+    LocalDate end() {
+        return end;
+    }
+
+    Set<LocalDate> exceptions() {
+        return exceptions;
+    }
+
+    // Single-field form used in log records; the inverse of decode.
+    public String encode() {
+        StringJoiner sj = new StringJoiner(" ");
+        sj.add(interval == 1 ? "WEEKLY" : "FORTNIGHTLY");
+        sj.add(start.equals(LocalDate.MIN) ? "*" : start.toString());
+        sj.add(end.equals(LocalDate.MAX) ? "*" : end.toString());
+        new TreeSet<>(exceptions).forEach(d -> sj.add(d.toString()));
+        return sj.toString();
+    }
+
+    public static Recurrence decode(String encoded) {
+        String[] p = encoded.split(" ");
+        String[] exceptions = new String[p.length - 3];
+        System.arraycopy(p, 3, exceptions, 0, exceptions.length);
+        return parse(p[0], p[1], p[2], exceptions);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.timetableapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Replica side of replication: follows a primary's ReplicationServer and applies its records locally.
+// On every (re)connect it sends the last version applied here, so a short outage resumes from the log tail and
+// a long one is repaired by a snapshot. While following, the local server is read-only.
+public class ReplicaFollower {
+    private static final long INITIAL_BACKOFF_MS = 250;
+    private static final long MAX_BACKOFF_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 10_000;   // several missed PINGs
+
+    private final String host;
+    private final int port;
+    private volatile boolean running;
+    private volatile Socket socket;
+    private Thread thread;
+
+    public ReplicaFollower(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public void start() {
+        running = true;
+        TimetableServer.readOnly = true;
+        thread = new Thread(this::followLoop, "replica-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null)
+            thread.interrupt();
+        closeSocket();
+    }
+
+    private void followLoop() {
+        long backoff = INITIAL_BACKOFF_MS;
+        while (running) {
+            try {
+                follow();
+                backoff = INITIAL_BACKOFF_MS;
+            } catch (IOException | RuntimeException e) {
+                if (running)
+                    AsyncLog.warn("Replication from " + host + ":" + port + " interrupted: " + e.getMessage());
+            }
+            closeSocket();
+            try {
+                TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void follow() throws IOException {
+        Socket s = new Socket(host, port);
+        s.setSoTimeout(READ_TIMEOUT_MS);
+        socket = s;
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+        PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+        out.println("SYNC " + TimetableServer.replicationLog.version());
+        AsyncLog.info("Following " + host + ":" + port + " from version " + TimetableServer.replicationLog.version());
+
+        String line;
+        while (running && (line = in.readLine()) != null) {
+            if (line.equals("PING"))
+                continue;
+            if (line.startsWith("SNAPSHOT ")) {
+                long version = Long.parseLong(line.substring(9).trim());
+                List<ReplicationLog.Record> records = new ArrayList<>();
+                while ((line = in.readLine()) != null && !line.equals("END_SNAPSHOT"))
+                    records.add(ReplicationLog.Record.decode(line));
+                // A primary that goes away mid-snapshot must not leave a partial snapshot installed.
+                if (line == null)
+                    throw new IOException("Connection closed during the snapshot at version " + version);
+                TimetableServer.installSnapshot(version, records);
+                AsyncLog.info("Installed snapshot at version " + version + " (" + records.size() + " records)");
+                continue;
+            }
+            if (line.startsWith("Error"))
+                throw new IOException(line);
+            ReplicationLog.Record record = ReplicationLog.Record.decode(line);
+            if (record.version() <= TimetableServer.replicationLog.version())
+                continue;   // already applied before a reconnect
+            TimetableServer.applyReplicated(record);
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            Socket s = socket;
+            if (s != null)
+                s.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
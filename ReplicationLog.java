@@ -0,0 +1,130 @@
+package com.example.timetableapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Ordered log of committed timetable mutations, numbered by version.
+// Every state change on the primary is a record here (PUT, DEL, RESTORE, MOVES, RULE, REPLACE, HIST), and replicas
+// rebuild the same state by applying the records in version order. Only the newest `retain` records are kept;
+// a replica that is further behind than that is sent a snapshot first.
+public class ReplicationLog {
+
+    public record Record(long version, String type, String[] fields) {
+
+        // version|TYPE|field|field... with '\', '|' and line breaks escaped, so a record is one line.
+        public String encode() {
+            StringBuilder sb = new StringBuilder().append(version).append('|').append(type);
+            for (String f : fields) {
+                sb.append('|');
+                for (int i = 0; i < f.length(); i++) {
+                    char c = f.charAt(i);
+                    switch (c) {
+                        case '\\': sb.append("\\\\"); break;
+                        case '|': sb.append("\\p"); break;
+                        case '\n': sb.append("\\n"); break;
+                        case '\r': sb.append("\\r"); break;
+                        default: sb.append(c);
+                    }
+                }
+            }
+            return sb.toString();
+        }
+
+        public static Record decode(String line) {
+            List<String> parts = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '|') {
+                    parts.add(sb.toString());
+                    sb.setLength(0);
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    char n = line.charAt(++i);
+                    sb.append(n == 'p' ? '|' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+                } else {
+                    sb.append(c);
+                }
+            }
+            parts.add(sb.toString());
+            if (parts.size() < 2)
+                throw new IllegalArgumentException("Malformed replication record: " + line);
+            return new Record(Long.parseLong(parts.get(0)), parts.get(1),
+                    parts.subList(2, parts.size()).toArray(new String[0]));
+        }
+    }
+
+    private final int retain;
+    private final ArrayList<Record> records = new ArrayList<>();
+    private long lastVersion;   // version of the newest record (0 = empty history)
+
+    public ReplicationLog(int retain) {
+        this.retain = retain;
+    }
+
+    public synchronized long version() {
+        return lastVersion;
+    }
+
+    public synchronized Record append(String type, String... fields) {
+        return add(new Record(lastVersion + 1, type, fields));
+    }
+
+    // Replica side: keeps the primary's numbering.
+    public synchronized Record appendReplicated(Record record) {
+        if (record.version() != lastVersion + 1)
+            throw new IllegalStateException("Replication gap: have " + lastVersion + ", got " + record.version());
+        return add(record);
+    }
+
+    // Replica side: after installing a snapshot taken at `version`, start a fresh tail from there.
+    public synchronized void resetTo(long version) {
+        records.clear();
+        lastVersion = version;
+        notifyAll();
+    }
+
+    private Record add(Record record) {
+        records.add(record);
+        lastVersion = record.version();
+        if (records.size() > retain * 2)
+            records.subList(0, records.size() - retain).clear();   // amortised trim
+        notifyAll();
+        return record;
+    }
+
+    // True when every record after `version` is still retained, so a follower there can catch up from the tail.
+    public synchronized boolean covers(long version) {
+        if (version > lastVersion)
+            return false;
+        long firstRetained = records.isEmpty() ? lastVersion + 1 : records.get(0).version();
+        return version >= firstRetained - 1;
+    }
+
+    // Records after `version`, waiting up to waitMillis for at least one to arrive.
+    public synchronized List<Record> readAfter(long version, int max, long waitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (lastVersion <= version) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0)
+                return List.of();
+            wait(left);
+        }
+        if (!covers(version))
+            throw new IllegalStateException("Version " + version + " is no longer retained.");
+        int from = records.isEmpty() ? 0 : (int) (version + 1 - records.get(0).version());
+        int to = Math.min(records.size(), from + max);
+        return new ArrayList<>(records.subList(from, to));
+    }
+
+    // Blocks until `version` has been applied locally or the timeout expires.
+    public synchronized boolean awaitVersion(long version, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (lastVersion < version) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0)
+                return false;
+            wait(left);
+        }
+        return true;
+    }
+}
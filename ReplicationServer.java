@@ -0,0 +1,116 @@
+package com.example.timetableapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+
+// Primary side of replication: streams the ordered mutation log to connected replicas.
+// A replica opens a connection and sends "SYNC <version>" with the last version it applied.
+// If the retained log tail still covers that version the tail is streamed straight away; otherwise the replica
+// first receives "SNAPSHOT <v>", the full state as records, and "END_SNAPSHOT", and the tail follows from v.
+// Each record is one line (see ReplicationLog.Record.encode). "PING" is sent while idle so dead links are noticed.
+// The stream is unauthenticated and carries the whole timetable, so it listens on loopback only unless
+// timetable.replication.remote is set (for replicas on other hosts, behind a firewall or private network).
+public class ReplicationServer {
+    static final boolean REMOTE = Boolean.getBoolean("timetable.replication.remote");
+    private static final int BATCH = 512;
+    private static final long IDLE_PING_MS = 2000;
+
+    private final int port;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public ReplicationServer(int port) {
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        serverSocket = REMOTE ? new ServerSocket(port) : new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        AsyncLog.info("Replication listening on " + (REMOTE ? "port " : "loopback port ") + port);
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket replica = serverSocket.accept();
+                Thread.ofVirtual().name("replication-" + replica.getRemoteSocketAddress()).start(() -> serve(replica));
+            } catch (IOException e) {
+                if (running)
+                    AsyncLog.error("Replication accept failed", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        String peer = String.valueOf(socket.getRemoteSocketAddress());
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), false)) {
+            String hello = in.readLine();
+            if (hello == null || !hello.startsWith("SYNC ")) {
+                out.println("Error: expected SYNC <version>");
+                out.flush();
+                return;
+            }
+            long position = Long.parseLong(hello.substring(5).trim());
+            AsyncLog.info("Replica " + peer + " syncing from version " + position);
+            ReplicationLog log = TimetableServer.replicationLog;
+            while (running) {
+                if (!log.covers(position)) {
+                    position = sendSnapshot(out);
+                    AsyncLog.info("Replica " + peer + " sent snapshot at version " + position);
+                }
+                List<ReplicationLog.Record> records;
+                try {
+                    records = log.readAfter(position, BATCH, IDLE_PING_MS);
+                } catch (IllegalStateException e) {
+                    continue;   // trimmed while we were behind; next pass sends a snapshot
+                }
+                if (records.isEmpty()) {
+                    out.println("PING");
+                } else {
+                    for (ReplicationLog.Record r : records)
+                        out.println(r.encode());
+                    position = records.get(records.size() - 1).version();
+                }
+                out.flush();
+                if (out.checkError())
+                    break;
+            }
+        } catch (IOException | NumberFormatException e) {
+            AsyncLog.warn("Replica " + peer + " stream ended: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        AsyncLog.info("Replica " + peer + " disconnected");
+    }
+
+    private static long sendSnapshot(PrintWriter out) {
+        Map.Entry<Long, List<ReplicationLog.Record>> snapshot = TimetableServer.snapshot();
+        out.println("SNAPSHOT " + snapshot.getKey());
+        for (ReplicationLog.Record r : snapshot.getValue())
+            out.println(r.encode());
+        out.println("END_SNAPSHOT");
+        out.flush();
+        return snapshot.getKey();
+    }
+}
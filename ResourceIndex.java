@@ -0,0 +1,166 @@
+package com.example.timetableapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Occupancy of rooms and lecturers: for each resource, the slots ("day,time") where it is booked by a lecture of
+// this timetable, and the slots held for other timetables (HOLD_RESOURCE, e.g. another cohort's booking).
+// Both are hash maps keyed by resource, so a clash check is a few lookups whatever the number of rooms, lecturers
+// or lectures. This timetable has one lecture per slot, so its own lectures cannot clash with each other; what
+// can clash is a lecture and a hold on the same resource and slot.
+// Like TimetableAggregates, it is updated in applyRecord under the store lock (on replicas too) and read without it.
+public final class ResourceIndex {
+
+    public enum Kind {
+        ROOM, LECTURER;
+
+        String of(TimetableServer.Lecture lecture) {
+            return this == ROOM ? lecture.getRoom() : lecture.getLecturer();
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        static Kind parse(String s) {
+            try {
+                return valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("expected ROOM or LECTURER, got '" + s.trim() + "'.");
+            }
+        }
+    }
+
+    private final Map<String, Set<String>> booked = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> held = new ConcurrentHashMap<>();
+
+    private static String key(Kind kind, String name) {
+        return kind.name() + ":" + name;
+    }
+
+    private static String slot(String day, String time) {
+        return day + "," + time;
+    }
+
+    //---------------------- This timetable's lectures ----------------------
+    public void lectureAdded(TimetableServer.Lecture lecture) {
+        apply(lecture, true);
+    }
+
+    public void lectureRemoved(TimetableServer.Lecture lecture) {
+        apply(lecture, false);
+    }
+
+    private void apply(TimetableServer.Lecture lecture, boolean add) {
+        String at = slot(lecture.getDay(), lecture.getTime());
+        for (Kind kind : Kind.values()) {
+            String name = kind.of(lecture);
+            if (name.isEmpty())
+                continue;
+            if (add) {
+                booked.computeIfAbsent(key(kind, name), k -> ConcurrentHashMap.newKeySet()).add(at);
+            } else {
+                booked.computeIfPresent(key(kind, name), (k, slots) -> {
+                    slots.remove(at);
+                    return slots.isEmpty() ? null : slots;
+                });
+            }
+        }
+    }
+
+    // Used when a whole timetable is swapped in (CSV import); holds are kept.
+    public void rebuild(Map<String, ? extends Map<String, TimetableServer.Lecture>> timetable) {
+        booked.clear();
+        for (Map<String, TimetableServer.Lecture> day : timetable.values()) {
+            for (TimetableServer.Lecture lecture : day.values())
+                lectureAdded(lecture);
+        }
+    }
+
+    //---------------------- Holds for other timetables ----------------------
+    public void hold(Kind kind, String name, String day, String time, String holder) {
+        held.computeIfAbsent(key(kind, name), k -> new ConcurrentHashMap<>()).put(slot(day, time), holder);
+    }
+
+    // Returns false if there was no hold.
+    public boolean release(Kind kind, String name, String day, String time) {
+        boolean[] removed = {false};
+        held.computeIfPresent(key(kind, name), (k, slots) -> {
+            removed[0] = slots.remove(slot(day, time)) != null;
+            return slots.isEmpty() ? null : slots;
+        });
+        return removed[0];
+    }
+
+    public String holder(Kind kind, String name, String day, String time) {
+        Map<String, String> slots = held.get(key(kind, name));
+        return slots == null ? null : slots.get(slot(day, time));
+    }
+
+    public void clearHolds() {
+        held.clear();
+    }
+
+    // Every hold as {kind, name, day, time, holder}, for replica snapshots and HOLDS.
+    public List<String[]> holds() {
+        List<String[]> all = new ArrayList<>();
+        held.forEach((resource, slots) -> {
+            int colon = resource.indexOf(':');
+            slots.forEach((at, holder) -> {
+                int comma = at.indexOf(',');
+                all.add(new String[]{resource.substring(0, colon), resource.substring(colon + 1),
+                        at.substring(0, comma), at.substring(comma + 1), holder});
+            });
+        });
+        return all;
+    }
+
+    //---------------------- Clash checks ----------------------
+    // Why `lecture` cannot go into day/time: one of its resources is held there for another timetable. Null if it
+    // can. This timetable's bookings are not counted: the only one at that slot is the lecture being replaced.
+    public String clash(TimetableServer.Lecture lecture, String day, String time) {
+        for (Kind kind : Kind.values()) {
+            String name = kind.of(lecture);
+            if (name.isEmpty())
+                continue;
+            String holder = holder(kind, name, day, time);
+            if (holder != null)
+                return kind.label() + " " + name + " is held for " + holder + " on " + day + " " + time;
+        }
+        return null;
+    }
+
+    // Why a hold cannot be placed: the resource is booked by this timetable, or held for someone else. Null if it
+    // can (holding again for the same holder is allowed).
+    public String holdClash(Kind kind, String name, String day, String time, String holder) {
+        Set<String> slots = booked.get(key(kind, name));
+        if (slots != null && slots.contains(slot(day, time)))
+            return kind.label() + " " + name + " is booked by this timetable on " + day + " " + time;
+        String current = holder(kind, name, day, time);
+        if (current != null && !current.equals(holder))
+            return kind.label() + " " + name + " is held for " + current + " on " + day + " " + time;
+        return null;
+    }
+
+    //---------------------- Reads ----------------------
+    // Slots ("day,time") where the resource is in use: "" for this timetable's lectures, else the holder.
+    public Map<String, String> uses(Kind kind, String name) {
+        Map<String, String> uses = new HashMap<>(held.getOrDefault(key(kind, name), Map.of()));
+        for (String at : booked.getOrDefault(key(kind, name), Set.of()))
+            uses.put(at, "");
+        return uses;
+    }
+
+    // Distinct resources in use, for STATS.
+    public int size() {
+        Set<String> all = new HashSet<>(booked.keySet());
+        all.addAll(held.keySet());
+        return all.size();
+    }
+}
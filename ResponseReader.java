@@ -0,0 +1,40 @@
+package com.example.timetableapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+// Reads exactly one server response off the line protocol.
+// The server has no explicit terminator: status replies ("Lecture added successfully.") are one line,
+// while listing commands print a block ending in an empty line, or a single "No ..." line when empty.
+// A listing command that is refused (READ_ONLY replica, BUSY under load, "Error: ..." from the router) also
+// answers with one line.
+public final class ResponseReader {
+
+    private ResponseReader() {
+    }
+
+    public static boolean isMultiLine(String command) {
+        command = ServerMetrics.commandName(command);
+        return command.equals("VIEW_TIMETABLE") || command.equals("VIEW_HISTORY")
+                || command.equals("GET_LECTURES") || command.equals("CHANGES") || command.equals("EARLY_LECTURES")
+                || command.equals("STATS") || command.equals("STATS_HOURS") || command.equals("OCCURRENCES")
+                || command.equals("EXPORT_ICS") || command.equals("QUERY")
+                || command.equals("RESOURCE") || command.equals("HOLDS") || command.equals("SYNC");
+    }
+
+    // Returns the response lines joined with '\n' (trailing blank line excluded), or null on end of stream.
+    public static String read(BufferedReader in, String command) throws IOException {
+        String first = in.readLine();
+        if (first == null)
+            return null;
+        if (!isMultiLine(command) || first.startsWith("No ") || first.isEmpty()
+                || first.startsWith("Error") || first.startsWith("READ_ONLY") || first.startsWith("BUSY"))
+            return first;
+        StringBuilder sb = new StringBuilder(first);
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            sb.append('\n').append(line);
+        }
+        return sb.toString();
+    }
+}
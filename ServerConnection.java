@@ -0,0 +1,264 @@
+package com.example.timetableapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Client-side request engine for one server connection.
+// Callers get a CompletableFuture per request. A single I/O thread owns the socket: it takes everything
+// queued so far as one batch, writes it with a single flush, then reads the responses back in order.
+// The server answers each connection strictly in sequence, so the n-th response belongs to the n-th request.
+// Identical read-only commands that are still waiting to be sent share one request and one response, as long
+// as no write was queued in between (a later read must observe the write).
+// If the socket drops, requests already written fail, queued ones are kept, and the loop reconnects with
+// exponential backoff. Every (re)connect offers compression first (see StreamCompression); a batch is one
+// flush and therefore one compressed frame.
+// When nothing has been sent for HEARTBEAT_MS the loop sends a PING, which keeps the server from reaping an idle
+// session and notices a dead peer early; any response slower than READ_TIMEOUT_MS counts as a dropped connection.
+// A client working offline starts with connectInBackground(): the loop keeps trying with the same backoff, and
+// the connected listener runs (on the I/O thread) whenever a connection comes up, so queued edits can be synced.
+public class ServerConnection {
+    private static final Set<String> COALESCABLE = Set.of("VIEW_TIMETABLE", "GET_LECTURES", "VIEW_HISTORY", "STATS",
+            "STATS_HOURS");
+    private static final long INITIAL_BACKOFF_MS = 250;
+    private static final long MAX_BACKOFF_MS = 10_000;
+    static final long HEARTBEAT_MS = Long.getLong("timetable.client.heartbeatMs", 15_000);
+    static final int READ_TIMEOUT_MS = Integer.getInteger("timetable.client.readTimeoutMs", 30_000);
+
+    private final String host;
+    private final int port;
+    private final Consumer<String> statusListener;
+    private volatile Runnable connectedListener = () -> { };
+
+    private final LinkedBlockingQueue<Request> outgoing = new LinkedBlockingQueue<>();
+    private final Map<String, Request> queuedReads = new HashMap<>();  // guarded by itself
+    private volatile boolean closed;
+    private volatile boolean connected;
+    private Socket socket;
+    private BufferedReader in;
+    private PrintWriter out;
+    private Thread ioThread;
+
+    public ServerConnection(String host, int port, Consumer<String> statusListener) {
+        this.host = host;
+        this.port = port;
+        this.statusListener = statusListener;
+    }
+
+    // Opens the first connection synchronously so the caller can report a failed login.
+    public void connect() throws IOException {
+        open();
+        ioThread = new Thread(this::ioLoop, "timetable-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    // Starts without a connection; the I/O loop connects as soon as the server can be reached.
+    public void connectInBackground() {
+        ioThread = new Thread(this::ioLoop, "timetable-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    // Runs on the I/O thread after every reconnect, before anything else is sent on the new connection.
+    public void setConnectedListener(Runnable listener) {
+        this.connectedListener = listener;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean isConnected() {
+        return connected && !closed;
+    }
+
+    public CompletableFuture<String> send(String command) {
+        synchronized (queuedReads) {
+            if (COALESCABLE.contains(command)) {
+                Request pending = queuedReads.get(command);
+                if (pending != null)
+                    return pending.future;
+                Request request = new Request(command, command);
+                queuedReads.put(command, request);
+                enqueue(request);
+                return request.future;
+            }
+            Request request = new Request(command.split(",", 2)[0], command);
+            enqueueWrite(request);
+            return request.future;
+        }
+    }
+
+    public CompletableFuture<String> sendImportCSV(String csvContent) {
+        StringBuilder payload = new StringBuilder("IMPORT_CSV\nBEGIN_CSV\n");
+        for (String line : csvContent.split("\n")) {
+            payload.append(line).append("\n");
+        }
+        payload.append("END_CSV");
+        Request request = new Request("IMPORT_CSV", payload.toString());
+        synchronized (queuedReads) {
+            enqueueWrite(request);
+        }
+        return request.future;
+    }
+
+    // A client's offline edits as one SYNC batch (see TimetableServer.handleSync).
+    public CompletableFuture<String> sendSync(List<String> items) {
+        StringBuilder payload = new StringBuilder("SYNC\nBEGIN_SYNC\n");
+        for (String item : items) {
+            payload.append(item).append("\n");
+        }
+        payload.append("END_SYNC");
+        Request request = new Request("SYNC", payload.toString());
+        synchronized (queuedReads) {
+            enqueueWrite(request);
+        }
+        return request.future;
+    }
+
+    public void close() {
+        closed = true;
+        if (ioThread != null)
+            ioThread.interrupt();
+        closeSocket();
+        IOException reason = new IOException("Connection closed.");
+        Request r;
+        while ((r = outgoing.poll()) != null) {
+            r.future.completeExceptionally(reason);
+        }
+        synchronized (queuedReads) {
+            queuedReads.clear();
+        }
+    }
+
+    // Caller holds queuedReads. Reads queued before a write must not absorb reads issued after it.
+    private void enqueueWrite(Request request) {
+        queuedReads.clear();
+        enqueue(request);
+    }
+
+    private void enqueue(Request request) {
+        if (closed) {
+            request.future.completeExceptionally(new IOException("Connection closed."));
+            return;
+        }
+        outgoing.offer(request);
+    }
+
+    //---------------------- I/O loop ----------------------
+    private void ioLoop() {
+        List<Request> batch = new ArrayList<>();
+        if (!connected)
+            awaitConnection();
+        while (!closed) {
+            try {
+                Request first = outgoing.poll(HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+                batch.add(first != null ? first : new Request("PING", "PING"));
+                outgoing.drainTo(batch);
+                synchronized (queuedReads) {
+                    // Once sent, a read can no longer absorb new callers; they need state after this batch.
+                    for (Request r : batch) {
+                        queuedReads.remove(r.command, r);
+                    }
+                }
+                for (Request r : batch) {
+                    out.println(r.payload);
+                }
+                out.flush();
+                if (out.checkError())
+                    throw new IOException("Write failed.");
+                for (Request r : batch) {
+                    String response = ResponseReader.read(in, r.command);
+                    if (response == null)
+                        throw new IOException("Server closed the connection.");
+                    r.future.complete(response);
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                // Anything in this batch may or may not have been applied, so it is failed rather than replayed.
+                for (Request r : batch) {
+                    r.future.completeExceptionally(e);
+                }
+                batch.clear();
+                if (!closed)
+                    reconnect();
+            }
+        }
+    }
+
+    private void reconnect() {
+        connected = false;
+        closeSocket();
+        statusListener.accept("Connection lost, reconnecting...");
+        awaitConnection();
+    }
+
+    private void awaitConnection() {
+        long backoff = INITIAL_BACKOFF_MS;
+        while (!closed) {
+            try {
+                // Jitter keeps a fleet of clients from reconnecting in lockstep after a server restart.
+                TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+                open();
+                statusListener.accept("Reconnected.");
+                connectedListener.run();
+                return;
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        Socket s = new Socket(host, port);
+        s.setSoTimeout(READ_TIMEOUT_MS);
+        InputStream wireIn = s.getInputStream();
+        OutputStream wireOut = s.getOutputStream();
+        if (StreamCompression.enabled() && StreamCompression.negotiate(wireIn, wireOut)) {
+            wireIn = new StreamCompression.FrameInputStream(wireIn);
+            wireOut = new StreamCompression.FrameOutputStream(wireOut);
+        }
+        in = new BufferedReader(new InputStreamReader(wireIn));
+        out = new PrintWriter(wireOut, false);
+        socket = s;
+        connected = true;
+    }
+
+    private void closeSocket() {
+        try {
+            if (socket != null)
+                socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static class Request {
+        final String command;   // command name, used to frame the response
+        final String payload;   // exact text written to the socket
+        final CompletableFuture<String> future = new CompletableFuture<>();
+
+        Request(String command, String payload) {
+            this.command = command;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.timetableapp;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+// Server-wide counters, gauges and per-command latency histograms.
+// Every recording path is lock-free (LongAdder / LatencyHistogram), so handler threads never contend on metrics.
+// Read through the STATS protocol command or JMX (com.example.timetableapp:type=ServerMetrics).
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    // Commands outside this set are folded into UNKNOWN so a misbehaving client cannot grow the map.
+    private static final String[] COMMANDS = {"ADD_LECTURE", "REMOVE_LECTURE", "UNDO_REMOVE", "VIEW_TIMETABLE",
+            "VIEW_HISTORY", "EARLY_LECTURES", "GET_LECTURES", "CHANGES", "IMPORT_CSV", "STATS", "STATS_HOURS",
+            "VERSION", "MIN_VERSION", "PROMOTE", "COMPRESS", "SET_RECURRENCE", "CLEAR_RECURRENCE", "OCCURRENCES", "EXPORT_ICS",
+            "IMPORT_ICS", "QUERY", "HOLD_RESOURCE", "RELEASE_RESOURCE", "RESOURCE", "HOLDS", "SYNC", "PING", "STOP_CONNECTION", "UNKNOWN"};
+
+    private final Map<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LongAdder lockAcquisitions = new LongAdder();
+    private final AtomicBoolean registered = new AtomicBoolean();
+
+    public ServerMetrics() {
+        for (String command : COMMANDS)
+            commands.put(command, new CommandMetrics());
+    }
+
+    //---------------------- Recording ----------------------
+    public static String commandName(String message) {
+        int comma = message.indexOf(',');
+        return comma < 0 ? message : message.substring(0, comma);
+    }
+
+    public void recordCommand(String command, long elapsedNanos, boolean failed) {
+        CommandMetrics m = commands.get(command);
+        if (m == null)
+            m = commands.get("UNKNOWN");
+        m.count.increment();
+        if (failed)
+            m.errors.increment();
+        m.latency.record(elapsedNanos / 1000);
+    }
+
+    public void connectionOpened() {
+        activeConnections.increment();
+        totalConnections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    public void recordLockWait(long nanos) {
+        lockWaitNanos.add(nanos);
+        lockAcquisitions.increment();
+    }
+
+    public InputStream countIn(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0)
+                    bytesIn.increment();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0)
+                    bytesIn.add(n);
+                return n;
+            }
+        };
+    }
+
+    public OutputStream countOut(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut.increment();
+            }
+
+            @Override
+            public void write(byte[] buf, int off, int len) throws IOException {
+                out.write(buf, off, len);
+                bytesOut.add(len);
+            }
+        };
+    }
+
+    //---------------------- Reporting ----------------------
+    // Plain key=value lines for the STATS command; the caller terminates the block with a blank line.
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("connections.active=").append(getActiveConnections()).append("\n");
+        sb.append("connections.total=").append(getTotalConnections()).append("\n");
+        sb.append("connections.open=").append(getOpenConnections()).append("\n");
+        sb.append("connections.idle=").append(getIdleConnections()).append("\n");
+        sb.append("connections.reaped.idle=").append(TimetableServer.reaper.reapedIdle()).append("\n");
+        sb.append("connections.reaped.readTimeout=").append(TimetableServer.reaper.reapedReadTimeout()).append("\n");
+        sb.append("bytes.in=").append(getBytesIn()).append("\n");
+        sb.append("bytes.out=").append(getBytesOut()).append("\n");
+        sb.append("lock.acquisitions=").append(lockAcquisitions.sum()).append("\n");
+        sb.append("lock.wait.us=").append(getLockWaitMicros()).append("\n");
+        sb.append("history.size=").append(getHistorySize()).append("\n");
+        sb.append("log.dropped=").append(getLogDropped()).append("\n");
+        sb.append("replication.version=").append(TimetableServer.replicationLog.version()).append("\n");
+        sb.append("replication.readOnly=").append(TimetableServer.readOnly).append("\n");
+        sb.append("resources.indexed=").append(TimetableServer.resources.size()).append("\n");
+        sb.append("query.plans.cached=").append(LectureQuery.cachedPlans()).append("\n");
+        sb.append("query.plans.hits=").append(LectureQuery.cacheHits()).append("\n");
+        sb.append("query.plans.misses=").append(LectureQuery.cacheMisses()).append("\n");
+        sb.append(TimetableServer.admission.report());
+        for (Map.Entry<String, CommandMetrics> e : new TreeMap<>(commands).entrySet()) {
+            CommandMetrics m = e.getValue();
+            if (m.count.sum() == 0)
+                continue;
+            LatencyHistogram h = m.latency;
+            sb.append(String.format("command.%s count=%d errors=%d mean.us=%.1f p50.us=%d p90.us=%d p99.us=%d max.us=%d%n",
+                    e.getKey(), m.count.sum(), m.errors.sum(), h.mean(), h.percentile(50), h.percentile(90),
+                    h.percentile(99), h.max()));
+        }
+        return sb.toString();
+    }
+
+    public void registerMBean() {
+        if (!registered.compareAndSet(false, true))
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("com.example.timetableapp:type=ServerMetrics"));
+        } catch (Exception e) {
+            AsyncLog.error("Unable to register metrics MBean", e);
+        }
+    }
+
+    @Override public long getActiveConnections() { return activeConnections.sum(); }
+    @Override public long getTotalConnections() { return totalConnections.sum(); }
+    @Override public int getOpenConnections() { return TimetableServer.reaper.openSessions(); }
+    @Override public int getIdleConnections() { return TimetableServer.reaper.idleSessions(); }
+    @Override public long getReapedConnections() {
+        return TimetableServer.reaper.reapedIdle() + TimetableServer.reaper.reapedReadTimeout();
+    }
+    @Override public long getBytesIn() { return bytesIn.sum(); }
+    @Override public long getBytesOut() { return bytesOut.sum(); }
+    @Override public long getLockWaitMicros() { return lockWaitNanos.sum() / 1000; }
+    @Override public int getHistorySize() { return TimetableServer.historyLog.size(); }
+    @Override public long getLogDropped() { return AsyncLog.droppedCount(); }
+    @Override public String getReport() { return report(); }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        commands.forEach((name, m) -> result.put(name, m.count.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCommandErrors() {
+        Map<String, Long> result = new TreeMap<>();
+        commands.forEach((name, m) -> result.put(name, m.errors.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCommandP99Micros() {
+        Map<String, Long> result = new TreeMap<>();
+        commands.forEach((name, m) -> result.put(name, m.latency.percentile(99)));
+        return result;
+    }
+
+    private static class CommandMetrics {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
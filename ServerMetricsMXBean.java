@@ -0,0 +1,21 @@
+package com.example.timetableapp;
+
+import java.util.Map;
+
+// JMX view of ServerMetrics, registered as com.example.timetableapp:type=ServerMetrics.
+public interface ServerMetricsMXBean {
+    long getActiveConnections();
+    long getTotalConnections();
+    int getOpenConnections();
+    int getIdleConnections();
+    long getReapedConnections();
+    long getBytesIn();
+    long getBytesOut();
+    long getLockWaitMicros();
+    int getHistorySize();
+    long getLogDropped();
+    Map<String, Long> getCommandCounts();
+    Map<String, Long> getCommandErrors();
+    Map<String, Long> getCommandP99Micros();
+    String getReport();
+}
@@ -0,0 +1,93 @@
+package com.example.timetableapp;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.TextArea;
+import javafx.util.Duration;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded, coalescing status log for a TextArea.
+// Any thread may post() lines onto a lock-free queue; the FX thread drains it at a fixed rate and applies
+// everything since the last pulse as a single text update. Only the newest maxLines lines are retained
+// (ring buffer), and during a burst the queue itself is capped, with the overflow reported as a count.
+public class StatusConsole {
+    private static final Duration PULSE = Duration.millis(100);
+
+    private final TextArea area;
+    private final int maxLines;
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+
+    // Ring buffer of retained lines; only touched on the FX thread.
+    private final String[] lines;
+    private int head;
+    private int size;
+
+    private final Timeline pulse;
+
+    public StatusConsole(TextArea area, int maxLines) {
+        this.area = area;
+        this.maxLines = maxLines;
+        this.lines = new String[maxLines];
+        this.pulse = new Timeline(new KeyFrame(PULSE, e -> drain()));
+        this.pulse.setCycleCount(Animation.INDEFINITE);
+    }
+
+    public void start() {
+        pulse.play();
+    }
+
+    public void stop() {
+        pulse.stop();
+    }
+
+    // Thread-safe; never blocks and never touches the scene graph.
+    public void post(String line) {
+        if (pending.incrementAndGet() > maxLines) {
+            // Older queued lines would scroll out of the ring anyway; drop them now and count them.
+            if (queue.poll() != null) {
+                pending.decrementAndGet();
+                suppressed.increment();
+            }
+        }
+        queue.offer(line);
+    }
+
+    private void drain() {
+        boolean changed = false;
+        long skipped = suppressed.sumThenReset();
+        if (skipped > 0) {
+            push("(" + skipped + " status messages suppressed)");
+            changed = true;
+        }
+        String line;
+        while ((line = queue.poll()) != null) {
+            pending.decrementAndGet();
+            push(line);
+            changed = true;
+        }
+        if (!changed)
+            return;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(lines[(head + i) % maxLines]).append('\n');
+        }
+        area.setText(sb.toString());
+        area.positionCaret(sb.length());
+    }
+
+    private void push(String line) {
+        if (size < maxLines) {
+            lines[(head + size) % maxLines] = line;
+            size++;
+        } else {
+            lines[head] = line;
+            head = (head + 1) % maxLines;
+        }
+    }
+}
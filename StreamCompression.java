@@ -0,0 +1,253 @@
+package com.example.timetableapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Optional per-connection compression for the line protocol.
+// Right after connecting, a client sends "COMPRESS,deflate-v1" and waits for the reply. A server that supports
+// it answers "COMPRESS deflate-v1" and both directions switch to frames from the next byte; anything else
+// ("COMPRESS none", or "Unknown Command" from an older server) leaves the connection as plain text.
+// Every flush becomes one frame: [0][length][bytes] for messages under minBytes, which are not worth the CPU,
+// or [1][length][deflated bytes]. A long streamed reply is cut into a frame every FRAME_BYTES without waiting
+// for the flush, so the writer holds at most that much of it. Each connection keeps one Deflater/Inflater pair for its lifetime, so later
+// messages compress against earlier ones, and both start from a shared dictionary of protocol vocabulary.
+// The peer is not trusted: a frame longer than MAX_FRAME_BYTES, or one that inflates past it, closes the
+// connection with an IOException instead of being buffered.
+public final class StreamCompression {
+    public static final String CODEC = "deflate-v1";
+    public static final String OFFER = "COMPRESS," + CODEC;
+    public static final String ACCEPT = "COMPRESS " + CODEC;
+    public static final String DECLINE = "COMPRESS none";
+
+    static final int MIN_BYTES = Integer.getInteger("timetable.compress.minBytes", 256);
+    static final int MAX_FRAME_BYTES = Integer.getInteger("timetable.compress.maxFrameBytes", 1 << 20);
+    static final int FRAME_BYTES = 64 * 1024;
+    private static final int RAW = 0;
+    private static final int DEFLATED = 1;
+
+    // Part of the deflate-v1 contract: changing it requires a new codec name. Deflate favours dictionary bytes
+    // closest to the data, so the most frequent tokens come last.
+    static final byte[] DICTIONARY = String.join("",
+            "IMPORT_CSV\nBEGIN_CSV\nEND_CSV\nNo lectures available.\nNo history available.\n",
+            "Timetable imported via CSV (replaced current timetable): ",
+            "Lecture early shift:  moved from  to  on Early lectures processed:\nDay  processed.\n",
+            "Jan Feb Mar Apr May Jun Jul Aug Sep Oct Nov Dec  UTC 20",
+            " Sat  Sun  Mon  Tue  Wed  Thu  Fri ",
+            "---                           ---                           ",
+            "Time,Monday,Tuesday,Wednesday,Thursday,Friday\n",
+            "9-10,10-11,11-12,12-1,1-2,2-3,3-4,4-5,5-6,",
+            "(,Tutorial)\",\"(,Lab)\",\"(,Lecture)\",\"",
+            " (, Tutorial)\n (, Lab)\n (, Lecture)\n",
+            "Lecture restored: Lecture removed: Lecture added:  | Tutorial :  | Lab :  | Lecture : ",
+            "Monday,Tuesday,Wednesday,Thursday,Friday,"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private StreamCompression() {
+    }
+
+    public static boolean enabled() {
+        return Boolean.parseBoolean(System.getProperty("timetable.compress", "true"));
+    }
+
+    // Server side: whether a COMPRESS offer lists a codec we support.
+    public static boolean accepts(String offer) {
+        return offer.startsWith("COMPRESS,")
+                && Arrays.asList(offer.substring("COMPRESS,".length()).split(",")).contains(CODEC);
+    }
+
+    // Client side, on a fresh connection before anything else is sent. Reads the reply a byte at a time so
+    // no framed bytes are consumed along with it. Returns true if both directions are now framed.
+    public static boolean negotiate(InputStream in, OutputStream out) throws IOException {
+        out.write((OFFER + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0)
+                throw new EOFException("Server closed the connection during the compression handshake.");
+            if (b != '\r')
+                line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8).equals(ACCEPT);
+    }
+
+    //---------------------- Output ----------------------
+    public static class FrameOutputStream extends OutputStream {
+        private final OutputStream out;
+        // Fastest level: on a LAN the CPU spent at higher levels costs more time than the bytes it saves.
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        private final byte[] chunk = new byte[8192];
+
+        public FrameOutputStream(OutputStream out) {
+            this.out = out;
+            deflater.setDictionary(DICTIONARY);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            pending.write(b);
+            if (pending.size() >= FRAME_BYTES)
+                emit();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, FRAME_BYTES - pending.size());
+                pending.write(b, off, n);
+                off += n;
+                len -= n;
+                if (pending.size() >= FRAME_BYTES)
+                    emit();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            emit();
+            out.flush();
+        }
+
+        // Writes what is pending as one frame (without flushing the underlying stream).
+        private void emit() throws IOException {
+            if (pending.size() > 0) {
+                byte[] message = pending.toByteArray();
+                pending.reset();
+                boolean deflate = message.length >= MIN_BYTES;
+                frame.reset();
+                frame.write(new byte[5], 0, 5);   // type and length, filled in below
+                if (!deflate) {
+                    frame.write(message, 0, message.length);
+                } else {
+                    // SYNC_FLUSH ends the frame on a byte boundary without resetting the window, so the peer can
+                    // decode it now and the next frame still benefits from this one.
+                    deflater.setInput(message);
+                    int n;
+                    do {
+                        n = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                        frame.write(chunk, 0, n);
+                    } while (n == chunk.length);
+                }
+                byte[] bytes = frame.toByteArray();
+                int length = bytes.length - 5;
+                bytes[0] = (byte) (deflate ? DEFLATED : RAW);
+                bytes[1] = (byte) (length >>> 24);
+                bytes[2] = (byte) (length >>> 16);
+                bytes[3] = (byte) (length >>> 8);
+                bytes[4] = (byte) length;
+                // Header and body in one write: split writes meet Nagle and delayed ACKs and stall ~40ms.
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+    }
+
+    //---------------------- Input ----------------------
+    public static class FrameInputStream extends InputStream {
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater(true);
+        private final ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        private final byte[] chunk = new byte[8192];
+        private byte[] frame = new byte[0];
+        private int pos;
+
+        public FrameInputStream(InputStream in) {
+            this.in = new DataInputStream(in);
+            inflater.setDictionary(DICTIONARY);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill())
+                return -1;
+            return frame[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+            int n = Math.min(len, frame.length - pos);
+            System.arraycopy(frame, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return frame.length - pos;
+        }
+
+        // Makes sure there are unread bytes, reading the next frame if needed. False at end of stream.
+        private boolean fill() throws IOException {
+            while (pos >= frame.length) {
+                int type = in.read();
+                if (type < 0)
+                    return false;
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES)
+                    throw new IOException("Frame length " + length + " outside 0.." + MAX_FRAME_BYTES + ".");
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (type == RAW) {
+                    frame = payload;
+                } else if (type == DEFLATED) {
+                    frame = inflate(payload);
+                } else {
+                    throw new IOException("Unknown frame type " + type);
+                }
+                pos = 0;
+            }
+            return true;
+        }
+
+        private byte[] inflate(byte[] payload) throws IOException {
+            inflater.setInput(payload);
+            inflated.reset();
+            try {
+                while (true) {
+                    int n = inflater.inflate(chunk);
+                    if (n > 0) {
+                        inflated.write(chunk, 0, n);
+                        if (inflated.size() > MAX_FRAME_BYTES)
+                            throw new IOException("Compressed frame inflates past " + MAX_FRAME_BYTES + " bytes.");
+                    } else if (inflater.needsInput())
+                        break;
+                    else
+                        throw new IOException("Corrupt compressed frame.");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed frame.", e);
+            }
+            return inflated.toByteArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+    }
+}
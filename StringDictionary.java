@@ -0,0 +1,64 @@
+package com.example.timetableapp;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Append-only string <-> id dictionary used to intern repeated lecture fields.
+// Each distinct string is stored once and gets the next small id; lookups by id are a plain array read.
+// Ids are never reused or removed, so an id stays valid for the life of the process. `limit` caps the number
+// of distinct values (Integer.MAX_VALUE for an open name field). A closed dictionary (closed()) holds a fixed
+// set and rejects anything else, so junk never takes an id from a legitimate value.
+public final class StringDictionary {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final int limit;
+    private final String closedKind;   // "day", "type", ... for a closed dictionary, else null
+    private volatile String[] names = new String[16];
+    private int size;   // guarded by this
+
+    public StringDictionary(int limit, String... seed) {
+        this(limit, null, seed);
+    }
+
+    private StringDictionary(int limit, String closedKind, String... seed) {
+        this.limit = limit;
+        this.closedKind = closedKind;
+        for (String s : seed)
+            idOf(s);
+    }
+
+    // Exactly `values`, in order; idOf throws IllegalArgumentException ("Unknown <kind>: ...") for anything else.
+    public static StringDictionary closed(String kind, String... values) {
+        return new StringDictionary(values.length, kind, values);
+    }
+
+    public int idOf(String value) {
+        Integer id = ids.get(value);
+        if (id != null)
+            return id;
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null)
+                return id;
+            if (size == limit && closedKind != null)
+                throw new IllegalArgumentException("Unknown " + closedKind + ": " + value);
+            if (size == limit)
+                throw new IllegalArgumentException("Too many distinct values (limit " + limit + "): " + value);
+            String[] current = names;
+            if (size == current.length)
+                current = Arrays.copyOf(current, size * 2);
+            current[size] = value;
+            names = current;
+            // Publishing through the map makes the array slot visible to anyone who later gets this id.
+            ids.put(value, size);
+            return size++;
+        }
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.timetableapp;
+
+import javafx.scene.Scene;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+// Light and dark look for the client and server windows, as one stylesheet each.
+// A theme is switched by replacing the single stylesheet on a scene; CSS does the rest, so switching costs the
+// same however many nodes the scene has. Scenes are only restyled when they are shown (apply is a no-op for a
+// scene that is already current), so toggling does not touch the scenes that are not on screen.
+// The stylesheets are built here and passed as data: URLs, which keeps the sources free of resource files.
+public enum Theme {
+    LIGHT(".root { -fx-background: #fff; -fx-control-inner-background: #fff; }\n"
+            + ".label { -fx-text-fill: black; }\n"),
+    DARK(".root { -fx-base: #3a3a3a; -fx-background: #333; -fx-control-inner-background: #555; }\n"
+            + ".label, .text-area, .chart-title, .axis-label, .axis { -fx-text-fill: white; -fx-tick-label-fill: white; }\n");
+
+    // Shared by both themes: the statistics bars keep their colour.
+    private static final String COMMON = ".chart-bar { -fx-bar-fill: orange; }\n";
+
+    private final List<String> stylesheets;
+
+    Theme(String css) {
+        String data = Base64.getEncoder().encodeToString((COMMON + css).getBytes(StandardCharsets.UTF_8));
+        this.stylesheets = List.of("data:text/css;base64," + data);
+    }
+
+    public Theme other() {
+        return this == LIGHT ? DARK : LIGHT;
+    }
+
+    // One stylesheet swap, skipped when the scene already uses this theme.
+    public void apply(Scene scene) {
+        if (scene != null && !scene.getStylesheets().equals(stylesheets))
+            scene.getStylesheets().setAll(stylesheets);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.timetableapp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running totals over a timetable, updated on every mutation instead of recomputed on read.
+// Answering STATS_HOURS costs the number of distinct days/modules/types/classes, never the number of lectures.
+// Each dimension is kept sorted as it is updated, so a report just walks the maps (O(keys), no sorting), and a
+// key is dropped when its count falls to zero, so modules and classes that are gone stop taking space.
+// One instance per timetable; capacity is the number of bookable slots used for utilisation.
+public class TimetableAggregates {
+    private final int capacity;
+    private final LongAdder total = new LongAdder();
+    private final ConcurrentSkipListMap<String, Long> perDay = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Long> perModule = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Long> perType = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Long> perClass = new ConcurrentSkipListMap<>();
+
+    public TimetableAggregates(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void lectureAdded(TimetableServer.Lecture lecture) {
+        apply(lecture, 1);
+    }
+
+    public void lectureRemoved(TimetableServer.Lecture lecture) {
+        apply(lecture, -1);
+    }
+
+    // Used when a whole timetable is swapped in (CSV import).
+    public synchronized void rebuild(Map<String, ? extends Map<String, TimetableServer.Lecture>> timetable) {
+        total.reset();
+        perDay.clear();
+        perModule.clear();
+        perType.clear();
+        perClass.clear();
+        for (Map<String, TimetableServer.Lecture> day : timetable.values()) {
+            for (TimetableServer.Lecture lecture : day.values())
+                apply(lecture, 1);
+        }
+    }
+
+    private void apply(TimetableServer.Lecture lecture, int delta) {
+        total.add(delta);
+        count(perDay, lecture.getDay(), delta);
+        count(perModule, lecture.getModule(), delta);
+        count(perType, lecture.getLectureType(), delta);
+        count(perClass, lecture.getClassName(), delta);
+    }
+
+    // Atomic per key; a merge that reaches zero removes the key.
+    private static void count(ConcurrentSkipListMap<String, Long> counts, String key, long delta) {
+        counts.merge(key, delta, (n, d) -> n + d == 0 ? null : n + d);
+    }
+
+    public long hoursOn(String day) {
+        return perDay.getOrDefault(day, 0L);
+    }
+
+    // Key=value lines for STATS_HOURS; the caller terminates the block with a blank line.
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        long scheduled = total.sum();
+        sb.append("total=").append(scheduled).append("\n");
+        sb.append("capacity=").append(capacity).append("\n");
+        sb.append(String.format("utilisation=%.1f%n", capacity == 0 ? 0.0 : 100.0 * scheduled / capacity));
+        appendDimension(sb, "day.", perDay);
+        appendDimension(sb, "module.", perModule);
+        appendDimension(sb, "type.", perType);
+        appendDimension(sb, "class.", perClass);
+        return sb.toString();
+    }
+
+    private static void appendDimension(StringBuilder sb, String prefix, Map<String, Long> counts) {
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            if (e.getValue() > 0)
+                sb.append(prefix).append(e.getKey()).append("=").append(e.getValue()).append("\n");
+        }
+    }
+}
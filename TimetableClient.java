@@ -2,7 +2,7 @@ package com.example.timetableapp;
 
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.concurrent.Task;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -13,51 +13,65 @@ import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.*;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.paint.Color;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class TimetableClient extends Application {
     private static final String SERVER_ADDRESS = "localhost";
     private static final int SERVER_PORT = 12346;
-
-    private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
+    // Offline edits per SYNC command when they are sent after a reconnect.
+    private static final int SYNC_BATCH = Integer.getInteger("timetable.client.syncBatch", 50);
+
+    // Owns the socket; requests are pipelined and correlated with their responses there.
+    private ServerConnection connection;
+    // Last known timetable and the edits not yet sent (see OfflineStore). Used from the FX thread.
+    private OfflineStore offline;
+    private boolean syncing;
+    // Set when the server answers CHANGES with an error (the router has no single version to offer); the grid
+    // then refreshes from full listings until the next connect.
+    private boolean fullListings;
 
     // Global communicationStatusArea used for connection-related messages.
     private TextArea communicationStatusArea;
-    private List<Scene> scenes = new ArrayList<>();
     private Stage window;
-    private Scene loginScene, homeScene, addLectureScene, removeLectureScene;
-
-    // Persistent scenes for timetable, history, and statistics.
-    private Scene viewTimetableScene, viewHistoryScene, statisticsScene;
-    private GridPane timetableGrid;  // Fixed grid for the timetable.
-    private Label[][] timetableCells; // Array to hold timetable cell labels.
+    private Scene loginScene, homeScene;
+
+    // Every other screen is built once and reused from this cache; the least recently shown is dropped past
+    // MAX_CACHED_SCENES (and rebuilt if it is opened again), so a long-running client keeps a fixed set of scenes.
+    // A scene's user data may hold a Runnable that refreshes it each time it is shown.
+    // One entry per cached screen: addLecture, removeLecture, viewTimetable, statistics, viewHistory.
+    private static final int MAX_CACHED_SCENES = 5;
+    private final Map<String, Scene> sceneCache = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Scene> eldest) {
+            return size() > MAX_CACHED_SCENES;
+        }
+    };
+    private TimetableGridModel timetableModel;  // Observable cells behind the timetable table.
+    private TableView<TimetableGridModel.SlotRow> timetableTable;  // Virtualized: only visible rows get cells.
 
     // Fixed arrays for days and time slots.
     private final String[] days = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
     private final String[] times = {"9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5", "5-6"};
 
-    private boolean isDark = false; // Default to light mode.
+    private Theme theme = Theme.LIGHT; // Default to light mode.
     private boolean isFullScreen = false;
 
-    // For undo functionality.
-    // When adding a lecture, lastAddedLectureKey stores "day,time" of the added lecture.
-    private String lastAddedLectureKey = null;
-    // When removing a lecture, lastRemovedLectureKey stores "day,time" of the removed lecture.
-    private String lastRemovedLectureKey = null;
+    // For undo functionality: {day, time, class, module, type} of the last added and the last removed lecture.
+    // The lecture itself is kept so the undo can also be queued offline (see sendEdit).
+    private String[] lastAddedLecture = null;
+    private String[] lastRemovedLecture = null;
 
     public static void main(String[] args) {
         launch(args);
@@ -66,10 +80,12 @@ public class TimetableClient extends Application {
     @Override
     public void start(Stage primaryStage) {
         window = primaryStage;
-
         communicationStatusArea = new TextArea();
         communicationStatusArea.setEditable(false);
         communicationStatusArea.setMaxHeight(100);
+        // Writes happen on the FX thread (see the field), so failures can go straight to the status area.
+        offline = new OfflineStore(SERVER_ADDRESS, SERVER_PORT, List.of(days), List.of(times),
+                message -> communicationStatusArea.appendText("Client: " + message + "\n"));
 
         createLoginScene();
         window.setTitle("Lecture Scheduler");
@@ -93,25 +109,43 @@ public class TimetableClient extends Application {
         communicationStatusArea.appendText("Server: Waiting for login.\n");
         layout.getChildren().addAll(loginButton, toggleFullScreenButton, communicationStatusArea);
         loginScene = new Scene(layout, 400, 300);
-        scenes.add(loginScene);
-        applyThemeToScene(loginScene);
+        theme.apply(loginScene);
     }
 
     //---------------------- CONNECT TO SERVER ----------------------
+    // Without a server the client still opens, working offline from the cached timetable while the connection
+    // keeps retrying in the background; queued edits are synced once it is up.
     private void connectToServer() {
+        if (connection != null)
+            connection.close();
+        connection = new ServerConnection(SERVER_ADDRESS, SERVER_PORT, message ->
+                Platform.runLater(() -> communicationStatusArea.appendText("Server: " + message + "\n")));
+        offline.forgetVersion();
+        fullListings = false;
+        connection.setConnectedListener(() -> {
+            offline.forgetVersion();
+            Platform.runLater(() -> {
+                fullListings = false;
+                syncOutbox();
+            });
+        });
         try {
-            socket = new Socket(SERVER_ADDRESS, SERVER_PORT);
-            in  = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            connection.connect();
             communicationStatusArea.appendText("Server: Successfully Connected to Server!\n");
-
-            createHomePageScene();
-            window.setScene(homeScene);
-            if (isFullScreen)
-                window.setFullScreen(true);
+            syncOutbox();
         } catch (Exception e) {
-            communicationStatusArea.appendText("Server: Failed to connect.\n");
+            connection.connectInBackground();
+            Instant cachedAt = offline.cachedAt();
+            communicationStatusArea.appendText("Server: Failed to connect. Working offline"
+                    + (cachedAt != null ? " from the timetable cached at " + cachedAt : "") + "; "
+                    + offline.pending() + " edits waiting to sync.\n");
         }
+        createHomePageScene();
+        showScene(homeScene);
+    }
+
+    private boolean isOnline() {
+        return connection != null && connection.isConnected();
     }
 
     private void toggleFullScreen() {
@@ -165,68 +199,145 @@ public class TimetableClient extends Application {
                 viewHistoryButton, earlyLecturesButton, otherButton, logoutButton, stopConnectionButton,
                 communicationStatusArea, toggleThemeButton);
         homeScene = new Scene(layout, 400, 500);
-        scenes.add(homeScene);
+    }
+
+    //---------------------- Scene Navigation ----------------------
+    // Shows a scene in the current theme and runs its refresh action, if it has one.
+    private void showScene(Scene scene) {
+        theme.apply(scene);
+        window.setScene(scene);
+        if (isFullScreen)
+            window.setFullScreen(true);
+        if (scene.getUserData() instanceof Runnable)
+            ((Runnable) scene.getUserData()).run();
+    }
 
-        // Initially apply the current theme.
-        applyThemeToScene(homeScene);
+    private void showCachedScene(String name, Supplier<Scene> factory) {
+        showScene(sceneCache.computeIfAbsent(name, k -> factory.get()));
     }
 
     //---------------------- sendCommand Helper ----------------------
-    private void sendCommand(String command, java.util.function.Consumer<String> onResponse) {
-        if (socket == null || socket.isClosed()) {
-            communicationStatusArea.appendText("Server: Disconnected.\n");
+    // Responses are delivered on the FX thread. A full GET_LECTURES listing is cached on disk and answered with
+    // the queued offline edits applied; offline it is answered from the cache alone.
+    private void sendCommand(String command, Consumer<String> onResponse) {
+        boolean listing = command.equals("GET_LECTURES");
+        if (!isOnline()) {
+            if (listing)
+                onResponse.accept(offline.listing());
+            else
+                communicationStatusArea.appendText("Server: Offline; " + ServerMetrics.commandName(command)
+                        + " needs the server.\n");
             return;
         }
-        Task<String> task = new Task<>() {
-            @Override
-            protected String call() throws Exception {
-                out.println(command);
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = in.readLine()) != null) {
-                    sb.append(line).append("\n");
-                    if (!in.ready()) break;
-                }
-                return sb.toString();
+        connection.send(command).whenComplete((response, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                communicationStatusArea.appendText("Server: Error processing command.\n");
+            } else if (listing && !response.startsWith("Error") && !response.startsWith("BUSY")
+                    && !response.startsWith("READ_ONLY")) {
+                offline.saveListing(response);
+                onResponse.accept(offline.listing());
+            } else {
+                onResponse.accept(response);
             }
-        };
-        task.setOnSucceeded(e -> onResponse.accept(task.getValue()));
-        task.setOnFailed(e -> communicationStatusArea.appendText("Server: Error processing command.\n"));
-        new Thread(task).start();
+        }));
+    }
+
+    // ADD_LECTURE, REMOVE_LECTURE and UNDO_REMOVE. Sent as they are when connected and nothing is queued;
+    // otherwise `item`, the edit's SYNC form, goes into the outbox behind the earlier offline edits. An edit
+    // whose connection dropped before the reply is queued as well: it may or may not have been applied, and the
+    // SYNC item is safe either way.
+    private void sendEdit(String command, String item, Consumer<String> onResponse) {
+        if (!isOnline() || offline.pending() > 0) {
+            onResponse.accept(offline.queue(item));
+            syncOutbox();
+            return;
+        }
+        connection.send(command).whenComplete((response, error) -> Platform.runLater(() ->
+                onResponse.accept(error != null ? offline.queue(item) : response)));
+    }
+
+    //---------------------- Offline Sync ----------------------
+    // Sends the outbox as SYNC batches of up to SYNC_BATCH edits, pipelined together, and reports each edit the
+    // server did not apply. Edits leave the outbox once the server has answered for them; a batch without
+    // per-item answers (connection lost again, BUSY) stays queued for the next reconnect.
+    private void syncOutbox() {
+        if (syncing || !isOnline() || offline.pending() == 0)
+            return;
+        syncing = true;
+        List<CompletableFuture<Boolean>> batches = new ArrayList<>();
+        List<OfflineStore.Edit> batch;
+        while (!(batch = offline.nextBatch(SYNC_BATCH)).isEmpty()) {
+            List<OfflineStore.Edit> edits = batch;
+            List<String> items = new ArrayList<>();
+            for (OfflineStore.Edit edit : edits)
+                items.add(edit.item);
+            CompletableFuture<Boolean> done = new CompletableFuture<>();
+            connection.sendSync(items).whenComplete((reply, error) -> Platform.runLater(() ->
+                    done.complete(syncDone(edits, reply, error))));
+            batches.add(done);
+        }
+        if (batches.isEmpty()) {
+            syncing = false;
+            return;
+        }
+        CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenRun(() -> Platform.runLater(() -> {
+            syncing = false;
+            refreshTimetableGrid();
+            // Edits queued while the batches were out go next, unless the server is refusing batches.
+            if (batches.stream().allMatch(CompletableFuture::join))
+                syncOutbox();
+        }));
+    }
+
+    // Handles one SYNC reply ("<n> OK|SKIPPED|CONFLICT|ERROR: ..." per edit). Returns false if the batch stays
+    // queued.
+    private boolean syncDone(List<OfflineStore.Edit> edits, String reply, Throwable error) {
+        if (error != null || reply.isEmpty() || !Character.isDigit(reply.charAt(0))) {
+            offline.retry(edits);
+            communicationStatusArea.appendText("Server: Sync postponed, " + edits.size() + " edits kept: "
+                    + (error != null ? "connection lost." : reply) + "\n");
+            return false;
+        }
+        int applied = 0, skipped = 0, rejected = 0;
+        for (String line : reply.split("\n")) {
+            int space = line.indexOf(' ');
+            String result = line.substring(space + 1);
+            if (result.startsWith("OK")) {
+                applied++;
+            } else if (result.startsWith("SKIPPED")) {
+                skipped++;
+            } else {
+                rejected++;
+                OfflineStore.Edit edit = edits.get(Integer.parseInt(line.substring(0, space)) - 1);
+                communicationStatusArea.appendText("Server: Sync " + edit + ": " + result + "\n");
+            }
+        }
+        offline.acknowledge(edits);
+        communicationStatusArea.appendText(String.format("Server: Synced %d offline edits: %d applied, "
+                + "%d already applied, %d not applied.%n", edits.size(), applied, skipped, rejected));
+        return true;
     }
 
     //---------------------- sendImportCSV Helper ----------------------
-    private void sendImportCSV(String csvContent, java.util.function.Consumer<String> onResponse) {
-        if (socket == null || socket.isClosed()) {
+    private void sendImportCSV(String csvContent, Consumer<String> onResponse) {
+        if (connection == null || connection.isClosed()) {
             communicationStatusArea.appendText("Server: Disconnected.\n");
             return;
         }
-        Task<String> task = new Task<>() {
-            @Override
-            protected String call() throws Exception {
-                out.println("IMPORT_CSV");
-                out.println("BEGIN_CSV");
-                String[] lines = csvContent.split("\n");
-                for (String line : lines) {
-                    out.println(line);
-                }
-                out.println("END_CSV");
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = in.readLine()) != null) {
-                    sb.append(line).append("\n");
-                    if (!in.ready()) break;
-                }
-                return sb.toString();
-            }
-        };
-        task.setOnSucceeded(e -> onResponse.accept(task.getValue()));
-        task.setOnFailed(e -> communicationStatusArea.appendText("Server: Error importing CSV.\n"));
-        new Thread(task).start();
+        connection.sendImportCSV(csvContent).whenComplete((response, error) -> Platform.runLater(() -> {
+            if (error != null)
+                communicationStatusArea.appendText("Server: Error importing CSV.\n");
+            else
+                onResponse.accept(response);
+        }));
     }
 
     //---------------------- ADD LECTURE WINDOW ----------------------
     private void openAddLectureWindow() {
+        showCachedScene("addLecture", this::createAddLectureScene);
+    }
+
+    private Scene createAddLectureScene() {
         VBox layout = new VBox(20);
         layout.setAlignment(Pos.CENTER);
 
@@ -240,6 +351,10 @@ public class TimetableClient extends Application {
         classTextField.setPromptText("Enter Class Name");
         TextField moduleTextField = new TextField();
         moduleTextField.setPromptText("Enter Module Name");
+        TextField roomTextField = new TextField();
+        roomTextField.setPromptText("Room (optional)");
+        TextField lecturerTextField = new TextField();
+        lecturerTextField.setPromptText("Lecturer (optional)");
 
         TextArea localMessageBox = new TextArea();
         localMessageBox.setEditable(false);
@@ -253,12 +368,16 @@ public class TimetableClient extends Application {
             String className = classTextField.getText();
             String module = moduleTextField.getText();
             String lectureType = lectureTypeComboBox.getValue();
+            String room = roomTextField.getText().trim();
+            String lecturer = lecturerTextField.getText().trim();
             if (time != null && day != null && !className.isEmpty() && !module.isEmpty() && lectureType != null) {
                 String command = "ADD_LECTURE," + time + "," + day + "," + className + "," + module + "," + lectureType;
-                sendCommand(command, response -> {
+                if (!room.isEmpty() || !lecturer.isEmpty())
+                    command += "," + room + (lecturer.isEmpty() ? "" : "," + lecturer);
+                sendEdit(command, command, response -> {
                     localMessageBox.appendText(response + "\n");
-                    // Store added lecture key for undo functionality.
-                    lastAddedLectureKey = day + "," + time;
+                    // Store added lecture for undo functionality.
+                    lastAddedLecture = new String[]{day, time, className.trim(), module.trim(), lectureType};
                 });
             } else {
                 localMessageBox.appendText("Server: Please fill in all fields!\n");
@@ -268,11 +387,11 @@ public class TimetableClient extends Application {
         Button undoButton = new Button("Undo");
         undoButton.setStyle("-fx-background-color: #FF9800; -fx-text-fill: white;");
         undoButton.setOnAction(e -> {
-            if (lastAddedLectureKey != null) {
-                String command = "REMOVE_LECTURE," + lastAddedLectureKey;
-                sendCommand(command, response -> {
+            if (lastAddedLecture != null) {
+                String command = "REMOVE_LECTURE," + lastAddedLecture[0] + "," + lastAddedLecture[1];
+                sendEdit(command, "REMOVE_LECTURE," + String.join(",", lastAddedLecture), response -> {
                     localMessageBox.appendText("Undo: " + response + "\n");
-                    lastAddedLectureKey = null;
+                    lastAddedLecture = null;
                 });
             } else {
                 localMessageBox.appendText("Nothing to undo.\n");
@@ -281,30 +400,41 @@ public class TimetableClient extends Application {
 
         Button backButton = new Button("Back");
         backButton.setStyle("-fx-background-color: #9E9E9E; -fx-text-fill: white;");
-        backButton.setOnAction(e -> window.setScene(homeScene));
+        backButton.setOnAction(e -> showScene(homeScene));
 
         layout.getChildren().addAll(timeComboBox, dayComboBox, lectureTypeComboBox,
-                classTextField, moduleTextField, addButton, undoButton, backButton, localMessageBox);
-        addLectureScene = new Scene(layout, 400, 400);
-        scenes.add(addLectureScene);
-        applyThemeToScene(addLectureScene);
-        window.setScene(addLectureScene);
-        if (isFullScreen)
-            window.setFullScreen(true);
+                classTextField, moduleTextField, roomTextField, lecturerTextField, addButton, undoButton, backButton, localMessageBox);
+        return new Scene(layout, 400, 400);
     }
 
     //---------------------- REMOVE LECTURE WINDOW ----------------------
     private void openRemoveLectureWindow() {
+        showCachedScene("removeLecture", this::createRemoveLectureScene);
+    }
+
+    private Scene createRemoveLectureScene() {
         VBox layout = new VBox(20);
         layout.setAlignment(Pos.CENTER);
         Label infoLabel = new Label("Select a lecture to remove:");
         ComboBox<String> lectureComboBox = new ComboBox<>();
+        // Optional QUERY expression, so the server does the filtering instead of the list being cut down here.
+        TextField filterTextField = new TextField();
+        filterTextField.setPromptText("Filter, e.g. day = Mon and type = Lab");
+
+        TextArea localMessageBox = new TextArea();
+        localMessageBox.setEditable(false);
+        localMessageBox.setMaxHeight(50);
 
         Button refreshLecturesButton = new Button("Refresh List");
         refreshLecturesButton.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
         refreshLecturesButton.setOnAction(e -> {
-            sendCommand("GET_LECTURES", response -> {
+            String filter = filterTextField.getText().trim();
+            sendCommand(filter.isEmpty() ? "GET_LECTURES" : "QUERY," + filter, response -> {
                 lectureComboBox.getItems().clear();
+                if (response.startsWith("Error")) {
+                    localMessageBox.appendText("Server: " + response + "\n");
+                    return;
+                }
                 String[] lines = response.split("\n");
                 for (String line : lines) {
                     if (!line.trim().isEmpty() && !line.startsWith("No lectures"))
@@ -312,11 +442,7 @@ public class TimetableClient extends Application {
                 }
             });
         });
-        refreshLecturesButton.fire();
-
-        TextArea localMessageBox = new TextArea();
-        localMessageBox.setEditable(false);
-        localMessageBox.setMaxHeight(50);
+        filterTextField.setOnAction(e -> refreshLecturesButton.fire());
 
         Button removeButton = new Button("Remove Lecture");
         removeButton.setStyle("-fx-background-color: #F44336; -fx-text-fill: white;");
@@ -326,25 +452,17 @@ public class TimetableClient extends Application {
                 localMessageBox.appendText("Server: Please select a lecture to remove.\n");
                 return;
             }
-            // Expected format: "day,time: className (module, lectureType)"
-            String[] parts = selected.split(":");
-            if (parts.length < 1) {
+            // Expected format: "day,time: className (module, lectureType)[ @ room[, lecturer]]"
+            String[] lecture = OfflineStore.parseLine(selected);
+            if (lecture == null) {
                 localMessageBox.appendText("Server: Invalid lecture format.\n");
                 return;
             }
-            String header = parts[0].trim();
-            String[] headerParts = header.split(",");
-            if (headerParts.length < 2) {
-                localMessageBox.appendText("Server: Invalid lecture header format.\n");
-                return;
-            }
-            String day = headerParts[0].trim();
-            String time = headerParts[1].trim();
-            String command = "REMOVE_LECTURE," + day + "," + time;
-            sendCommand(command, response -> {
+            String command = "REMOVE_LECTURE," + lecture[0] + "," + lecture[1];
+            sendEdit(command, "REMOVE_LECTURE," + String.join(",", lecture), response -> {
                 localMessageBox.appendText(response + "\n");
-                // Store removed lecture key for undo.
-                lastRemovedLectureKey = day + "," + time;
+                // Store removed lecture for undo.
+                lastRemovedLecture = lecture;
                 // Do not automatically switch scene.
             });
         });
@@ -352,11 +470,11 @@ public class TimetableClient extends Application {
         Button undoButton = new Button("Undo");
         undoButton.setStyle("-fx-background-color: #FF9800; -fx-text-fill: white;");
         undoButton.setOnAction(e -> {
-            if (lastRemovedLectureKey != null) {
-                String command = "UNDO_REMOVE," + lastRemovedLectureKey;
-                sendCommand(command, response -> {
+            if (lastRemovedLecture != null) {
+                String command = "UNDO_REMOVE," + lastRemovedLecture[0] + "," + lastRemovedLecture[1];
+                sendEdit(command, "UNDO_REMOVE," + String.join(",", lastRemovedLecture), response -> {
                     localMessageBox.appendText(response + "\n");
-                    lastRemovedLectureKey = null;
+                    lastRemovedLecture = null;
                 });
             } else {
                 localMessageBox.appendText("Nothing to undo.\n");
@@ -365,126 +483,109 @@ public class TimetableClient extends Application {
 
         Button backButton = new Button("Back");
         backButton.setStyle("-fx-background-color: #9E9E9E; -fx-text-fill: white;");
-        backButton.setOnAction(e -> window.setScene(homeScene));
+        backButton.setOnAction(e -> showScene(homeScene));
 
-        layout.getChildren().addAll(infoLabel, lectureComboBox, refreshLecturesButton, removeButton, undoButton, backButton, localMessageBox);
-        removeLectureScene = new Scene(layout, 400, 400);
-        scenes.add(removeLectureScene);
-        applyThemeToScene(removeLectureScene);
-        window.setScene(removeLectureScene);
-        if (isFullScreen)
-            window.setFullScreen(true);
+        layout.getChildren().addAll(infoLabel, filterTextField, lectureComboBox, refreshLecturesButton, removeButton, undoButton, backButton, localMessageBox);
+        Scene scene = new Scene(layout, 400, 400);
+        scene.setUserData((Runnable) refreshLecturesButton::fire);
+        return scene;
     }
 
     //---------------------- VIEW TIMETABLE WINDOW ----------------------
-    // Creates a persistent grid with fixed header and time slots.
+    // Creates a persistent, virtualized table: one row per time slot, one column per day.
     private void openViewTimetableWindow() {
-        if (viewTimetableScene == null) {
-            timetableGrid = new GridPane();
-            timetableGrid.setHgap(10);
-            timetableGrid.setVgap(10);
-            timetableGrid.setAlignment(Pos.CENTER);
-
-            timetableCells = new Label[times.length][days.length];
-
-            // Build header row.
-            timetableGrid.add(new Label("Time"), 0, 0);
-            for (int j = 0; j < days.length; j++) {
-                Label dayLabel = new Label(days[j]);
-                dayLabel.setStyle("-fx-font-weight: bold;");
-                timetableGrid.add(dayLabel, j + 1, 0);
-            }
-
-            // Build rows: time labels and cells.
-            for (int i = 0; i < times.length; i++) {
-                Label timeLabel = new Label(times[i]);
-                timeLabel.setStyle("-fx-font-weight: bold;");
-                timetableGrid.add(timeLabel, 0, i + 1);
-                for (int j = 0; j < days.length; j++) {
-                    Label cell = new Label("---");
-                    cell.setPrefWidth(150);
-                    cell.setStyle("-fx-border-color: black; -fx-padding: 5;");
-                    timetableGrid.add(cell, j + 1, i + 1);
-                    timetableCells[i][j] = cell;
-                }
-            }
+        showCachedScene("viewTimetable", this::createViewTimetableScene);
+    }
 
-            Button refreshButton = new Button("Refresh");
-            refreshButton.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
-            refreshButton.setOnAction(e -> sendCommand("VIEW_TIMETABLE", response -> updateTimetableGrid(response)));
-
-            Button exportCsvButton = new Button("Export to CSV");
-            exportCsvButton.setStyle("-fx-background-color: #FFC107; -fx-text-fill: white;");
-            exportCsvButton.setOnAction(e -> exportTimetableToCSV());
-
-            Button importCsvButton = new Button("Import CSV");
-            importCsvButton.setStyle("-fx-background-color: #ADFF2F; -fx-text-fill: white;");
-            importCsvButton.setOnAction(e -> {
-                FileChooser fileChooser = new FileChooser();
-                fileChooser.setTitle("Import Timetable from CSV");
-                fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
-                File file = fileChooser.showOpenDialog(window);
-                if (file != null) {
-                    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                        StringBuilder csvContent = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            csvContent.append(line).append("\n");
-                        }
-                        sendImportCSV(csvContent.toString(), response -> {
-                            Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                            alert.setTitle("Import Result");
-                            alert.setHeaderText(null);
-                            alert.setContentText(response);
-                            alert.showAndWait();
-                            sendCommand("VIEW_TIMETABLE", resp -> updateTimetableGrid(resp));
-                        });
-                    } catch (Exception ex) {
-                        Alert alert = new Alert(Alert.AlertType.ERROR);
-                        alert.setTitle("Import Failed");
+    private Scene createViewTimetableScene() {
+        timetableModel = new TimetableGridModel(List.of(days), List.of(times));
+        // The cached timetable shows at once; the refresh below replaces it with the server's.
+        timetableModel.applyListing(offline.listing());
+        timetableTable = new TableView<>(timetableModel.getRows());
+        timetableTable.setFixedCellSize(30);
+        timetableTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+
+        TableColumn<TimetableGridModel.SlotRow, String> timeColumn = new TableColumn<>("Time");
+        timeColumn.setCellValueFactory(c -> new ReadOnlyStringWrapper(c.getValue().getSlot()));
+        timeColumn.setStyle("-fx-font-weight: bold;");
+        timeColumn.setSortable(false);
+        timetableTable.getColumns().add(timeColumn);
+        for (int j = 0; j < days.length; j++) {
+            final int day = j;
+            TableColumn<TimetableGridModel.SlotRow, String> dayColumn = new TableColumn<>(days[j]);
+            dayColumn.setCellValueFactory(c -> c.getValue().cellProperty(day));
+            dayColumn.setPrefWidth(150);
+            dayColumn.setSortable(false);
+            timetableTable.getColumns().add(dayColumn);
+        }
+        VBox.setVgrow(timetableTable, Priority.ALWAYS);
+
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
+        refreshButton.setOnAction(e -> refreshTimetableGrid());
+
+        Button exportCsvButton = new Button("Export to CSV");
+        exportCsvButton.setStyle("-fx-background-color: #FFC107; -fx-text-fill: white;");
+        exportCsvButton.setOnAction(e -> exportTimetableToCSV());
+
+        Button importCsvButton = new Button("Import CSV");
+        importCsvButton.setStyle("-fx-background-color: #ADFF2F; -fx-text-fill: white;");
+        importCsvButton.setOnAction(e -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Import Timetable from CSV");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+            File file = fileChooser.showOpenDialog(window);
+            if (file != null) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                    StringBuilder csvContent = new StringBuilder();
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        csvContent.append(line).append("\n");
+                    }
+                    sendImportCSV(csvContent.toString(), response -> {
+                        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                        alert.setTitle("Import Result");
                         alert.setHeaderText(null);
-                        alert.setContentText("Error reading CSV file: " + ex.getMessage());
+                        alert.setContentText(response);
                         alert.showAndWait();
-                    }
+                        refreshTimetableGrid();
+                    });
+                } catch (Exception ex) {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Import Failed");
+                    alert.setHeaderText(null);
+                    alert.setContentText("Error reading CSV file: " + ex.getMessage());
+                    alert.showAndWait();
                 }
-            });
+            }
+        });
 
-            Button statisticsButton = new Button("Statistics");
-            statisticsButton.setStyle("-fx-background-color: #00BFFF; -fx-text-fill: white;");
-            statisticsButton.setOnAction(e -> openStatisticsScene());
+        Button statisticsButton = new Button("Statistics");
+        statisticsButton.setStyle("-fx-background-color: #00BFFF; -fx-text-fill: white;");
+        statisticsButton.setOnAction(e -> openStatisticsScene());
 
-            Button backButton = new Button("Back");
-            backButton.setStyle("-fx-background-color: #9E9E9E; -fx-text-fill: white;");
-            backButton.setOnAction(e -> window.setScene(homeScene));
+        Button backButton = new Button("Back");
+        backButton.setStyle("-fx-background-color: #9E9E9E; -fx-text-fill: white;");
+        backButton.setOnAction(e -> showScene(homeScene));
 
-            HBox buttonBox = new HBox(10, refreshButton, exportCsvButton, importCsvButton, statisticsButton, backButton);
-            buttonBox.setAlignment(Pos.CENTER);
+        HBox buttonBox = new HBox(10, refreshButton, exportCsvButton, importCsvButton, statisticsButton, backButton);
+        buttonBox.setAlignment(Pos.CENTER);
 
-            VBox layoutBox = new VBox(10, timetableGrid, buttonBox);
-            layoutBox.setAlignment(Pos.CENTER);
-            viewTimetableScene = new Scene(layoutBox, 800, 500);
-        }
-        scenes.add(viewTimetableScene);
-        applyThemeToScene(viewTimetableScene);
-        window.setScene(viewTimetableScene);
-        if (isFullScreen)
-            window.setFullScreen(true);
-        sendCommand("VIEW_TIMETABLE", response -> updateTimetableGrid(response));
+        VBox layoutBox = new VBox(10, timetableTable, buttonBox);
+        layoutBox.setAlignment(Pos.CENTER);
+        Scene scene = new Scene(layoutBox, 800, 500);
+        scene.setUserData((Runnable) this::refreshTimetableGrid);
+        return scene;
     }
 
     //---------------------- Statistics Scene ----------------------
+    // Hours per day come from the server's running aggregates (STATS_HOURS), not from the table contents.
+    // The chart is built once; each visit only updates the bar values.
     private void openStatisticsScene() {
-        // Count scheduled lecture hours per day from the timetableCells array.
-        int[] hoursPerDay = new int[days.length];
-        for (int i = 0; i < timetableCells.length; i++) {
-            for (int j = 0; j < timetableCells[i].length; j++) {
-                String cellText = timetableCells[i][j].getText().trim();
-                if (!cellText.equals("---") && !cellText.isEmpty()) {
-                    hoursPerDay[j]++;
-                }
-            }
-        }
+        showCachedScene("statistics", this::createStatisticsScene);
+    }
 
+    private Scene createStatisticsScene() {
         // Create the chart axes.
         CategoryAxis xAxis = new CategoryAxis();
         xAxis.setLabel("Day");
@@ -498,53 +599,69 @@ public class TimetableClient extends Application {
 
         XYChart.Series<String, Number> series = new XYChart.Series<>();
         series.setName("Scheduled Hours");
-        for (int j = 0; j < days.length; j++) {
-            series.getData().add(new XYChart.Data<>(days[j], hoursPerDay[j]));
+        for (String day : days) {
+            series.getData().add(new XYChart.Data<>(day, 0));
         }
         barChart.getData().add(series);
 
-        //Force bar fill color to orange for each data node.
-        Platform.runLater(() -> {
-            for (XYChart.Data<String, Number> data : series.getData()) {
-                Node node = data.getNode();
-                if (node != null) {
-                    node.setStyle("-fx-bar-fill: orange;");
-                }
-            }
-        });
-
         // Create a Back button to return to the timetable view.
         Button backButton = new Button("Back");
         backButton.setStyle("-fx-background-color: #9E9E9E; -fx-text-fill: white;");
-        backButton.setOnAction(e -> window.setScene(viewTimetableScene));
+        backButton.setOnAction(e -> openViewTimetableWindow());
 
         VBox statsLayout = new VBox(10, barChart, backButton);
         statsLayout.setAlignment(Pos.CENTER);
-        statisticsScene = new Scene(statsLayout, 600, 400);
-        scenes.add(statisticsScene);
-        applyThemeToScene(statisticsScene);
-        window.setScene(statisticsScene);
+        Scene scene = new Scene(statsLayout, 600, 400);
+        scene.setUserData((Runnable) () -> sendCommand("STATS_HOURS", response -> showStatistics(series, response)));
+        return scene;
     }
 
-    //---------------------- Update Timetable Grid ----------------------
-    private void updateTimetableGrid(String response) {
-        String[] lines = response.split("\n");
-        if (lines.length < 2)
-            return;
-        for (int i = 1; i < lines.length; i++) {
-            String line = lines[i];
-            if (line.length() < 10)
+    private void showStatistics(XYChart.Series<String, Number> series, String response) {
+        int[] hoursPerDay = new int[days.length];
+        for (String line : response.split("\n")) {
+            if (!line.startsWith("day."))
                 continue;
-            int row = i - 1;
+            int eq = line.lastIndexOf('=');
+            String day = line.substring(4, eq);
             for (int j = 0; j < days.length; j++) {
-                int start = 10 + j * 30;
-                int end = start + 30;
-                String cellData = line.length() >= end ? line.substring(start, end).trim() : "";
-                if (cellData.isEmpty())
-                    cellData = "---";
-                timetableCells[row][j].setText(cellData);
+                if (days[j].equals(day))
+                    hoursPerDay[j] = Integer.parseInt(line.substring(eq + 1).trim());
             }
         }
+
+        for (int j = 0; j < days.length; j++) {
+            series.getData().get(j).setYValue(hoursPerDay[j]);
+        }
+    }
+
+    //---------------------- Update Timetable Grid ----------------------
+    // Online, asks for the slots changed since the version the cache is at (CHANGES) and writes only those
+    // cells; the first refresh after a connect gets the whole listing in the same reply. Offline, or through the
+    // router, the whole listing is diffed instead.
+    private void refreshTimetableGrid() {
+        if (timetableModel == null)
+            return;
+        if (!isOnline() || fullListings) {
+            sendCommand("GET_LECTURES", response -> updateTimetableGrid(response));
+            return;
+        }
+        connection.send("CHANGES," + offline.version()).whenComplete((response, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                communicationStatusArea.appendText("Server: Error processing command.\n");
+            } else if (response.startsWith("VERSION ")) {
+                timetableModel.applySlots(offline.applyChanges(response));
+            } else if (response.startsWith("Error")) {
+                fullListings = true;
+                refreshTimetableGrid();
+            } else {
+                communicationStatusArea.appendText("Server: " + response + "\n");
+            }
+        }));
+    }
+
+    // Applies a whole GET_LECTURES listing; unchanged cells are not touched.
+    private void updateTimetableGrid(String response) {
+        timetableModel.applyListing(response);
     }
 
     //---------------------- Export Timetable to CSV ----------------------
@@ -563,10 +680,11 @@ public class TimetableClient extends Application {
                 }
                 writer.write(header.toString() + "\n");
                 // Write each row.
-                for (int i = 0; i < times.length; i++) {
-                    StringBuilder row = new StringBuilder(times[i]);
+                for (TimetableGridModel.SlotRow slotRow : timetableModel.getRows()) {
+                    StringBuilder row = new StringBuilder(slotRow.getSlot());
                     for (int j = 0; j < days.length; j++) {
-                        String cellText = timetableCells[i][j].getText();
+                        // Cells are in the import format, Class(Module,Type[,Room[,Lecturer]]), so quote them.
+                        String cellText = slotRow.cellProperty(j).get();
                         if (cellText.contains(","))
                             cellText = "\"" + cellText + "\"";
                         row.append(",").append(cellText);
@@ -591,43 +709,31 @@ public class TimetableClient extends Application {
 
     //---------------------- VIEW HISTORY WINDOW ----------------------
     private void openViewHistoryWindow() {
-        if (viewHistoryScene == null) {
-            TextArea historyArea = new TextArea();
-            historyArea.setEditable(false);
-            historyArea.setWrapText(true);
-            historyArea.setPrefSize(800, 400);
-
-            Button refreshButton = new Button("Refresh");
-            refreshButton.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
-            refreshButton.setOnAction(e -> sendCommand("VIEW_HISTORY", response -> historyArea.setText(response)));
-
-            Button backButton = new Button("Back");
-            backButton.setStyle("-fx-background-color: #9E9E9E; -fx-text-fill: white;");
-            backButton.setOnAction(e -> window.setScene(homeScene));
-
-            HBox buttonBox = new HBox(10, refreshButton, backButton);
-            buttonBox.setAlignment(Pos.CENTER);
-
-            VBox layout = new VBox(10, new Label("Timetable Change History:"), historyArea, buttonBox);
-            layout.setAlignment(Pos.CENTER);
-            viewHistoryScene = new Scene(layout, 800, 500);
-        }
-        scenes.add(viewHistoryScene);
-        applyThemeToScene(viewHistoryScene);
-        window.setScene(viewHistoryScene);
-        if (isFullScreen)
-            window.setFullScreen(true);
-        sendCommand("VIEW_HISTORY", response -> {
-            if (viewHistoryScene.getRoot() instanceof VBox) {
-                VBox layout = (VBox) viewHistoryScene.getRoot();
-                for (Node node : layout.getChildren()) {
-                    if (node instanceof TextArea) {
-                        ((TextArea) node).setText(response);
-                        break;
-                    }
-                }
-            }
-        });
+        showCachedScene("viewHistory", this::createViewHistoryScene);
+    }
+
+    private Scene createViewHistoryScene() {
+        TextArea historyArea = new TextArea();
+        historyArea.setEditable(false);
+        historyArea.setWrapText(true);
+        historyArea.setPrefSize(800, 400);
+
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white;");
+        refreshButton.setOnAction(e -> sendCommand("VIEW_HISTORY", response -> historyArea.setText(response)));
+
+        Button backButton = new Button("Back");
+        backButton.setStyle("-fx-background-color: #9E9E9E; -fx-text-fill: white;");
+        backButton.setOnAction(e -> showScene(homeScene));
+
+        HBox buttonBox = new HBox(10, refreshButton, backButton);
+        buttonBox.setAlignment(Pos.CENTER);
+
+        VBox layout = new VBox(10, new Label("Timetable Change History:"), historyArea, buttonBox);
+        layout.setAlignment(Pos.CENTER);
+        Scene scene = new Scene(layout, 800, 500);
+        scene.setUserData((Runnable) refreshButton::fire);
+        return scene;
     }
 
     //---------------------- OTHER / LOGOUT / STOP CONNECTION ----------------------
@@ -645,8 +751,8 @@ public class TimetableClient extends Application {
 
     private void stopConnection() {
         try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
                 communicationStatusArea.appendText("Server: Disconnected.\n");
             }
         } catch (Exception e) {
@@ -655,43 +761,10 @@ public class TimetableClient extends Application {
     }
 
     //---------------------- Theme Toggle ----------------------
+    // Restyles only the scene on screen; the others pick up the theme when they are next shown.
     public void toggleTheme() {
-        isDark = !isDark;
-        applyThemeToScene(window.getScene());
-    }
-
-    public void applyThemeToScene(Scene scene) {
-        if (isDark) {
-            applyDarkMode(scene);
-        } else {
-            applyLightMode(scene);
-        }
-    }
-
-    private void applyDarkMode(Scene scene) {
-        scene.setFill(Color.BLACK);
-        applyStyleToNodes(scene.getRoot(), "#333", Color.WHITE);
-    }
-
-    private void applyLightMode(Scene scene) {
-        scene.setFill(Color.WHITE);
-        applyStyleToNodes(scene.getRoot(), "#fff", Color.BLACK);
-    }
-
-    private void applyStyleToNodes(Node node, String backgroundColor, Color textColor) {
-        if (node instanceof Label) {
-            ((Label) node).setTextFill(textColor);
-        } else if (node instanceof TextArea) {
-            ((TextArea) node).setStyle("-fx-control-inner-background: " + (isDark ? "#555" : "#fff") +
-                    "; -fx-text-fill: " + (isDark ? "white" : "black") + ";");
-        } else if (node instanceof VBox || node instanceof HBox || node instanceof StackPane) {
-            ((Region) node).setStyle("-fx-background-color: " + backgroundColor + ";");
-        }
-        if (node instanceof Parent) {
-            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
-                applyStyleToNodes(child, backgroundColor, textColor);
-            }
-        }
+        theme = theme.other();
+        theme.apply(window.getScene());
     }
 
     //---------------------- CUSTOM EXCEPTION ----------------------
@@ -0,0 +1,139 @@
+package com.example.timetableapp;
+
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Observable model behind the client's timetable table: one row per time slot, one property per day column.
+// The TableView only builds cells for visible rows, and updates touch individual cell properties,
+// so a refresh re-renders just the cells whose text actually changed. The columns are the fixed days of the
+// one week the server holds; rows are created on demand for slots outside the standard nine.
+// Must be used from the FX thread.
+public class TimetableGridModel {
+    public static final String EMPTY = "---";
+
+    private final List<String> days;
+    private final ObservableList<SlotRow> rows = FXCollections.observableArrayList();
+    private final Map<String, SlotRow> rowsBySlot = new HashMap<>();
+
+    public TimetableGridModel(List<String> days, List<String> slots) {
+        this.days = List.copyOf(days);
+        for (String slot : slots)
+            rowFor(slot);
+    }
+
+    public ObservableList<SlotRow> getRows() { return rows; }
+
+    // Applies a whole GET_LECTURES listing ("day,time: class (module, type)[ @ room[, lecturer]]" per line),
+    // diffing every cell: only cells that gained, lost or changed a lecture are written. Used for the cached
+    // listing and when the server cannot send changes. Returns the number of cells changed.
+    public int applyListing(String listing) {
+        Map<String, String> incoming = new HashMap<>();
+        for (String line : listing.split("\n")) {
+            int colon = line.indexOf(": ");
+            int comma = line.indexOf(',');
+            if (colon < 0 || comma < 0 || comma > colon)
+                continue;
+            String day = line.substring(0, comma).trim();
+            String slot = line.substring(comma + 1, colon).trim();
+            incoming.put(slot + "|" + day, toCellText(line.substring(colon + 2)));
+            rowFor(slot);
+        }
+        int changed = 0;
+        for (SlotRow row : rows) {
+            for (int d = 0; d < days.size(); d++) {
+                String value = incoming.getOrDefault(row.slot + "|" + days.get(d), EMPTY);
+                if (!value.equals(row.cells[d].get())) {
+                    row.cells[d].set(value);
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Applies per-slot changes ("day,time" -> listing line, or null for an empty slot, as from
+    // OfflineStore.applyChanges); no other cell is looked at. Returns the number of cells changed.
+    public int applySlots(Map<String, String> lines) {
+        int changed = 0;
+        for (Map.Entry<String, String> entry : lines.entrySet()) {
+            String slot = entry.getKey();
+            int comma = slot.indexOf(',');
+            int day = days.indexOf(slot.substring(0, comma));
+            if (day < 0)
+                continue;
+            String line = entry.getValue();
+            String value = line == null ? EMPTY : toCellText(line.substring(line.indexOf(": ") + 2));
+            StringProperty cell = rowFor(slot.substring(comma + 1)).cells[day];
+            if (!value.equals(cell.get())) {
+                cell.set(value);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    // "A (Module, Lab) @ R1, Smith" -> "A(Module,Lab,R1,Smith)", the cell format CSV import reads, so an exported
+    // grid imports back with its rooms and lecturers. "@ -, Smith" (lecturer only) becomes "A(Module,Lab,,Smith)".
+    private static String toCellText(String entry) {
+        String resources = "";
+        int at = entry.lastIndexOf(") @ ");
+        if (at >= 0) {
+            String[] parts = entry.substring(at + 4).split(", ", 2);
+            String room = parts[0].trim().equals("-") ? "" : parts[0].trim();
+            resources = "," + room + (parts.length > 1 ? "," + parts[1].trim() : "");
+            entry = entry.substring(0, at + 1);
+        }
+        int open = entry.indexOf(" (");
+        int close = entry.lastIndexOf(')');
+        if (open < 0 || close < open)
+            return entry.trim();
+        String[] details = entry.substring(open + 2, close).split(",", 2);
+        String inside = details.length < 2 ? details[0].trim() : details[0].trim() + "," + details[1].trim();
+        return entry.substring(0, open).trim() + "(" + inside + resources + ")";
+    }
+
+    private SlotRow rowFor(String slot) {
+        SlotRow row = rowsBySlot.get(slot);
+        if (row != null)
+            return row;
+        row = new SlotRow(slot, days.size());
+        rowsBySlot.put(slot, row);
+        int pos = 0;
+        while (pos < rows.size() && slotOrder(rows.get(pos).slot) <= slotOrder(slot))
+            pos++;
+        rows.add(pos, row);
+        return row;
+    }
+
+    // Orders "9-10" .. "12-1" before "1-2" .. "5-6" (afternoon hours are written without +12).
+    private static int slotOrder(String slot) {
+        try {
+            int start = Integer.parseInt(slot.split("-")[0].trim());
+            return start < 9 ? start + 12 : start;
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    //---------------------- Row ----------------------
+    public static class SlotRow {
+        private final String slot;
+        private final StringProperty[] cells;
+
+        SlotRow(String slot, int columns) {
+            this.slot = slot;
+            this.cells = new StringProperty[columns];
+            for (int i = 0; i < columns; i++)
+                cells[i] = new SimpleStringProperty(EMPTY);
+        }
+
+        public String getSlot() { return slot; }
+        public StringProperty cellProperty(int day) { return cells[day]; }
+    }
+}
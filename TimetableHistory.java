@@ -0,0 +1,166 @@
+package com.example.timetableapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Replayable history of the timetable, for AS_OF queries.
+// Every applied change is stored as slot events (day, time, new lecture or null for a cleared slot) stamped with
+// the log version and the local time it was applied. Every CHECKPOINT_EVERY events, and at each full replacement,
+// the current snapshot itself becomes a checkpoint; snapshots share unchanged days, so checkpoints are cheap.
+// A historical read starts from the nearest checkpoint at or before the target and replays at most
+// CHECKPOINT_EVERY events, so it costs about the same however long the history gets. The oldest segments are
+// dropped once more than RETAIN events are held.
+final class TimetableHistory {
+    static final int CHECKPOINT_EVERY = Integer.getInteger("timetable.history.checkpointEvery", 256);
+    static final int RETAIN = Integer.getInteger("timetable.history.retain", 1_000_000);
+
+    record Event(long version, long timestamp, String day, String time, TimetableServer.Lecture lecture) {
+    }
+
+    // A checkpoint and the events applied on top of it, in order.
+    private static final class Segment {
+        final long version;
+        final long timestamp;
+        final TimetableSnapshot checkpoint;
+        final List<Event> events = new ArrayList<>();
+
+        Segment(long version, long timestamp, TimetableSnapshot checkpoint) {
+            this.version = version;
+            this.timestamp = timestamp;
+            this.checkpoint = checkpoint;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();   // guarded by this, oldest first
+    private int retained;                                       // events across all segments, guarded by this
+    private long latest;                                        // newest version recorded, guarded by this
+
+    TimetableHistory() {
+        reset(TimetableSnapshot.EMPTY, 0);
+    }
+
+    // Forgets everything and starts again from `snapshot` (e.g. a replica installing a primary's snapshot).
+    synchronized void reset(TimetableSnapshot snapshot, long version) {
+        segments.clear();
+        retained = 0;
+        latest = version;
+        segments.add(new Segment(version, System.currentTimeMillis(), snapshot));
+    }
+
+    // A full replacement (CSV import) is not diffed; the new snapshot starts a segment of its own.
+    synchronized void checkpoint(TimetableSnapshot snapshot, long version) {
+        latest = version;
+        segments.add(new Segment(version, System.currentTimeMillis(), snapshot));
+        trim();
+    }
+
+    // Records the change from `before` to `after` made by log record `version`. Only days whose map changed are
+    // compared, and only slots whose lecture changed become events.
+    synchronized void record(TimetableSnapshot before, TimetableSnapshot after, long version) {
+        long now = System.currentTimeMillis();
+        Segment last = segments.get(segments.size() - 1);
+        if (last.events.size() >= CHECKPOINT_EVERY) {
+            checkpoint(after, version);
+            return;
+        }
+        latest = version;
+        Set<String> days = new HashSet<>(before.days());
+        days.addAll(after.days());
+        for (String day : days) {
+            Map<String, TimetableServer.Lecture> oldSlots = before.day(day);
+            Map<String, TimetableServer.Lecture> newSlots = after.day(day);
+            if (oldSlots == newSlots)
+                continue;
+            Set<String> times = new HashSet<>(oldSlots.keySet());
+            times.addAll(newSlots.keySet());
+            for (String time : times) {
+                TimetableServer.Lecture lecture = newSlots.get(time);
+                if (oldSlots.get(time) != lecture) {
+                    last.events.add(new Event(version, now, day, time, lecture));
+                    retained++;
+                }
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        while (retained > RETAIN && segments.size() > 1)
+            retained -= segments.remove(0).events.size();
+    }
+
+    // The timetable as it was after log record `version`, or null if that is older than the retained history.
+    TimetableSnapshot asOfVersion(long version) {
+        Segment segment;
+        List<Event> gap = new ArrayList<>();
+        synchronized (this) {
+            segment = floor(version, true);
+            if (segment == null)
+                return null;
+            for (Event e : segment.events) {
+                if (e.version() > version)
+                    break;
+                gap.add(e);
+            }
+        }
+        return replay(segment.checkpoint, gap);
+    }
+
+    // The timetable as it was at `epochMillis` (local apply time), or null if that is older than the retained
+    // history.
+    TimetableSnapshot asOfTime(long epochMillis) {
+        Segment segment;
+        List<Event> gap = new ArrayList<>();
+        synchronized (this) {
+            segment = floor(epochMillis, false);
+            if (segment == null)
+                return null;
+            for (Event e : segment.events) {
+                if (e.timestamp() > epochMillis)
+                    break;
+                gap.add(e);
+            }
+        }
+        return replay(segment.checkpoint, gap);
+    }
+
+    // Version of the newest change recorded. A snapshot is published just before its change is recorded, so a
+    // version above this one cannot be replayed yet.
+    synchronized long latestVersion() {
+        return latest;
+    }
+
+    synchronized long oldestVersion() {
+        return segments.get(0).version;
+    }
+
+    // Last segment starting at or before the target (by version or by timestamp). Caller holds the monitor.
+    private Segment floor(long target, boolean byVersion) {
+        int lo = 0, hi = segments.size() - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Segment s = segments.get(mid);
+            if ((byVersion ? s.version : s.timestamp) <= target) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found < 0 ? null : segments.get(found);
+    }
+
+    // Applies the gap to the checkpoint in one pass: the last event per slot wins.
+    private static TimetableSnapshot replay(TimetableSnapshot checkpoint, List<Event> gap) {
+        if (gap.isEmpty())
+            return checkpoint;
+        Map<String, Map<String, TimetableServer.Lecture>> changes = new HashMap<>();
+        for (Event e : gap)
+            changes.computeIfAbsent(e.day(), d -> new HashMap<>()).put(e.time(), e.lecture());
+        return checkpoint.patched(changes, gap.get(gap.size() - 1).version());
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.timetableapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless load generator for the timetable protocol.
+// Opens N connections (one virtual thread each) and replays a weighted command mix at a fixed total rate.
+// Every request has an intended start time on a fixed schedule; latency is measured from that time rather
+// than from when the request was actually sent, so a stalled server is charged for the requests it delayed
+// (coordinated-omission correction). Raw service time is reported alongside for comparison.
+//
+// Usage: java com.example.timetableapp.TimetableLoadGenerator [--host localhost] [--port 12346]
+//        [--connections 50] [--rate 500] [--duration 30] [--warmup 5] [--compress]
+//        [--mix ADD_LECTURE=30,REMOVE_LECTURE=20,UNDO_REMOVE=5,VIEW_TIMETABLE=20,GET_LECTURES=15,VIEW_HISTORY=8,IMPORT_CSV=2]
+public class TimetableLoadGenerator {
+    private static final String[] DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
+    private static final String[] TIMES = {"9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5", "5-6"};
+    private static final String[] TYPES = {"Lecture", "Lab", "Tutorial"};
+    private static final String DEFAULT_MIX =
+            "ADD_LECTURE=30,REMOVE_LECTURE=20,UNDO_REMOVE=5,VIEW_TIMETABLE=20,GET_LECTURES=15,VIEW_HISTORY=8,IMPORT_CSV=2";
+
+    private String host = "localhost";
+    private int port = 12346;
+    private int connections = 50;
+    private double rate = 500;          // requests per second across all connections
+    private long durationSeconds = 30;
+    private long warmupSeconds = 5;
+    private boolean compress;           // negotiate StreamCompression on every connection
+    private String[] mixCommands;
+    private int[] mixCumulative;
+
+    private final Map<String, CommandStats> stats = new LinkedHashMap<>();
+    private final LongAdder connectFailures = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        TimetableLoadGenerator generator = new TimetableLoadGenerator();
+        generator.parseArgs(args);
+        generator.run();
+    }
+
+    //---------------------- Configuration ----------------------
+    private void parseArgs(String[] args) {
+        String mix = DEFAULT_MIX;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--host": host = value; i++; break;
+                case "--port": port = Integer.parseInt(value); i++; break;
+                case "--connections": connections = Integer.parseInt(value); i++; break;
+                case "--rate": rate = Double.parseDouble(value); i++; break;
+                case "--duration": durationSeconds = Long.parseLong(value); i++; break;
+                case "--warmup": warmupSeconds = Long.parseLong(value); i++; break;
+                case "--mix": mix = value; i++; break;
+                case "--compress": compress = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (connections < 1 || rate <= 0)
+            throw new IllegalArgumentException("--connections and --rate must be positive.");
+        parseMix(mix);
+    }
+
+    private void parseMix(String mix) {
+        List<String> commands = new ArrayList<>();
+        List<Integer> cumulative = new ArrayList<>();
+        int running = 0;
+        for (String entry : mix.split(",")) {
+            String[] kv = entry.split("=");
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight <= 0)
+                continue;
+            running += weight;
+            commands.add(kv[0].trim());
+            cumulative.add(running);
+            stats.put(kv[0].trim(), new CommandStats());
+        }
+        if (commands.isEmpty())
+            throw new IllegalArgumentException("Command mix is empty.");
+        mixCommands = commands.toArray(new String[0]);
+        mixCumulative = cumulative.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    //---------------------- Run ----------------------
+    private void run() throws InterruptedException {
+        long intervalNanos = (long) (connections * 1_000_000_000L / rate);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        System.out.printf("Target %.0f req/s over %d connections to %s:%d (warmup %ds, measure %ds)%n",
+                rate, connections, host, port, warmupSeconds, durationSeconds);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < connections; c++) {
+                // Stagger connections so the aggregate schedule is evenly spaced.
+                long firstStart = start + intervalNanos * c / connections;
+                executor.submit(() -> runConnection(firstStart, intervalNanos, measureFrom, end));
+            }
+        }
+        report(TimeUnit.NANOSECONDS.toSeconds(end - measureFrom));
+    }
+
+    private void runConnection(long firstStart, long intervalNanos, long measureFrom, long end) {
+        try (Socket socket = new Socket(host, port)) {
+            InputStream wireIn = socket.getInputStream();
+            OutputStream wireOut = socket.getOutputStream();
+            if (compress && StreamCompression.negotiate(wireIn, wireOut)) {
+                wireIn = new StreamCompression.FrameInputStream(wireIn);
+                wireOut = new StreamCompression.FrameOutputStream(wireOut);
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(wireIn));
+            PrintWriter out = new PrintWriter(wireOut, true);
+            long intended = firstStart;
+            while (intended < end) {
+                long now = System.nanoTime();
+                if (now < intended)
+                    LockSupport.parkNanos(intended - now);
+
+                String command = pickCommand();
+                CommandStats commandStats = stats.get(command);
+                long sent = System.nanoTime();
+                boolean ok = send(command, in, out);
+                long done = System.nanoTime();
+
+                if (intended >= measureFrom) {
+                    commandStats.latency.record(TimeUnit.NANOSECONDS.toMicros(done - intended));
+                    commandStats.serviceTime.record(TimeUnit.NANOSECONDS.toMicros(done - sent));
+                    if (!ok)
+                        commandStats.errors.increment();
+                }
+                intended += intervalNanos;
+            }
+            out.println("STOP_CONNECTION");
+        } catch (IOException e) {
+            connectFailures.increment();
+        }
+    }
+
+    private String pickCommand() {
+        int r = ThreadLocalRandom.current().nextInt(mixCumulative[mixCumulative.length - 1]);
+        for (int i = 0; i < mixCumulative.length; i++) {
+            if (r < mixCumulative[i])
+                return mixCommands[i];
+        }
+        return mixCommands[mixCommands.length - 1];
+    }
+
+    // Sends one command and reads its full response. Returns false when the server reported an error.
+    private boolean send(String command, BufferedReader in, PrintWriter out) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String day = DAYS[random.nextInt(DAYS.length)];
+        String time = TIMES[random.nextInt(TIMES.length)];
+        String line;
+        switch (command) {
+            case "ADD_LECTURE":
+                line = "ADD_LECTURE," + time + "," + day + ",Class" + random.nextInt(100)
+                        + ",Module" + random.nextInt(20) + "," + TYPES[random.nextInt(TYPES.length)];
+                break;
+            case "REMOVE_LECTURE":
+            case "UNDO_REMOVE":
+                line = command + "," + day + "," + time;
+                break;
+            case "IMPORT_CSV":
+                sendImport(out);
+                line = null;
+                break;
+            default:
+                line = command;
+        }
+        if (line != null)
+            out.println(line);
+        String response = ResponseReader.read(in, command);
+        if (response == null)
+            throw new IOException("Server closed the connection.");
+        return !(response.startsWith("Error") || response.startsWith("Invalid")
+                || response.startsWith("IMPORT_CSV") || response.startsWith("BUSY") || response.equals("Unknown Command"));
+    }
+
+    private void sendImport(PrintWriter out) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder("IMPORT_CSV\nBEGIN_CSV\nTime,Monday,Tuesday,Wednesday,Thursday,Friday\n");
+        for (int t = 0; t < TIMES.length - 1; t++) {
+            sb.append(TIMES[t]);
+            for (int d = 0; d < DAYS.length; d++) {
+                if (random.nextInt(3) == 0)
+                    sb.append(",---");
+                else
+                    sb.append(",\"Class").append(random.nextInt(100)).append("(Module").append(random.nextInt(20))
+                            .append(",").append(TYPES[random.nextInt(TYPES.length)]).append(")\"");
+            }
+            sb.append("\n");
+        }
+        sb.append("END_CSV");
+        out.println(sb);
+    }
+
+    //---------------------- Report ----------------------
+    private void report(long measuredSeconds) {
+        System.out.printf("%n%-16s %9s %9s %7s %9s %9s %9s %9s %9s %11s%n", "Command", "Count", "Req/s", "Errors",
+                "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "Max(us)", "Svc p99(us)");
+        LatencyHistogram all = new LatencyHistogram();
+        long totalCount = 0;
+        for (Map.Entry<String, CommandStats> entry : stats.entrySet()) {
+            CommandStats s = entry.getValue();
+            printRow(entry.getKey(), s.latency, s.serviceTime, s.errors.sum(), measuredSeconds);
+            all.merge(s.latency);
+            totalCount += s.latency.count();
+        }
+        long totalErrors = stats.values().stream().mapToLong(s -> s.errors.sum()).sum();
+        LatencyHistogram allService = new LatencyHistogram();
+        stats.values().forEach(s -> allService.merge(s.serviceTime));
+        printRow("TOTAL", all, allService, totalErrors, measuredSeconds);
+        if (connectFailures.sum() > 0)
+            System.out.println("Connections lost or refused: " + connectFailures.sum());
+        System.out.printf("Achieved %.1f of %.0f target req/s.%n", (double) totalCount / Math.max(1, measuredSeconds), rate);
+    }
+
+    private static void printRow(String name, LatencyHistogram latency, LatencyHistogram service, long errors, long seconds) {
+        System.out.printf("%-16s %9d %9.1f %7d %9d %9d %9d %9d %9d %11d%n", name, latency.count(),
+                (double) latency.count() / Math.max(1, seconds), errors,
+                latency.percentile(50), latency.percentile(90), latency.percentile(99), latency.percentile(99.9),
+                latency.max(), service.percentile(99));
+    }
+
+    private static class CommandStats {
+        final LatencyHistogram latency = new LatencyHistogram();      // from intended start
+        final LatencyHistogram serviceTime = new LatencyHistogram();  // from actual send
+        final LongAdder errors = new LongAdder();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.timetableapp;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Headless timetable server for running several nodes on one machine, e.g. a primary and its replicas:
+//   java ... TimetableNode --port 12346 --replication-port 13346
+//   java ... TimetableNode --port 12347 --replica-of localhost:13346
+// --http-port also serves the HTTP/JSON gateway (HttpGateway) from the same store.
+// Speaks the same client protocol as the GUI server. A replica serves reads, rejects writes with READ_ONLY,
+// and can itself be given --replication-port so it keeps serving replicas after a PROMOTE.
+public class TimetableNode {
+
+    public static void main(String[] args) throws IOException {
+        int port = 12346;
+        Integer replicationPort = null;
+        String replicaOf = null;
+        Integer httpPort = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--replication-port": replicationPort = Integer.parseInt(args[++i]); break;
+                case "--replica-of": replicaOf = args[++i]; break;
+                case "--http-port": httpPort = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Usage: TimetableNode [--port p] [--replication-port p] [--replica-of host:port]"
+                            + " [--http-port p]");
+                    System.exit(2);
+            }
+        }
+
+        if (replicationPort != null)
+            new ReplicationServer(replicationPort).start();
+        if (replicaOf != null) {
+            String[] hostPort = replicaOf.split(":");
+            TimetableServer.follower = new ReplicaFollower(hostPort[0], Integer.parseInt(hostPort[1]));
+            TimetableServer.follower.start();
+        }
+        if (httpPort != null)
+            new HttpGateway(httpPort).start();
+        TimetableServer.metrics.registerMBean();
+
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            AsyncLog.info("Timetable node listening on port " + port + (replicaOf != null ? " as replica of " + replicaOf : ""));
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                new Thread(new TimetableServer.ClientHandler(clientSocket)).start();
+            }
+        }
+    }
+}
@@ -0,0 +1,898 @@
+package com.example.timetableapp;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Routing front-end for a sharded deployment. Speaks the normal client protocol, so TimetableClient can
+// connect to it unchanged, and forwards each command to backend TimetableNode/TimetableServer processes.
+// The partition key is the day: a day's slots are only ever touched together (add, remove, undo and the
+// early shift all stay within one day), so each day is consistent-hashed to exactly one shard.
+// Single-day commands go to the owning shard; listings, history, EARLY_LECTURES and statistics are
+// scattered to every shard and merged here. IMPORT_CSV is validated once and then split by day column.
+// ADD_NODE,host:port grows the ring online: the days that move are copied to the new node and removed from
+// the old one while client commands are briefly held back, then routing switches over.
+//   java ... TimetableRouter --port 12350 --shards localhost:12401,localhost:12402
+public class TimetableRouter {
+    private static final String[] DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
+    private static final String[] TIME_SLOTS = {"9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5", "5-6"};
+    // Backend connections idle longer than this are PINGed before reuse, well inside the shards' idle timeout.
+    private static final long PROBE_AFTER_MS = ConnectionReaper.IDLE_TIMEOUT_MS / 2;
+    private static final ConnectionReaper reaper = new ConnectionReaper();
+    // ADD_NODE is only taken from this host unless timetable.addNode.remote is set; otherwise any client could
+    // have whole days copied to a host of its choosing and removed from the real shard.
+    static final boolean ADD_NODE_REMOTE = Boolean.getBoolean("timetable.addNode.remote");
+
+    private final int port;
+    private volatile ConsistentHashRing ring;
+    // Commands hold the read lock; a rebalance takes the write lock so no command sees a half-moved day.
+    private final ReentrantReadWriteLock topology = new ReentrantReadWriteLock();
+
+    public TimetableRouter(int port, ConsistentHashRing ring) {
+        this.port = port;
+        this.ring = ring;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 12350;
+        int virtualNodes = 64;
+        List<String> shards = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--shards": shards.addAll(Arrays.asList(args[++i].split(","))); break;
+                case "--vnodes": virtualNodes = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Usage: TimetableRouter [--port p] --shards host:port,... [--vnodes n]");
+                    System.exit(2);
+            }
+        }
+        if (shards.isEmpty()) {
+            System.err.println("At least one shard is required (--shards host:port,...).");
+            System.exit(2);
+        }
+        new TimetableRouter(port, new ConsistentHashRing(shards, virtualNodes)).run();
+    }
+
+    public void run() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            AsyncLog.info("Router listening on port " + port + ", shards " + ring.nodes());
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                new Thread(new Session(clientSocket)).start();
+            }
+        }
+    }
+
+    //---------------------- Rebalancing ----------------------
+    String addNode(String node) {
+        topology.writeLock().lock();
+        try {
+            ConsistentHashRing grown = ring.withNode(node);
+            if (grown == ring)
+                return "Node " + node + " is already in the ring.";
+            Map<String, String> moves = new LinkedHashMap<>();   // day -> previous owner
+            for (String day : DAYS) {
+                if (!ring.nodeFor(day).equals(grown.nodeFor(day)))
+                    moves.put(day, ring.nodeFor(day));
+            }
+            // Copy first and switch routing only once every moved day is on its new owner; a failure
+            // leaves the old ring (and the old copies) in charge.
+            Map<String, DayCopy> copied = new LinkedHashMap<>();
+            try {
+                for (Map.Entry<String, String> move : moves.entrySet())
+                    copied.put(move.getKey(), copyDay(move.getKey(), move.getValue(), grown.nodeFor(move.getKey())));
+            } catch (IOException e) {
+                for (Map.Entry<String, DayCopy> entry : copied.entrySet())
+                    removeQuietly(grown.nodeFor(entry.getKey()), entry.getKey(), entry.getValue());
+                AsyncLog.error("Rebalance onto " + node + " failed", e);
+                return "Error: rebalance failed, ring unchanged: " + e.getMessage();
+            }
+            ring = grown;
+            int moved = 0, holds = 0;
+            for (Map.Entry<String, DayCopy> entry : copied.entrySet()) {
+                // Routing has switched, so a leftover copy on the old owner is unreachable; it only costs memory.
+                removeQuietly(moves.get(entry.getKey()), entry.getKey(), entry.getValue());
+                moved += entry.getValue().lectures.size();
+                holds += entry.getValue().holds.size();
+            }
+            AsyncLog.info("Added " + node + "; moved " + moved + " lectures and " + holds + " holds for "
+                    + moves.keySet());
+            return "Node " + node + " added: moved " + moved + " lectures and " + holds + " holds (" +
+                    (moves.isEmpty() ? "no days" : String.join(", ", moves.keySet())) + ").";
+        } finally {
+            topology.writeLock().unlock();
+        }
+    }
+
+    // What copyDay put on the new owner: lectures as {time, class, module, type, room, lecturer} and holds as
+    // {kind, name, day, time, holder} (the HOLD_RESOURCE fields).
+    private static final class DayCopy {
+        final List<String[]> lectures = new ArrayList<>();
+        final List<String[]> holds = new ArrayList<>();
+    }
+
+    // Copies a day's lectures and its holds for other timetables (HOLD_RESOURCE), so holds keep blocking clashing
+    // adds and can still be released once the day routes to the new owner. Each lecture's recurrence is copied
+    // too (SET_RECURRENCE after the add), read from the source's EXPORT_ICS because the listing does not show it.
+    // Holds go first: a lecture and a hold never share a resource and slot, so neither order clashes.
+    private static DayCopy copyDay(String day, String from, String to) throws IOException {
+        DayCopy copy = new DayCopy();
+        List<String[]> lectures = copy.lectures;
+        try (Backend source = new Backend(from); Backend target = new Backend(to)) {
+            for (String line : source.request("GET_LECTURES", "GET_LECTURES").split("\n")) {
+                String[] lecture = parseListingLine(line);
+                if (lecture != null && lecture[0].equals(day))
+                    lectures.add(Arrays.copyOfRange(lecture, 1, 7));
+            }
+            List<String[]> holds = holds(day, source);
+            Map<String, Recurrence> rules = lectures.isEmpty() ? Map.of() : rules(day, source);
+            int added = 0;
+            try {
+                for (String[] h : holds) {
+                    String reply = target.request("HOLD_RESOURCE," + String.join(",", h), "HOLD_RESOURCE");
+                    if (!reply.equals("Resource held."))
+                        throw new IOException(to + " refused the hold of " + h[1] + " on " + day + " " + h[3] + ": "
+                                + reply);
+                    copy.holds.add(h);
+                }
+                for (String[] l : lectures) {
+                    // A rule whose window never falls on its weekday has no calendar event; without the rule the
+                    // copy would run every week, so the day is not moved.
+                    Recurrence rule = rules.get(l[0]);
+                    if (rule == null)
+                        throw new IOException("the recurrence of " + day + " " + l[0] + " on " + from
+                                + " could not be read.");
+                    String reply = target.request(String.join(",", "ADD_LECTURE", l[0], day, l[1], l[2], l[3], l[4], l[5]),
+                            "ADD_LECTURE");
+                    if (!reply.startsWith("Lecture added"))
+                        throw new IOException(to + " refused " + day + " " + l[0] + ": " + reply);
+                    added++;
+                    if (rule != Recurrence.WEEKLY) {
+                        reply = target.request(String.join(",", "SET_RECURRENCE", day, l[0],
+                                rule.encode().replace(' ', ',')), "SET_RECURRENCE");
+                        if (!reply.equals("Recurrence set."))
+                            throw new IOException(to + " refused the recurrence of " + day + " " + l[0] + ": " + reply);
+                    }
+                }
+            } catch (IOException e) {
+                // Best effort: take back what this attempt added so a retry starts from a clean target.
+                lectures.subList(added, lectures.size()).clear();
+                removeQuietly(target, day, copy);
+                throw e;
+            }
+        }
+        return copy;
+    }
+
+    // The day's holds on a node, from HOLDS,day. A node that cannot list them (an older server answers
+    // "Unknown Command") fails the copy rather than leaving its holds behind.
+    private static List<String[]> holds(String day, Backend node) throws IOException {
+        String reply = node.request("HOLDS," + day, "HOLDS");
+        List<String[]> holds = new ArrayList<>();
+        if (reply.startsWith("No "))
+            return holds;
+        for (String line : reply.split("\n")) {
+            String[] hold = line.split(",", 5);
+            if (hold.length < 5)
+                throw new IOException("cannot list the holds on " + node.address + ": " + reply);
+            holds.add(hold);
+        }
+        return holds;
+    }
+
+    // time -> recurrence for the day's lectures, from the node's calendar export (X-TIMETABLE-RULE is exact).
+    private static Map<String, Recurrence> rules(String day, Backend node) throws IOException {
+        String ics = node.request("EXPORT_ICS", "EXPORT_ICS");
+        if (ics.startsWith("Error") || ics.startsWith("BUSY"))
+            throw new IOException("EXPORT_ICS failed on " + node.address + ": " + ics);
+        Map<String, Recurrence> rules = new HashMap<>();
+        try {
+            IcsCalendar.read(new BufferedReader(new StringReader(ics)), lecture -> {
+                if (lecture.getDay().equals(day))
+                    rules.put(lecture.getTime(), lecture.getRecurrence());
+            });
+        } catch (IllegalArgumentException e) {
+            throw new IOException("unreadable EXPORT_ICS from " + node.address + ": " + e.getMessage());
+        }
+        return rules;
+    }
+
+    private static void removeQuietly(String node, String day, DayCopy copy) {
+        try (Backend b = new Backend(node)) {
+            removeQuietly(b, day, copy);
+        } catch (IOException e) {
+            AsyncLog.warn("Could not clear " + day + " on " + node + ": " + e.getMessage());
+        }
+    }
+
+    private static void removeQuietly(Backend b, String day, DayCopy copy) {
+        try {
+            for (String[] lecture : copy.lectures)
+                b.request("REMOVE_LECTURE," + day + "," + lecture[0], "REMOVE_LECTURE");
+            for (String[] h : copy.holds)
+                b.request(String.join(",", "RELEASE_RESOURCE", h[0], h[1], h[2], h[3]), "RELEASE_RESOURCE");
+        } catch (IOException e) {
+            AsyncLog.warn("Could not clear " + day + " on " + b.address + ": " + e.getMessage());
+        }
+    }
+
+    // "day,time: class (module, type)[ @ room[, lecturer]]" -> {day, time, class, module, type, room, lecturer}
+    // ("" for no room or lecturer), or null for other lines.
+    private static String[] parseListingLine(String line) {
+        int comma = line.indexOf(',');
+        int colon = line.indexOf(": ");
+        int open = line.indexOf(" (", colon + 1);
+        int suffix = open < 0 ? -1 : line.indexOf(") @ ", open);
+        int close = suffix >= 0 ? suffix : line.lastIndexOf(')');
+        if (comma < 0 || colon < comma || open < 0 || close < open)
+            return null;
+        String[] details = line.substring(open + 2, close).split(", ", 2);
+        if (details.length < 2)
+            return null;
+        String[] resources = suffix < 0 ? new String[]{"", ""} : line.substring(suffix + 4).split(", ", 2);
+        String room = resources[0].equals("-") ? "" : resources[0];
+        String lecturer = resources.length > 1 ? resources[1] : "";
+        return new String[]{line.substring(0, comma), line.substring(comma + 1, colon),
+                line.substring(colon + 2, open), details[0], details[1], room, lecturer};
+    }
+
+    // The listing suffix for parsed lecture fields, as the server writes it.
+    private static String resourceSuffix(String room, String lecturer) {
+        if (room.isEmpty() && lecturer.isEmpty())
+            return "";
+        return " @ " + (room.isEmpty() ? "-" : room) + (lecturer.isEmpty() ? "" : ", " + lecturer);
+    }
+
+    //---------------------- Client Session ----------------------
+    private class Session implements Runnable {
+        private final Socket clientSocket;
+        private BufferedReader in;
+        private PrintWriter out;
+        // One connection per shard, so each client keeps its own ordering on every backend.
+        private final Map<String, Backend> backends = new HashMap<>();
+
+        private ConnectionReaper.Session session;
+
+        Session(Socket socket) {
+            this.clientSocket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (clientSocket) {
+                session = reaper.register(clientSocket);
+                in = new BufferedReader(new InputStreamReader(session.track(clientSocket.getInputStream())));
+                out = new PrintWriter(clientSocket.getOutputStream(), true);
+                String clientMessage;
+                while ((clientMessage = in.readLine()) != null) {
+                    session.executing();
+                    if (clientMessage.equals("STOP_CONNECTION")) {
+                        out.println("Connection Stopped");
+                        break;
+                    }
+                    if (clientMessage.equals("PING")) {
+                        out.println("PONG");
+                        session.waiting();
+                        continue;
+                    }
+                    boolean isImport = clientMessage.equals("IMPORT_CSV") || clientMessage.equals("IMPORT_CSV,MERGE");
+                    boolean isCalendar = clientMessage.equals("IMPORT_ICS");
+                    boolean isSync = clientMessage.equals("SYNC");
+                    if (isImport || isCalendar || isSync)
+                        session.receiving();
+                    String csv = isImport ? readCsvBlock() : null;
+                    List<String> edits = isSync ? readSyncBlock() : null;
+                    Map<String, Map<String, TimetableServer.Lecture>> calendar = new HashMap<>();
+                    String calendarError = isCalendar ? readCalendar(calendar) : null;
+                    session.executing();
+                    topology.readLock().lock();
+                    try {
+                        if (calendarError != null)
+                            out.println(calendarError);
+                        else if (isCalendar)
+                            out.println(importIcs(calendar));
+                        else if (isSync)
+                            out.println(sync(edits));
+                        else
+                            out.println(csv != null ? importCsv(clientMessage, csv) : route(clientMessage));
+                    } catch (IOException e) {
+                        // Other shards may still owe replies to a half-finished scatter; start them afresh.
+                        backends.values().forEach(Backend::close);
+                        backends.clear();
+                        out.println("Error: " + e.getMessage());
+                    } finally {
+                        topology.readLock().unlock();
+                    }
+                    session.waiting();
+                }
+            } catch (IOException e) {
+                if (session == null || !session.isClosed())
+                    AsyncLog.error("Router connection error", e);
+            } finally {
+                if (session != null)
+                    session.close();
+                backends.values().forEach(Backend::close);
+            }
+        }
+
+        private String route(String command) throws IOException {
+            String name = ServerMetrics.commandName(command);
+            switch (name) {
+                case "ADD_LECTURE":
+                    return forward(command, 2);
+                case "REMOVE_LECTURE":
+                case "UNDO_REMOVE":
+                case "SET_RECURRENCE":
+                case "CLEAR_RECURRENCE":
+                    return forward(command, 1);
+                case "HOLDS":
+                    return forward(command, 1);
+                case "HOLD_RESOURCE":
+                case "RELEASE_RESOURCE":
+                    return forward(command, 3);
+                case "RESOURCE":
+                    return resource(command);
+                case "OCCURRENCES":
+                    return occurrences(command);
+                case "EXPORT_ICS":
+                    return exportIcs(command);
+                case "QUERY":
+                    return query(command);
+                case "GET_LECTURES":
+                case "VIEW_TIMETABLE": {
+                    // Versions are per shard, but a timestamp means the same moment on every shard.
+                    String asOf = command.substring(name.length());
+                    if (asOf.matches(",\\s*AS_OF\\s*,\\s*\\d+\\s*"))
+                        return "Error: AS_OF by version is per shard; use a timestamp through the router.";
+                    Map<String, String> replies = scatter("GET_LECTURES" + asOf);
+                    for (String reply : replies.values()) {
+                        if (reply.startsWith("Error") || reply.startsWith("BUSY"))
+                            return reply;
+                    }
+                    List<String[]> lectures = allLectures(replies.values());
+                    return name.equals("GET_LECTURES") ? getLectures(lectures) : viewTimetable(lectures);
+                }
+                case "VIEW_HISTORY":
+                    return viewHistory();
+                case "EARLY_LECTURES":
+                    return earlyLectures();
+                case "STATS_HOURS":
+                    return statsHours();
+                case "STATS":
+                    return stats();
+                case "SHARDS":
+                    return shards();
+                case "ADD_NODE":
+                    if (!ADD_NODE_REMOTE && !clientSocket.getInetAddress().isLoopbackAddress())
+                        return "Error: ADD_NODE is only accepted from the router's own host.";
+                    // Rebalancing needs the write lock, so step out of this command's read lock.
+                    topology.readLock().unlock();
+                    try {
+                        return addNode(command.substring("ADD_NODE,".length()).trim());
+                    } finally {
+                        topology.readLock().lock();
+                    }
+                case "VERSION":
+                case "MIN_VERSION":
+                case "CHANGES":
+                case "PROMOTE":
+                    return "Error: " + name + " is per shard and not available through the router.";
+                default:
+                    return "Unknown Command";
+            }
+        }
+
+        // Sends a single-day command to the shard owning the day in field dayField. Malformed commands still go
+        // to a shard, so the client gets the server's own validation message.
+        private String forward(String command, int dayField) throws IOException {
+            String[] parts = command.split(",");
+            String day = parts.length > dayField ? parts[dayField].trim() : "";
+            return backend(ring.nodeFor(day)).request(command, ServerMetrics.commandName(command));
+        }
+
+        // Sends the command to every shard before reading any reply, so shards work in parallel.
+        private Map<String, String> scatter(String command) throws IOException {
+            List<String> nodes = ring.nodes();
+            for (String node : nodes)
+                backend(node).send(command);
+            Map<String, String> replies = new LinkedHashMap<>();
+            for (String node : nodes)
+                replies.put(node, backend(node).receive(ServerMetrics.commandName(command)));
+            return replies;
+        }
+
+        private String getLectures(List<String[]> lectures) {
+            if (lectures.isEmpty())
+                return "No lectures available.";
+            StringBuilder sb = new StringBuilder();
+            for (String[] l : lectures)
+                sb.append(l[0]).append(",").append(l[1]).append(": ").append(l[2])
+                        .append(" (").append(l[3]).append(", ").append(l[4]).append(")")
+                        .append(resourceSuffix(l[5], l[6])).append("\n");
+            return sb.toString();
+        }
+
+        // Same order as the server's GET_LECTURES: days alphabetically, then by starting hour.
+        private List<String[]> allLectures(Collection<String> replies) {
+            List<String[]> lectures = new ArrayList<>();
+            for (String reply : replies) {
+                for (String line : reply.split("\n")) {
+                    String[] lecture = parseListingLine(line);
+                    if (lecture != null)
+                        lectures.add(lecture);
+                }
+            }
+            lectures.sort((a, b) -> {
+                int byDay = a[0].compareTo(b[0]);
+                return byDay != 0 ? byDay : Integer.compare(startHour(a[1]), startHour(b[1]));
+            });
+            return lectures;
+        }
+
+        private String viewTimetable(List<String[]> lectures) {
+            Map<String, String> cells = new HashMap<>();
+            for (String[] l : lectures)
+                cells.put(l[0] + "|" + l[1], l[2] + "(" + l[3] + "," + l[4] + ")");
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-10s", ""));
+            for (String d : DAYS)
+                sb.append(String.format("%-30s", d));
+            sb.append("\n");
+            for (String time : TIME_SLOTS) {
+                sb.append(String.format("%-10s", time));
+                for (String day : DAYS)
+                    sb.append(String.format("%-30s", cells.getOrDefault(day + "|" + time, "---")));
+                sb.append("\n");
+            }
+            return sb.toString();
+        }
+
+        // Every shard runs the query (filter, order and limit) on its own days; the router then runs the same plan
+        // over the union of their matches, which re-orders them and applies the limit across shards.
+        private String query(String command) throws IOException {
+            LectureQuery query;
+            try {
+                query = LectureQuery.compile(command.length() > "QUERY".length() ? command.substring("QUERY,".length()) : "");
+            } catch (IllegalArgumentException e) {
+                return "Error: invalid QUERY: " + e.getMessage();
+            }
+            Map<String, Map<String, TimetableServer.Lecture>> matches = new HashMap<>();
+            for (String reply : scatter(command).values()) {
+                if (reply.startsWith("Error") || reply.startsWith("BUSY"))
+                    return reply;
+                for (String line : reply.split("\n")) {
+                    String[] l = parseListingLine(line);
+                    if (l != null)
+                        matches.computeIfAbsent(l[0], d -> new HashMap<>())
+                                .put(l[1], new TimetableServer.Lecture(l[1], l[0], l[2], l[3], l[4]).withResources(l[5], l[6]));
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            query.run(TimetableSnapshot.of(matches, 0), lec -> sb.append(lec.getDay()).append(",")
+                    .append(lec.getTime()).append(": ").append(lec.getClassName()).append(" (")
+                    .append(lec.getModule()).append(", ").append(lec.getLectureType()).append(")")
+                    .append(resourceSuffix(lec.getRoom(), lec.getLecturer())).append("\n"));
+            return sb.length() == 0 ? "No lectures match the query." : sb.toString();
+        }
+
+        // A room or lecturer can be in use on any day, so every shard is asked; each lists its own days in order
+        // and the router merges by day, then slot.
+        private String resource(String command) throws IOException {
+            List<String> lines = new ArrayList<>();
+            String empty = null;
+            for (String reply : scatter(command).values()) {
+                if (reply.startsWith("Error") || reply.startsWith("BUSY"))
+                    return reply;
+                if (reply.startsWith("No "))
+                    empty = reply;
+                else
+                    lines.addAll(Arrays.asList(reply.split("\n")));
+            }
+            if (lines.isEmpty())
+                return empty;
+            Comparator<String> byDay = LectureQuery.Field.DAY.order, bySlot = LectureQuery.Field.SLOT.order;
+            lines.sort((a, b) -> {
+                String[] x = a.substring(0, a.indexOf(": ")).split(",", 2), y = b.substring(0, b.indexOf(": ")).split(",", 2);
+                int c = byDay.compare(x[0], y[0]);
+                return c != 0 ? c : bySlot.compare(x[1], y[1]);
+            });
+            return String.join("\n", lines) + "\n";
+        }
+
+        // Each date belongs to one shard (its weekday), so this is a merge by date then starting hour.
+        // Unlike a single server, the router holds the merged range in memory.
+        private String occurrences(String command) throws IOException {
+            List<String> lines = new ArrayList<>();
+            for (String reply : scatter(command).values()) {
+                if (reply.startsWith("Error"))
+                    return reply;
+                if (!reply.startsWith("No "))
+                    lines.addAll(Arrays.asList(reply.split("\n")));
+            }
+            if (lines.isEmpty())
+                return "No occurrences in this range.";
+            lines.sort(Comparator.comparing((String l) -> l.substring(0, l.indexOf(',')))
+                    .thenComparingInt(l -> {
+                        String[] p = l.split(",", 3);
+                        return startHour(p[2].substring(0, p[2].indexOf(':')));
+                    }));
+            return String.join("\n", lines) + "\n";
+        }
+
+        // One calendar with every shard's events; the shards resolve the same week anchor.
+        private String exportIcs(String command) throws IOException {
+            String header = null;
+            StringBuilder events = new StringBuilder();
+            for (String reply : scatter(command).values()) {
+                if (reply.startsWith("Error") || reply.startsWith("BUSY"))
+                    return reply;
+                int end = reply.lastIndexOf("END:VCALENDAR");
+                int first = reply.indexOf("BEGIN:VEVENT");
+                if (first < 0 || first > end)
+                    first = end;
+                if (header == null)
+                    header = reply.substring(0, first);
+                events.append(reply, first, end);
+            }
+            return header + events + "END:VCALENDAR\n";
+        }
+
+        // Reads an IMPORT_ICS calendar off the client stream into `calendar`. Returns the error reply, or null.
+        private String readCalendar(Map<String, Map<String, TimetableServer.Lecture>> calendar) throws IOException {
+            try {
+                IcsCalendar.read(in, lecture -> {
+                    if (calendar.computeIfAbsent(lecture.getDay(), d -> new HashMap<>())
+                            .putIfAbsent(lecture.getTime(), lecture) != null)
+                        throw new IllegalArgumentException("another event already uses " + lecture.getDay() + " "
+                                + lecture.getTime() + ".");
+                });
+                return null;
+            } catch (IllegalArgumentException e) {
+                return "IMPORT_ICS failed: " + e.getMessage();
+            }
+        }
+
+        // Validated while reading, then re-encoded per shard with only the days it owns. The events carry their
+        // exact rules (X-TIMETABLE-RULE), so the week anchor used for re-encoding does not matter.
+        private String importIcs(Map<String, Map<String, TimetableServer.Lecture>> calendar) throws IOException {
+            Map<String, Map<String, Map<String, TimetableServer.Lecture>>> perShard = new LinkedHashMap<>();
+            calendar.forEach((day, slots) ->
+                    perShard.computeIfAbsent(ring.nodeFor(day), n -> new HashMap<>()).put(day, slots));
+            for (Map.Entry<String, Map<String, Map<String, TimetableServer.Lecture>>> shard : perShard.entrySet()) {
+                StringWriter ics = new StringWriter();
+                IcsCalendar.write(TimetableSnapshot.of(shard.getValue(), 0), LocalDate.now(), ics);
+                backend(shard.getKey()).send("IMPORT_ICS\n" + ics.toString().trim());
+            }
+            String failure = null;
+            int[] merged = new int[3];
+            for (String node : perShard.keySet()) {
+                String reply = backend(node).receive("IMPORT_ICS");
+                if (!reply.startsWith("Calendar imported"))
+                    failure = "IMPORT_ICS failed on " + node + ": " + reply;
+                else
+                    addMergeCounts(merged, reply);
+            }
+            if (failure != null)
+                return failure;
+            return String.format("Calendar imported (merged): %d inserted, %d updated, %d removed.",
+                    merged[0], merged[1], merged[2]);
+        }
+
+        private String viewHistory() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (String reply : scatter("VIEW_HISTORY").values()) {
+                if (!reply.startsWith("No "))
+                    sb.append(reply).append("\n");
+            }
+            return sb.length() == 0 ? "No history available." : sb.toString();
+        }
+
+        private String earlyLectures() throws IOException {
+            StringBuilder sb = new StringBuilder("Early lectures processed:\n");
+            for (String reply : scatter("EARLY_LECTURES").values()) {
+                if (reply.startsWith("Early lectures processed:")) {
+                    String days = reply.substring("Early lectures processed:".length()).trim();
+                    if (!days.isEmpty())
+                        sb.append(days).append("\n");
+                } else {
+                    sb.append(reply).append("\n");
+                }
+            }
+            return sb.toString();
+        }
+
+        // Sums the shards' counters; capacity is the week's slots, which every shard reports in full.
+        private String statsHours() throws IOException {
+            long capacity = 0;
+            Map<String, Long> counts = new TreeMap<>();
+            for (String reply : scatter("STATS_HOURS").values()) {
+                for (String line : reply.split("\n")) {
+                    int eq = line.indexOf('=');
+                    if (eq < 0)
+                        continue;
+                    String key = line.substring(0, eq);
+                    if (key.equals("capacity"))
+                        capacity = Math.max(capacity, Long.parseLong(line.substring(eq + 1)));
+                    else if (!key.equals("utilisation"))
+                        counts.merge(key, Long.parseLong(line.substring(eq + 1)), Long::sum);
+                }
+            }
+            long total = counts.getOrDefault("total", 0L);
+            StringBuilder sb = new StringBuilder();
+            sb.append("total=").append(total).append("\n");
+            sb.append("capacity=").append(capacity).append("\n");
+            sb.append(String.format("utilisation=%.1f%n", capacity == 0 ? 0.0 : 100.0 * total / capacity));
+            for (String prefix : new String[]{"day.", "module.", "type.", "class."}) {
+                counts.forEach((key, n) -> {
+                    if (key.startsWith(prefix))
+                        sb.append(key).append("=").append(n).append("\n");
+                });
+            }
+            return sb.toString();
+        }
+
+        private String stats() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            sb.append("router.shards=").append(ring.nodes().size()).append("\n");
+            for (Map.Entry<String, String> e : scatter("STATS").entrySet())
+                sb.append("shard=").append(e.getKey()).append("\n").append(e.getValue()).append("\n");
+            return sb.toString();
+        }
+
+        private String shards() {
+            StringBuilder sb = new StringBuilder("SHARDS");
+            for (String day : DAYS)
+                sb.append(" ").append(day).append("=").append(ring.nodeFor(day));
+            return sb.toString();
+        }
+
+        //---------------------- CSV Import ----------------------
+        private String readCsvBlock() throws IOException {
+            String marker = in.readLine();
+            StringBuilder csv = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("END_CSV"))
+                csv.append(line).append("\n");
+            return "BEGIN_CSV".equals(marker) ? csv.toString() : "";
+        }
+
+        // Validated here first so a bad file is rejected before any shard has replaced its timetable. Each shard
+        // then receives every row with only the columns of the days it owns; the others are blanked. A shard holds
+        // nothing for the days it does not own, so for a MERGE the blanked columns are no-ops there.
+        private String importCsv(String command, String csv) throws IOException {
+            if (csv.isEmpty())
+                return "IMPORT_CSV error: Expected BEGIN_CSV marker.";
+            try {
+                TimetableServer.parseCSV(csv);
+            } catch (Exception ex) {
+                return "IMPORT_CSV failed: " + ex.getMessage();
+            }
+            String[] lines = csv.split("\n");
+            Map<String, StringBuilder> perShard = new LinkedHashMap<>();
+            for (String node : ring.nodes())
+                perShard.put(node, new StringBuilder(command).append("\nBEGIN_CSV\n").append(lines[0]).append("\n"));
+            for (int i = 1; i < lines.length; i++) {
+                if (lines[i].trim().isEmpty())
+                    continue;
+                String[] cols;
+                try {
+                    cols = TimetableServer.parseCSVLine(lines[i], 6);
+                } catch (Exception ex) {
+                    return "IMPORT_CSV failed: " + ex.getMessage();
+                }
+                for (Map.Entry<String, StringBuilder> shard : perShard.entrySet()) {
+                    StringBuilder row = shard.getValue().append(cols[0].trim());
+                    for (int d = 0; d < DAYS.length; d++) {
+                        boolean owned = ring.nodeFor(DAYS[d]).equals(shard.getKey());
+                        row.append(",").append(owned ? "\"" + cols[d + 1].trim() + "\"" : "---");
+                    }
+                    row.append("\n");
+                }
+            }
+            for (Map.Entry<String, StringBuilder> shard : perShard.entrySet())
+                backend(shard.getKey()).send(shard.getValue().append("END_CSV").toString());
+            String failure = null;
+            int[] merged = new int[3];
+            for (String node : perShard.keySet()) {
+                String reply = backend(node).receive("IMPORT_CSV");
+                if (!reply.startsWith("Timetable imported"))
+                    failure = "IMPORT_CSV failed on " + node + ": " + reply;
+                else if (reply.contains("(merged): "))
+                    addMergeCounts(merged, reply);
+            }
+            if (failure != null)
+                return failure;
+            if (command.endsWith(",MERGE"))
+                return String.format("Timetable imported (merged): %d inserted, %d updated, %d removed.",
+                        merged[0], merged[1], merged[2]);
+            return "Timetable imported successfully.";
+        }
+
+        // Adds the counts of one shard's "... (merged): a inserted, b updated, c removed." reply.
+        private static void addMergeCounts(int[] merged, String reply) {
+            String[] parts = reply.substring(reply.indexOf(':') + 1).split(",");
+            for (int i = 0; i < merged.length && i < parts.length; i++)
+                merged[i] += Integer.parseInt(parts[i].trim().split(" ")[0]);
+        }
+
+        //---------------------- Offline Sync ----------------------
+        // The edits between BEGIN_SYNC and END_SYNC, or null if the marker is missing.
+        private List<String> readSyncBlock() throws IOException {
+            String marker = in.readLine();
+            List<String> edits = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("END_SYNC")) {
+                if (!line.trim().isEmpty())
+                    edits.add(line.trim());
+            }
+            return "BEGIN_SYNC".equals(marker) ? edits : null;
+        }
+
+        // Each shard gets the edits for the days it owns, in their original order, as one SYNC. Its numbered
+        // result lines are mapped back to the client's numbering; a shard that refuses the whole batch (BUSY,
+        // READ_ONLY, Error) has that reply reported against each of its edits.
+        private String sync(List<String> edits) throws IOException {
+            if (edits == null)
+                return "Error: expected BEGIN_SYNC after SYNC.";
+            if (edits.isEmpty())
+                return "No edits to sync.";
+            Map<String, List<Integer>> perShard = new LinkedHashMap<>();
+            for (int i = 0; i < edits.size(); i++) {
+                String[] parts = edits.get(i).split(",");
+                int dayField = parts[0].trim().equals("ADD_LECTURE") ? 2 : 1;
+                String day = parts.length > dayField ? parts[dayField].trim() : "";
+                perShard.computeIfAbsent(ring.nodeFor(day), k -> new ArrayList<>()).add(i);
+            }
+            for (Map.Entry<String, List<Integer>> shard : perShard.entrySet()) {
+                StringBuilder batch = new StringBuilder("SYNC\nBEGIN_SYNC\n");
+                for (int i : shard.getValue())
+                    batch.append(edits.get(i)).append("\n");
+                backend(shard.getKey()).send(batch.append("END_SYNC").toString());
+            }
+            String[] results = new String[edits.size()];
+            for (Map.Entry<String, List<Integer>> shard : perShard.entrySet()) {
+                String reply = backend(shard.getKey()).receive("SYNC");
+                List<Integer> indices = shard.getValue();
+                if (reply.isEmpty() || !Character.isDigit(reply.charAt(0))) {
+                    for (int i : indices)
+                        results[i] = "ERROR: " + shard.getKey() + ": " + reply;
+                    continue;
+                }
+                // Lines that are not "<n> <result>" for an item of this batch are ignored; an item left without a
+                // result is reported as an ERROR rather than failing the whole SYNC.
+                for (String line : reply.split("\n")) {
+                    int space = line.indexOf(' ');
+                    int n = space > 0 ? itemNumber(line.substring(0, space)) : -1;
+                    if (n >= 1 && n <= indices.size() && results[indices.get(n - 1)] == null)
+                        results[indices.get(n - 1)] = line.substring(space + 1);
+                }
+                for (int i : indices) {
+                    if (results[i] == null)
+                        results[i] = "ERROR: " + shard.getKey() + ": no result for this edit.";
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < results.length; i++)
+                sb.append(i + 1).append(' ').append(results[i]).append("\n");
+            return sb.toString();
+        }
+
+        private Backend backend(String node) throws IOException {
+            Backend b = backends.get(node);
+            // A backend connection left unused may have been reaped by the shard; find out before relying on it.
+            if (b != null && !b.broken && System.currentTimeMillis() - b.lastUsed > PROBE_AFTER_MS)
+                b.probe();
+            if (b == null || b.broken) {
+                if (b != null)
+                    b.close();
+                b = new Backend(node);
+                backends.put(node, b);
+            }
+            return b;
+        }
+    }
+
+    // A SYNC reply line's item number, or -1 if it is not a number.
+    private static int itemNumber(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int startHour(String time) {
+        try {
+            return Integer.parseInt(time.split("-")[0].trim());
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    //---------------------- Backend Connection ----------------------
+    private static class Backend implements Closeable {
+        private final String address;
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        boolean broken;
+        long lastUsed = System.currentTimeMillis();
+
+        Backend(String address) throws IOException {
+            this.address = address;
+            String[] hostPort = address.split(":");
+            try {
+                socket = new Socket(hostPort[0], Integer.parseInt(hostPort[1]));
+                socket.setSoTimeout(ServerConnection.READ_TIMEOUT_MS);
+            } catch (IOException e) {
+                throw new IOException("shard " + address + " unavailable.", e);
+            }
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out = new PrintWriter(socket.getOutputStream(), false);
+        }
+
+        String request(String payload, String command) throws IOException {
+            send(payload);
+            return receive(command);
+        }
+
+        void send(String payload) throws IOException {
+            lastUsed = System.currentTimeMillis();
+            out.println(payload);
+            out.flush();
+            if (out.checkError()) {
+                broken = true;
+                throw new IOException("shard " + address + " unavailable.");
+            }
+        }
+
+        String receive(String command) throws IOException {
+            String reply;
+            try {
+                reply = ResponseReader.read(in, command);
+            } catch (IOException e) {
+                reply = null;
+            }
+            if (reply == null) {
+                broken = true;
+                throw new IOException("shard " + address + " unavailable.");
+            }
+            return reply;
+        }
+
+        // Marks the connection broken unless the shard still answers.
+        void probe() {
+            try {
+                request("PING", "PING");
+            } catch (IOException e) {
+                broken = true;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
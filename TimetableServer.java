@@ -6,27 +6,58 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
-import javafx.scene.paint.Color;
-import javafx.scene.Node;
-import javafx.scene.Parent;
 
 import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class TimetableServer extends Application {
 
-    // Thread-safe collections for the timetable and history.
-    // Outer map: Day -> (Time Slot -> Lecture)
-    private static ConcurrentHashMap<String, ConcurrentHashMap<String, Lecture>> timetable = new ConcurrentHashMap<>();
-    private static List<String> historyLog = Collections.synchronizedList(new ArrayList<>());
+    // The current timetable version (Day -> Time Slot -> Lecture). Snapshots are immutable: readers take one
+    // with get() and never lock; writers (under storeLock) publish the next version with set().
+    static final AtomicReference<TimetableSnapshot> timetable = new AtomicReference<>(TimetableSnapshot.EMPTY);
+    static List<String> historyLog = Collections.synchronizedList(new ArrayList<>());
     // A map to store the removed lectures for undo functionality (key: "day,time", value: Lecture)
     private static Map<String, Lecture> removedLectures = new HashMap<>();
+    // Incrementally maintained counts behind STATS_HOURS (5 days x 9 slots bookable).
+    // Slot-level change history with periodic snapshot checkpoints, for AS_OF reads.
+    static final TimetableHistory history = new TimetableHistory();
+    static final TimetableAggregates aggregates = new TimetableAggregates(5 * 9);
+    // Room and lecturer occupancy, including holds for other timetables; kept in step with the snapshot.
+    static final ResourceIndex resources = new ResourceIndex();
 
-    private boolean isDark = false; // Light mode set by default
+    // Every mutation runs under storeLock and is committed through replicationLog, so state changes
+    // happen in one total order that replicas replay exactly.
+    static final ReentrantLock storeLock = new ReentrantLock();
+    static final ReplicationLog replicationLog =
+            new ReplicationLog(Integer.getInteger("timetable.replication.retain", 100_000));
+    // True on a replica: writes are rejected until PROMOTE.
+    static volatile boolean readOnly = false;
+    // PROMOTE is only taken from this host unless timetable.promote.remote is set; otherwise any client could
+    // turn a replica into a second primary.
+    static final boolean PROMOTE_REMOTE = Boolean.getBoolean("timetable.promote.remote");
+    // Largest offline edit batch a client may send in one SYNC.
+    static final int SYNC_MAX_ITEMS = Integer.getInteger("timetable.sync.maxItems", 200);
+    // Largest block (CSV, SYNC edits or calendar) a command may carry, in characters.
+    static final int BLOCK_MAX_CHARS = Integer.getInteger("timetable.blockMaxChars", 8 << 20);
+    // Longest OCCURRENCES range, in days; a wider one would keep a worker stepping through dates for hours.
+    static final int OCCURRENCES_MAX_DAYS = Integer.getInteger("timetable.occurrences.maxDays", 5 * 366);
+    static ReplicaFollower follower;
+    private static ReplicationServer replicationServer;
+    private static HttpGateway httpGateway;
+
+    private Theme theme = Theme.LIGHT; // Light mode set by default
     private static ServerSocket serverSocket;
+    static final ServerMetrics metrics = new ServerMetrics();
+    // Global concurrency limit and priority queue for client commands.
+    static final AdmissionControl admission = new AdmissionControl();
+    // Idle/read timeouts for client connections, one timer wheel for all of them.
+    static final ConnectionReaper reaper = new ConnectionReaper();
     private TextArea communicationStatusArea;
+    private StatusConsole status;  // Coalesced, bounded writer for communicationStatusArea.
     private Button startServerButton;
     private Button stopServerButton;
     private Stage window;
@@ -43,6 +74,8 @@ public class TimetableServer extends Application {
         communicationStatusArea = new TextArea();
         communicationStatusArea.setEditable(false);
         communicationStatusArea.setMaxHeight(150);
+        status = new StatusConsole(communicationStatusArea, 500);
+        status.start();
 
         startServerButton = new Button("Start Server");
         startServerButton.setStyle("-fx-background-color: #4CAF50; -fx-text-fill: white; -fx-font-size: 14px;");
@@ -62,6 +95,7 @@ public class TimetableServer extends Application {
         layout.getChildren().addAll(startServerButton, stopServerButton, communicationStatusArea, toggleThemeButton);
 
         Scene scene = new Scene(layout, 400, 300);
+        theme.apply(scene);
         window.setTitle("Lecture Server");
         window.setScene(scene);
         window.show();
@@ -69,51 +103,31 @@ public class TimetableServer extends Application {
 
     //-----------------SWITCH BETWEEN LIGHT/DARK MODE-------------------
     public void toggleTheme() {
-        isDark = !isDark;
-        applyThemeToScene(window.getScene());
-    }
-
-    private void applyThemeToScene(Scene scene) {
-        if (isDark) {
-            applyDarkMode(scene);
-        } else {
-            applyLightMode(scene);
-        }
+        theme = theme.other();
+        theme.apply(window.getScene());
     }
 
-    private void applyDarkMode(Scene scene) {
-        scene.setFill(Color.BLACK);
-        applyStyleToNodes(scene.getRoot(), "#333", Color.WHITE);
-    }
-
-    private void applyLightMode(Scene scene) {
-        scene.setFill(Color.WHITE);
-        applyStyleToNodes(scene.getRoot(), "#fff", Color.BLACK);
-    }
-
-    private void applyStyleToNodes(Node node, String backgroundColor, Color textColor) {
-        if (node instanceof Label) {
-            ((Label) node).setTextFill(textColor);
-        } else if (node instanceof TextArea) {
-            ((TextArea) node).setStyle("-fx-control-inner-background: " + (isDark ? "#555" : "#fff") +
-                    "; -fx-text-fill: " + (isDark ? "white" : "black") + ";");
-        } else if (node instanceof VBox || node instanceof HBox || node instanceof StackPane) {
-            ((Region) node).setStyle("-fx-background-color: " + backgroundColor + ";");
-        }
-        if (node instanceof Parent) {
-            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
-                applyStyleToNodes(child, backgroundColor, textColor);
-            }
-        }
-    }
     //---------------------- SERVER CONTROL METHODS ----------------------
     private void startServer() {
         try {
             serverSocket = new ServerSocket(12346);
-            communicationStatusArea.appendText("Waiting for connection...\n");
+            metrics.registerMBean();
+            Integer replicationPort = Integer.getInteger("timetable.replication.port");
+            if (replicationPort != null && replicationServer == null) {
+                replicationServer = new ReplicationServer(replicationPort);
+                replicationServer.start();
+                status.post("Replication listening on port " + replicationPort);
+            }
+            Integer httpPort = Integer.getInteger("timetable.http.port");
+            if (httpPort != null && httpGateway == null) {
+                httpGateway = new HttpGateway(httpPort);
+                httpGateway.start();
+                status.post("HTTP gateway listening on port " + httpPort);
+            }
+            status.post("Waiting for connection...");
             new Thread(this::acceptClients).start();
         } catch (IOException e) {
-            communicationStatusArea.appendText("Error: Unable to start server.\n");
+            status.post("Error: Unable to start server.");
         }
     }
 
@@ -121,12 +135,12 @@ public class TimetableServer extends Application {
         try {
             while (!serverSocket.isClosed()) {
                 Socket clientSocket = serverSocket.accept();
-                communicationStatusArea.appendText("Client connected\n");
+                status.post("Client connected");
                 ClientHandler clientHandler = new ClientHandler(clientSocket);
                 new Thread(clientHandler).start();
             }
         } catch (IOException e) {
-            communicationStatusArea.appendText("Error: Unable to accept client connection.\n");
+            status.post("Error: Unable to accept client connection.");
         }
     }
 
@@ -134,9 +148,9 @@ public class TimetableServer extends Application {
         try {
             if (serverSocket != null && !serverSocket.isClosed())
                 serverSocket.close();
-            communicationStatusArea.appendText("Stopped\n");
+            status.post("Stopped");
         } catch (IOException e) {
-            communicationStatusArea.appendText("Error: Unable to stop server.\n");
+            status.post("Error: Unable to stop server.");
         }
     }
 
@@ -145,58 +159,227 @@ public class TimetableServer extends Application {
         private Socket clientSocket;
         private PrintWriter out;
         private BufferedReader in;
+        // Socket streams under in/out, kept so COMPRESS can re-wrap them.
+        private InputStream wireIn;
+        private OutputStream wireOut;
+        // Set by error() while a command is being handled, so the dispatch loop can count failures.
+        private boolean failed;
+        // Set by readBlock when the block went over BLOCK_MAX_CHARS and was discarded.
+        private boolean blockTooLarge;
+        private final AsyncLog.Sampler traceSampler = new AsyncLog.Sampler();
+        private final AdmissionControl.TokenBucket rateLimit = new AdmissionControl.TokenBucket();
+        // Null for in-process handlers, which have no connection to time out.
+        private ConnectionReaper.Session session;
 
         public ClientHandler(Socket clientSocket) {
             this.clientSocket = clientSocket;
         }
 
+        // In-process handler without a socket, used by the benchmark module to drive the command handlers directly.
+        ClientHandler(BufferedReader in, PrintWriter out) {
+            this.in = in;
+            this.out = out;
+        }
+
         @Override
         public void run() {
+            metrics.connectionOpened();
             try {
-                in  = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                out = new PrintWriter(clientSocket.getOutputStream(), true);
+                session = reaper.register(clientSocket);
+                wireIn = session.track(metrics.countIn(clientSocket.getInputStream()));
+                wireOut = metrics.countOut(clientSocket.getOutputStream());
+                in  = new BufferedReader(new InputStreamReader(wireIn));
+                out = new PrintWriter(wireOut, true);
 
                 String clientMessage;
                 while ((clientMessage = in.readLine()) != null) {
-                    System.out.println("Client: " + clientMessage);
-
-                    if (clientMessage.startsWith("ADD_LECTURE,")) {
-                        handleAddLecture(clientMessage);
-                    } else if (clientMessage.startsWith("REMOVE_LECTURE,")) {
-                        handleRemoveLecture(clientMessage);
-                    } else if (clientMessage.startsWith("UNDO_REMOVE,")) {
-                        // New branch for undo remove command.
-                        handleUndoRemove(clientMessage);
-                    } else if (clientMessage.equals("VIEW_TIMETABLE")) {
-                        handleViewTimetable();
-                    } else if (clientMessage.equals("VIEW_HISTORY")) {
-                        handleViewHistory();
-                    } else if (clientMessage.equals("EARLY_LECTURES")) {
-                        handleEarlyLectures();
-                    } else if (clientMessage.equals("GET_LECTURES")) {
-                        handleGetLectures();
-                    } else if (clientMessage.equals("IMPORT_CSV")) {
-                        handleImportCSV();
-                    } else if (clientMessage.equals("STOP_CONNECTION")) {
-                        handleStopConnection();
-                        break;
-                    } else {
-                        out.println("Unknown Command");
+                    session.executing();
+                    if (traceSampler.sample())
+                        AsyncLog.trace("Client: " + clientMessage);
+                    long started = System.nanoTime();
+                    failed = false;
+
+                    // The block is read before admission, so a client sending it slowly holds no worker slot.
+                    String block = readBlock(clientMessage);
+                    if (blockTooLarge) {
+                        error("Error: the block after " + ServerMetrics.commandName(clientMessage) + " exceeds "
+                                + BLOCK_MAX_CHARS + " characters.");
+                        metrics.recordCommand(ServerMetrics.commandName(clientMessage), System.nanoTime() - started, true);
+                        session.waiting();
+                        continue;
+                    }
+                    AdmissionControl.Priority priority = AdmissionControl.classify(clientMessage);
+                    if (priority != null && !admit(priority)) {
+                        metrics.recordCommand(ServerMetrics.commandName(clientMessage), System.nanoTime() - started, true);
+                        session.waiting();
+                        continue;
                     }
+                    // The handlers read the block as if it came off the connection.
+                    BufferedReader wire = in;
+                    if (block != null)
+                        in = new BufferedReader(new StringReader(block));
+                    try {
+                        if (clientMessage.startsWith("ADD_LECTURE,")) {
+                            handleAddLecture(clientMessage);
+                        } else if (clientMessage.startsWith("REMOVE_LECTURE,")) {
+                            handleRemoveLecture(clientMessage);
+                        } else if (clientMessage.startsWith("UNDO_REMOVE,")) {
+                            // New branch for undo remove command.
+                            handleUndoRemove(clientMessage);
+                        } else if (clientMessage.equals("VIEW_TIMETABLE") || clientMessage.startsWith("VIEW_TIMETABLE,")) {
+                            handleViewTimetable(clientMessage);
+                        } else if (clientMessage.equals("VIEW_HISTORY")) {
+                            handleViewHistory();
+                        } else if (clientMessage.equals("EARLY_LECTURES")) {
+                            handleEarlyLectures();
+                        } else if (clientMessage.equals("GET_LECTURES") || clientMessage.startsWith("GET_LECTURES,")) {
+                            handleGetLectures(clientMessage);
+                        } else if (clientMessage.startsWith("CHANGES,")) {
+                            handleChanges(clientMessage);
+                        } else if (clientMessage.equals("QUERY") || clientMessage.startsWith("QUERY,")) {
+                            handleQuery(clientMessage);
+                        } else if (clientMessage.equals("SYNC")) {
+                            handleSync();
+                        } else if (clientMessage.equals("IMPORT_CSV")) {
+                            handleImportCSV(false);
+                        } else if (clientMessage.equals("IMPORT_CSV,MERGE")) {
+                            handleImportCSV(true);
+                        } else if (clientMessage.equals("STATS")) {
+                            handleStats();
+                        } else if (clientMessage.equals("STATS_HOURS")) {
+                            handleStatsHours();
+                        } else if (clientMessage.equals("VERSION")) {
+                            handleVersion();
+                        } else if (clientMessage.startsWith("MIN_VERSION,")) {
+                            handleMinVersion(clientMessage);
+                        } else if (clientMessage.equals("PROMOTE")) {
+                            handlePromote();
+                        } else if (clientMessage.startsWith("SET_RECURRENCE,")) {
+                            handleSetRecurrence(clientMessage);
+                        } else if (clientMessage.startsWith("CLEAR_RECURRENCE,")) {
+                            handleClearRecurrence(clientMessage);
+                        } else if (clientMessage.startsWith("HOLD_RESOURCE,")) {
+                            handleHoldResource(clientMessage);
+                        } else if (clientMessage.startsWith("RELEASE_RESOURCE,")) {
+                            handleReleaseResource(clientMessage);
+                        } else if (clientMessage.startsWith("HOLDS,")) {
+                            handleHolds(clientMessage);
+                        } else if (clientMessage.startsWith("RESOURCE,")) {
+                            handleResource(clientMessage);
+                        } else if (clientMessage.startsWith("OCCURRENCES,")) {
+                            handleOccurrences(clientMessage);
+                        } else if (clientMessage.equals("EXPORT_ICS") || clientMessage.startsWith("EXPORT_ICS,")) {
+                            handleExportIcs(clientMessage);
+                        } else if (clientMessage.equals("IMPORT_ICS")) {
+                            handleImportIcs();
+                        } else if (clientMessage.startsWith("COMPRESS,")) {
+                            handleCompress(clientMessage);
+                        } else if (clientMessage.equals("PING")) {
+                            out.println("PONG");
+                        } else if (clientMessage.equals("STOP_CONNECTION")) {
+                            handleStopConnection();
+                            break;
+                        } else {
+                            error("Unknown Command");
+                        }
+                    } finally {
+                        if (block != null)
+                            in = wire;
+                        if (priority != null)
+                            admission.release(priority);
+                    }
+                    metrics.recordCommand(ServerMetrics.commandName(clientMessage), System.nanoTime() - started, failed);
+                    session.waiting();
                 }
             } catch (IOException e) {
-                e.printStackTrace();
+                // A connection closed by the reaper ends here too; that is already logged.
+                if (session == null || !session.isClosed())
+                    AsyncLog.error("Connection error", e);
             } finally {
+                if (session != null)
+                    session.close();
+                metrics.connectionClosed();
                 closeClientConnection();
             }
         }
 
+        private void error(String message) {
+            out.println(message);
+            failed = true;
+        }
+
+        // The block that follows IMPORT_CSV (through END_CSV), SYNC (through END_SYNC) or IMPORT_ICS (through
+        // END:VCALENDAR), read off the connection in full; null for commands without one. A block over
+        // BLOCK_MAX_CHARS is still consumed, so the stream stays in sync, but dropped with blockTooLarge set.
+        private String readBlock(String command) throws IOException {
+            blockTooLarge = false;
+            String end;
+            if (ServerMetrics.commandName(command).equals("IMPORT_CSV"))
+                end = "END_CSV";
+            else if (command.equals("SYNC"))
+                end = "END_SYNC";
+            else if (command.equals("IMPORT_ICS"))
+                end = "END:VCALENDAR";
+            else
+                return null;
+            // A client that stops sending mid-block is closed after the read timeout, not the idle one.
+            session.receiving();
+            StringBuilder block = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!blockTooLarge) {
+                    block.append(line).append('\n');
+                    if (block.length() > BLOCK_MAX_CHARS) {
+                        blockTooLarge = true;
+                        block = null;
+                    }
+                }
+                if (line.equals(end) || end.equals("END:VCALENDAR") && line.equalsIgnoreCase(end))
+                    break;
+            }
+            session.executing();
+            return blockTooLarge ? null : block.toString();
+        }
+
+        // The connection's rate limit, then a slot from the global admission queue. A refused command is answered
+        // with BUSY; its block, if any, has already been read off (readBlock), so the stream stays in sync.
+        private boolean admit(AdmissionControl.Priority priority) {
+            String refusal = null;
+            if (!rateLimit.tryTake()) {
+                admission.recordRateLimited();
+                refusal = "BUSY: rate limit exceeded, retry later.";
+            } else {
+                try {
+                    if (!admission.acquire(priority))
+                        refusal = "BUSY: server overloaded, retry later.";
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    refusal = "BUSY: server shutting down.";
+                }
+            }
+            if (refusal == null)
+                return true;
+            error(refusal);
+            return false;
+        }
+
+        private boolean rejectIfReadOnly() {
+            if (!readOnly)
+                return false;
+            error("READ_ONLY: this server is a replica; send writes to the primary.");
+            return true;
+        }
+
         // ---------- ADD_LECTURE ----------
-        private synchronized void handleAddLecture(String command) {
+        // ADD_LECTURE,time,day,class,module,type[,room[,lecturer]]
+        void handleAddLecture(String command) {
+            if (rejectIfReadOnly())
+                return;
+            lockStore();
             try {
                 String[] parts = command.split(",");
                 if (parts.length < 6) {
-                    out.println("Invalid ADD_LECTURE command format.");
+                    error("Invalid ADD_LECTURE command format.");
                     return;
                 }
                 String time = parts[1].trim();
@@ -205,64 +388,78 @@ public class TimetableServer extends Application {
                 String moduleName = parts[4].trim();
                 String lectureType = parts[5].trim();
 
-                timetable.putIfAbsent(day, new ConcurrentHashMap<>());
-                if (timetable.get(day).containsKey(time)) {
+                if (timetable.get().contains(day, time)) {
                     out.println("Timeslot already taken! Choose another time.");
                     return;
                 }
-                Lecture newLecture = new Lecture(time, day, className, moduleName, lectureType);
-                timetable.get(day).put(time, newLecture);
+                // Encoding up front rejects values the compact Lecture cannot hold before anything is logged.
+                Lecture lecture = new Lecture(time, day, className, moduleName, lectureType)
+                        .withResources(parts.length > 6 ? parts[6] : "", parts.length > 7 ? parts[7] : "");
+                String clash = resources.clash(lecture, day, time);
+                if (clash != null) {
+                    out.println("Clash: " + clash + ".");
+                    return;
+                }
+                commit("PUT", lectureFields(lecture));
 
                 String logEntry = String.format("Lecture added: %s | %s | %s | %s | %s : %s",
                         day, time, className, moduleName, lectureType, new java.util.Date());
-                historyLog.add(logEntry);
+                recordHistory(logEntry);
 
                 out.println("Lecture added successfully.");
+            } catch (IllegalArgumentException e) {
+                error("Invalid lecture: " + e.getMessage());
             } catch (Exception e) {
-                out.println("Error while adding lecture.");
+                error("Error while adding lecture.");
+            } finally {
+                storeLock.unlock();
             }
         }
 
         // ---------- REMOVE_LECTURE ----------
-        private synchronized void handleRemoveLecture(String command) {
+        void handleRemoveLecture(String command) {
+            if (rejectIfReadOnly())
+                return;
+            lockStore();
             try {
                 String[] parts = command.split(",");
                 if (parts.length < 3) {
-                    out.println("Invalid REMOVE_LECTURE command format.");
+                    error("Invalid REMOVE_LECTURE command format.");
                     return;
                 }
                 String day = parts[1].trim();
                 String time = parts[2].trim();
-                if (timetable.containsKey(day) && timetable.get(day).containsKey(time)) {
-                    Lecture removedLecture = timetable.get(day).get(time);
+                Lecture removedLecture = timetable.get().get(day, time);
+                if (removedLecture != null) {
                     String logEntry = String.format("Lecture removed: %s | %s | %s | %s | %s : %s",
                             day, time, removedLecture.getClassName(), removedLecture.getModule(),
                             removedLecture.getLectureType(), new java.util.Date());
-                    historyLog.add(logEntry);
+                    recordHistory(logEntry);
 
-                    // Store the removed lecture for undo functionality.
-                    removedLectures.put(day + "," + time, removedLecture);
-
-                    timetable.get(day).remove(time);
-                    if (timetable.get(day).isEmpty())
-                        timetable.remove(day);
+                    // Removes the lecture and keeps it in removedLectures for undo.
+                    commit("DEL", day, time);
 
                     out.println("Lecture removed successfully.");
                 } else {
                     out.println("No lecture scheduled in this time slot.");
                 }
             } catch (Exception e) {
-                out.println("Error while removing lecture.");
+                error("Error while removing lecture.");
+            } finally {
+                storeLock.unlock();
             }
         }
 
         // ---------- UNDO_REMOVE ----------
-        private synchronized void handleUndoRemove(String command) {
+        void handleUndoRemove(String command) {
+            if (rejectIfReadOnly())
+                return;
+            lockStore();
             try {
                 // Expected command format: "UNDO_REMOVE,day,time"
                 String[] parts = command.split(",");
                 if (parts.length < 3) {
-                    out.println("Invalid UNDO_REMOVE command format.");
+                    error("Invalid UNDO_REMOVE command format.");
                     return;
                 }
                 String day = parts[1].trim();
@@ -271,31 +468,180 @@ public class TimetableServer extends Application {
                 if (removedLectures.containsKey(key)) {
                     Lecture removedLecture = removedLectures.get(key);
                     // Check if slot is occupied (should not be)
-                    if (timetable.containsKey(day) && timetable.get(day).containsKey(time)) {
+                    if (timetable.get().contains(day, time)) {
                         out.println("Undo failed: Timeslot already occupied.");
                         return;
                     }
-                    timetable.putIfAbsent(day, new ConcurrentHashMap<>());
-                    timetable.get(day).put(time, removedLecture);
+                    // Its room or lecturer may have been held for another timetable since it was removed.
+                    String clash = resources.clash(removedLecture, day, time);
+                    if (clash != null) {
+                        out.println("Undo failed: " + clash + ".");
+                        return;
+                    }
+                    // Moves the lecture from the undo map back into the timetable.
+                    commit("RESTORE", day, time);
 
                     String logEntry = String.format("Lecture restored: %s | %s | %s | %s | %s : %s",
                             day, time, removedLecture.getClassName(), removedLecture.getModule(),
                             removedLecture.getLectureType(), new java.util.Date());
-                    historyLog.add(logEntry);
+                    recordHistory(logEntry);
 
-                    // Remove from undo map since it's been restored.
-                    removedLectures.remove(key);
                     out.println("Undo successful: Lecture restored.");
                 } else {
                     out.println("No lecture to undo.");
                 }
             } catch (Exception e) {
-                out.println("Error: cannot undo.");
+                error("Error: cannot undo.");
+            } finally {
+                storeLock.unlock();
+            }
+        }
+
+        // ---------- SYNC ----------
+        // SYNC, then BEGIN_SYNC, one edit per line, END_SYNC: a client's offline edits. The items run in order
+        // through the normal handlers while this handler keeps the store lock, so nothing interleaves with the
+        // batch. Each item gets one line, "<n> OK|SKIPPED|CONFLICT|ERROR: <reason>", and the reply ends with an
+        // empty line. Removes and undos name the lecture the client saw, and every item is checked against the
+        // slot first. A batch replayed after a dropped connection therefore reports SKIPPED for what already
+        // happened, and a slot someone else changed meanwhile is a CONFLICT rather than a lost update:
+        //   ADD_LECTURE,time,day,class,module,type[,room[,lecturer]]
+        //   REMOVE_LECTURE,day,time,class,module,type
+        //   UNDO_REMOVE,day,time,class,module,type
+        void handleSync() {
+            try {
+                if (session != null)
+                    session.receiving();
+                String marker = in.readLine();
+                List<String> items = new ArrayList<>();
+                String line;
+                while ((line = in.readLine()) != null && !line.equals("END_SYNC")) {
+                    if (!line.trim().isEmpty())
+                        items.add(line.trim());
+                }
+                if (session != null)
+                    session.executing();
+                // The block is consumed first so a rejected batch leaves the stream in sync.
+                if (!"BEGIN_SYNC".equals(marker)) {
+                    error("Error: expected BEGIN_SYNC after SYNC.");
+                    return;
+                }
+                if (rejectIfReadOnly())
+                    return;
+                if (items.isEmpty()) {
+                    out.println("No edits to sync.");
+                    return;
+                }
+                if (items.size() > SYNC_MAX_ITEMS) {
+                    error("Error: SYNC takes at most " + SYNC_MAX_ITEMS + " edits per batch.");
+                    return;
+                }
+                StringWriter reply = new StringWriter();
+                ClientHandler item = new ClientHandler(null, new PrintWriter(reply, true));
+                StringBuilder sb = new StringBuilder();
+                lockStore();
+                try {
+                    for (int i = 0; i < items.size(); i++) {
+                        reply.getBuffer().setLength(0);
+                        sb.append(i + 1).append(' ').append(syncItem(item, items.get(i), reply)).append("\n");
+                    }
+                } finally {
+                    storeLock.unlock();
+                }
+                out.println(sb);
+            } catch (IOException e) {
+                error("Error: SYNC failed: " + e.getMessage());
+            }
+        }
+
+        // One SYNC item, run through `item` (whose output goes to `reply`). Caller holds storeLock.
+        private static String syncItem(ClientHandler item, String command, StringWriter reply) {
+            String[] parts = command.split(",");
+            String name = parts[0].trim();
+            boolean add = name.equals("ADD_LECTURE");
+            if (!add && !name.equals("REMOVE_LECTURE") && !name.equals("UNDO_REMOVE"))
+                return "ERROR: " + name + " cannot be synced.";
+            if (parts.length < 6)
+                return "ERROR: Invalid " + name + " format.";
+            String day = (add ? parts[2] : parts[1]).trim();
+            String time = (add ? parts[1] : parts[2]).trim();
+            String className = parts[3].trim(), module = parts[4].trim(), type = parts[5].trim();
+            Lecture current = timetable.get().get(day, time);
+            boolean same = matches(current, className, module, type);
+            switch (name) {
+                case "ADD_LECTURE":
+                    if (same)
+                        return "SKIPPED: already added.";
+                    if (current != null)
+                        return "CONFLICT: " + day + " " + time + " now holds " + describe(current) + ".";
+                    item.handleAddLecture(command);
+                    break;
+                case "REMOVE_LECTURE":
+                    if (current == null)
+                        return "SKIPPED: already removed.";
+                    if (!same)
+                        return "CONFLICT: " + day + " " + time + " now holds " + describe(current) + ".";
+                    item.handleRemoveLecture(name + "," + day + "," + time);
+                    break;
+                default: {
+                    if (same)
+                        return "SKIPPED: already restored.";
+                    // The undo slot may meanwhile hold a lecture someone else removed; restoring that one would
+                    // be a lost update.
+                    Lecture removed = removedLectures.get(day + "," + time);
+                    if (removed != null && !matches(removed, className, module, type))
+                        return "CONFLICT: the last lecture removed from " + day + " " + time + " is now "
+                                + describe(removed) + ".";
+                    item.handleUndoRemove(name + "," + day + "," + time);
+                    break;
+                }
+            }
+            String result = reply.toString().trim();
+            if (result.startsWith("Lecture added") || result.startsWith("Lecture removed")
+                    || result.startsWith("Undo successful"))
+                return "OK: " + result;
+            return (result.startsWith("Error") || result.startsWith("Invalid") ? "ERROR: " : "CONFLICT: ") + result;
+        }
+
+        private static boolean matches(Lecture l, String className, String module, String type) {
+            return l != null && l.getClassName().equals(className) && l.getModule().equals(module)
+                    && l.getLectureType().equals(type);
+        }
+
+        private static String describe(Lecture l) {
+            return l.getClassName() + " (" + l.getModule() + ", " + l.getLectureType() + ")";
+        }
+
+        // ---------- AS_OF ----------
+        // Read commands take an optional ",AS_OF,<target>" (see snapshotAsOf).
+        // Returns the snapshot to render, or null after reporting why there is none.
+        private TimetableSnapshot snapshotFor(String command) {
+            String[] parts = command.split(",");
+            if (parts.length == 1)
+                return timetable.get();
+            if (parts.length != 3 || !parts[1].trim().equals("AS_OF")) {
+                error("Error: expected " + parts[0] + ",AS_OF,<version or timestamp>.");
+                return null;
+            }
+            try {
+                return snapshotAsOf(parts[2].trim());
+            } catch (IllegalArgumentException e) {
+                error("Error: " + e.getMessage());
+                return null;
             }
         }
 
         // ---------- VIEW_TIMETABLE ----------
-        private synchronized void handleViewTimetable() {
+        void handleViewTimetable() {
+            renderTimetable(timetable.get());
+        }
+
+        void handleViewTimetable(String command) {
+            TimetableSnapshot snapshot = snapshotFor(command);
+            if (snapshot != null)
+                renderTimetable(snapshot);
+        }
+
+        private void renderTimetable(TimetableSnapshot snapshot) {
             StringBuilder sb = new StringBuilder();
             String[] headerDays = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
             sb.append(String.format("%-10s", ""));
@@ -308,8 +654,8 @@ public class TimetableServer extends Application {
                 sb.append(String.format("%-10s", time));
                 for (String day : headerDays) {
                     String cell = "---";
-                    if (timetable.containsKey(day) && timetable.get(day).containsKey(time)) {
-                        Lecture lec = timetable.get(day).get(time);
+                    Lecture lec = snapshot.get(day, time);
+                    if (lec != null) {
                         cell = lec.getClassName() + "(" + lec.getModule() + "," + lec.getLectureType() + ")";
                     }
                     sb.append(String.format("%-30s", cell));
@@ -320,7 +666,7 @@ public class TimetableServer extends Application {
         }
 
         // ---------- VIEW_HISTORY ----------
-        private synchronized void handleViewHistory() {
+        synchronized void handleViewHistory() {
             StringBuilder sb = new StringBuilder();
             if (historyLog.isEmpty()) {
                 sb.append("No history available.");
@@ -335,21 +681,33 @@ public class TimetableServer extends Application {
         }
 
         // ---------- EARLY_LECTURES ----------
-        private void handleEarlyLectures() {
+        void handleEarlyLectures() {
+            if (rejectIfReadOnly())
+                return;
             String result = shiftEarlyLectures();
             out.println("Early lectures processed:\n" + result);
         }
 
         // ---------- GET_LECTURES ----------
-        private void handleGetLectures() {
+        void handleGetLectures() {
+            listLectures(timetable.get());
+        }
+
+        void handleGetLectures(String command) {
+            TimetableSnapshot snapshot = snapshotFor(command);
+            if (snapshot != null)
+                listLectures(snapshot);
+        }
+
+        private void listLectures(TimetableSnapshot snapshot) {
             StringBuilder sb = new StringBuilder();
-            if (timetable.isEmpty()) {
+            if (snapshot.isEmpty()) {
                 sb.append("No lectures available.");
             } else {
-                List<String> sortedDays = new ArrayList<>(timetable.keySet());
+                List<String> sortedDays = new ArrayList<>(snapshot.days());
                 Collections.sort(sortedDays);
                 for (String day : sortedDays) {
-                    ConcurrentHashMap<String, Lecture> daySchedule = timetable.get(day);
+                    Map<String, Lecture> daySchedule = snapshot.day(day);
                     List<String> sortedTimes = new ArrayList<>(daySchedule.keySet());
                     sortedTimes.sort((t1, t2) -> {
                         try {
@@ -362,25 +720,315 @@ public class TimetableServer extends Application {
                         }
                     });
                     for (String time : sortedTimes) {
-                        Lecture lec = daySchedule.get(time);
-                        sb.append(day).append(",").append(time).append(": ")
-                                .append(lec.getClassName()).append(" (")
-                                .append(lec.getModule()).append(", ")
-                                .append(lec.getLectureType()).append(")")
-                                .append("\n");
+                        sb.append(listingLine(day, time, daySchedule.get(time))).append("\n");
+                    }
+                }
+            }
+            out.println(sb.toString());
+        }
+
+        // ---------- CHANGES ----------
+        // CHANGES,<version>: catches up a client holding the GET_LECTURES listing as of <version> (taken from an
+        // earlier CHANGES reply). The first line is "VERSION <v>"; each further line is a slot that differs between
+        // the two versions, in GET_LECTURES' format, or "day,time: -" for a slot that is now empty. When <version>
+        // cannot be replayed here (-1 for a client with nothing yet, history no longer retained, another server's
+        // version) the first line is "VERSION <v> FULL" and the whole listing follows. Ends with a blank line.
+        void handleChanges(String command) {
+            long since;
+            try {
+                since = Long.parseLong(command.substring("CHANGES,".length()).trim());
+            } catch (NumberFormatException e) {
+                error("Error: expected CHANGES,<version>.");
+                return;
+            }
+            TimetableSnapshot current = timetable.get();
+            TimetableSnapshot before = since >= 0 && since <= current.version() && since <= history.latestVersion()
+                    ? history.asOfVersion(since) : null;
+            StringBuilder sb = new StringBuilder("VERSION ").append(current.version());
+            if (before == null) {
+                sb.append(" FULL");
+                before = TimetableSnapshot.EMPTY;
+            }
+            sb.append("\n");
+            Set<String> days = new TreeSet<>(current.days());
+            days.addAll(before.days());
+            for (String day : days) {
+                Map<String, Lecture> oldSlots = before.day(day);
+                Map<String, Lecture> newSlots = current.day(day);
+                if (oldSlots == newSlots)
+                    continue;
+                Set<String> times = new TreeSet<>(oldSlots.keySet());
+                times.addAll(newSlots.keySet());
+                for (String time : times) {
+                    Lecture old = oldSlots.get(time);
+                    Lecture lec = newSlots.get(time);
+                    if (lec == null) {
+                        if (old != null)
+                            sb.append(day).append(",").append(time).append(": -\n");
+                    } else {
+                        String line = listingLine(day, time, lec);
+                        if (old == null || !line.equals(listingLine(day, time, old)))
+                            sb.append(line).append("\n");
                     }
                 }
             }
             out.println(sb.toString());
         }
 
+        // ---------- QUERY ----------
+        // QUERY,<expression> (see LectureQuery); plain QUERY lists everything. Matches are written as the plan finds
+        // them, in GET_LECTURES' line format, and the block ends with a blank line.
+        void handleQuery(String command) {
+            LectureQuery query;
+            try {
+                query = LectureQuery.compile(command.length() > "QUERY".length() ? command.substring("QUERY,".length()) : "");
+            } catch (IllegalArgumentException e) {
+                error("Error: invalid QUERY: " + e.getMessage());
+                return;
+            }
+            StringBuilder line = new StringBuilder();
+            int matched = query.run(timetable.get(), lec -> {
+                line.setLength(0);
+                line.append(lec.getDay()).append(",").append(lec.getTime()).append(": ")
+                        .append(lec.getClassName()).append(" (")
+                        .append(lec.getModule()).append(", ")
+                        .append(lec.getLectureType()).append(")")
+                        .append(resourceSuffix(lec)).append("\n");
+                out.print(line);
+            });
+            if (matched == 0)
+                out.println("No lectures match the query.");
+            else
+                out.println();
+        }
+
+        // ---------- HOLD_RESOURCE / RELEASE_RESOURCE / RESOURCE ----------
+        // HOLD_RESOURCE,ROOM|LECTURER,name,day,time,holder reserves a room or lecturer at a slot for another
+        // timetable (e.g. another cohort's), so no lecture here can be booked into it. RELEASE_RESOURCE,kind,name,
+        // day,time frees it again.
+        void handleHoldResource(String command) {
+            if (rejectIfReadOnly())
+                return;
+            String[] parts = command.split(",");
+            if (parts.length < 6 || parts[2].isBlank() || parts[5].isBlank()) {
+                error("Invalid HOLD_RESOURCE command format.");
+                return;
+            }
+            lockStore();
+            try {
+                ResourceIndex.Kind kind = ResourceIndex.Kind.parse(parts[1]);
+                String name = parts[2].trim(), day = parts[3].trim(), time = parts[4].trim(), holder = parts[5].trim();
+                String clash = resources.holdClash(kind, name, day, time, holder);
+                if (clash != null) {
+                    out.println("Clash: " + clash + ".");
+                    return;
+                }
+                commit("HOLD", kind.name(), name, day, time, holder);
+                recordHistory(String.format("Resource held: %s %s | %s | %s for %s : %s",
+                        kind.label(), name, day, time, holder, new java.util.Date()));
+                out.println("Resource held.");
+            } catch (IllegalArgumentException e) {
+                error("Error: " + e.getMessage());
+            } finally {
+                storeLock.unlock();
+            }
+        }
+
+        void handleReleaseResource(String command) {
+            if (rejectIfReadOnly())
+                return;
+            String[] parts = command.split(",");
+            if (parts.length < 5) {
+                error("Invalid RELEASE_RESOURCE command format.");
+                return;
+            }
+            lockStore();
+            try {
+                ResourceIndex.Kind kind = ResourceIndex.Kind.parse(parts[1]);
+                String name = parts[2].trim(), day = parts[3].trim(), time = parts[4].trim();
+                String holder = resources.holder(kind, name, day, time);
+                if (holder == null) {
+                    out.println("No hold on " + kind.label() + " " + name + " on " + day + " " + time + ".");
+                    return;
+                }
+                commit("UNHOLD", kind.name(), name, day, time);
+                recordHistory(String.format("Resource released: %s %s | %s | %s for %s : %s",
+                        kind.label(), name, day, time, holder, new java.util.Date()));
+                out.println("Resource released.");
+            } catch (IllegalArgumentException e) {
+                error("Error: " + e.getMessage());
+            } finally {
+                storeLock.unlock();
+            }
+        }
+
+        // HOLDS,day: the day's holds as "ROOM|LECTURER,name,day,time,holder" lines (the HOLD_RESOURCE fields),
+        // ending with an empty line. The router uses it to move a day's holds along with its lectures.
+        void handleHolds(String command) {
+            String[] parts = command.split(",");
+            if (parts.length < 2 || parts[1].isBlank()) {
+                error("Invalid HOLDS command format.");
+                return;
+            }
+            String day = parts[1].trim();
+            StringBuilder sb = new StringBuilder();
+            for (String[] hold : resources.holds()) {
+                if (hold[2].equals(day))
+                    sb.append(String.join(",", hold)).append("\n");
+            }
+            out.println(sb.length() == 0 ? "No holds on " + day + "." : sb.toString());
+        }
+
+        // RESOURCE,ROOM|LECTURER,name: where the resource is in use, by day then slot. Lectures of this timetable
+        // are listed like GET_LECTURES, holds as "day,time: held for <holder>". Read from the index, no scan.
+        void handleResource(String command) {
+            String[] parts = command.split(",");
+            ResourceIndex.Kind kind;
+            try {
+                if (parts.length < 3 || parts[2].isBlank())
+                    throw new IllegalArgumentException("expected RESOURCE,ROOM|LECTURER,name.");
+                kind = ResourceIndex.Kind.parse(parts[1]);
+            } catch (IllegalArgumentException e) {
+                error("Error: " + e.getMessage());
+                return;
+            }
+            String name = parts[2].trim();
+            TimetableSnapshot snapshot = timetable.get();
+            Map<String, String> uses = resources.uses(kind, name);
+            if (uses.isEmpty()) {
+                out.println("No bookings for " + kind.label() + " " + name + ".");
+                return;
+            }
+            List<String> slots = new ArrayList<>(uses.keySet());
+            Comparator<String> byDay = LectureQuery.Field.DAY.order, bySlot = LectureQuery.Field.SLOT.order;
+            slots.sort((a, b) -> {
+                String[] x = a.split(",", 2), y = b.split(",", 2);
+                int c = byDay.compare(x[0], y[0]);
+                return c != 0 ? c : bySlot.compare(x[1], y[1]);
+            });
+            StringBuilder sb = new StringBuilder();
+            for (String slot : slots) {
+                String[] at = slot.split(",", 2);
+                Lecture lec = snapshot.get(at[0], at[1]);
+                sb.append(slot).append(": ");
+                if (!uses.get(slot).isEmpty() || lec == null)
+                    sb.append("held for ").append(uses.get(slot));
+                else
+                    sb.append(lec.getClassName()).append(" (").append(lec.getModule()).append(", ")
+                            .append(lec.getLectureType()).append(")").append(resourceSuffix(lec));
+                sb.append("\n");
+            }
+            out.println(sb);
+        }
+
+        // ---------- SET_RECURRENCE / CLEAR_RECURRENCE ----------
+        // SET_RECURRENCE,day,time,WEEKLY|FORTNIGHTLY,start,end[,exception date...] with ISO dates; "*" leaves a
+        // weekly rule open-ended. CLEAR_RECURRENCE,day,time puts the lecture back to every week.
+        void handleSetRecurrence(String command) {
+            String[] parts = command.split(",");
+            if (parts.length < 6) {
+                error("Invalid SET_RECURRENCE command format.");
+                return;
+            }
+            Recurrence rule;
+            try {
+                rule = Recurrence.parse(parts[3].trim(), parts[4].trim(), parts[5].trim(),
+                        Arrays.copyOfRange(parts, 6, parts.length));
+            } catch (IllegalArgumentException e) {
+                error("Invalid recurrence: " + e.getMessage());
+                return;
+            }
+            setRecurrence(parts[1].trim(), parts[2].trim(), rule, "Recurrence set.");
+        }
+
+        void handleClearRecurrence(String command) {
+            String[] parts = command.split(",");
+            if (parts.length < 3) {
+                error("Invalid CLEAR_RECURRENCE command format.");
+                return;
+            }
+            setRecurrence(parts[1].trim(), parts[2].trim(), Recurrence.WEEKLY, "Recurrence cleared.");
+        }
+
+        private void setRecurrence(String day, String time, Recurrence rule, String reply) {
+            if (rejectIfReadOnly())
+                return;
+            lockStore();
+            try {
+                Lecture lecture = timetable.get().get(day, time);
+                if (lecture == null) {
+                    out.println("No lecture scheduled in this time slot.");
+                    return;
+                }
+                commit("RULE", day, time, rule.encode());
+                recordHistory(String.format("Recurrence set: %s | %s | %s | %s | %s : %s",
+                        day, time, lecture.getClassName(), lecture.getModule(), rule.encode(), new java.util.Date()));
+                out.println(reply);
+            } catch (Exception e) {
+                error("Error while setting recurrence.");
+            } finally {
+                storeLock.unlock();
+            }
+        }
+
+        // ---------- OCCURRENCES ----------
+        // OCCURRENCES,from,to (ISO dates, inclusive): every dated lecture in the range as
+        // "date,day,time: class (module, type)", ordered by date then slot, ending with an empty line.
+        // Occurrences are expanded lazily from one snapshot and written as they are produced (PrintWriter only
+        // flushes on println; on a compressed connection FrameOutputStream still cuts a frame every 64 KB), so
+        // memory stays flat however long the range is. Ranges over OCCURRENCES_MAX_DAYS are refused.
+        void handleOccurrences(String command) {
+            String[] parts = command.split(",");
+            java.time.LocalDate from, to;
+            try {
+                from = java.time.LocalDate.parse(parts[1].trim());
+                to = java.time.LocalDate.parse(parts[2].trim());
+            } catch (Exception e) {
+                error("Error: invalid OCCURRENCES command format.");
+                return;
+            }
+            if (to.isBefore(from)) {
+                error("Error: invalid OCCURRENCES range, end is before start.");
+                return;
+            }
+            if (java.time.temporal.ChronoUnit.DAYS.between(from, to) >= OCCURRENCES_MAX_DAYS) {
+                error("Error: OCCURRENCES range is longer than " + OCCURRENCES_MAX_DAYS + " days.");
+                return;
+            }
+            OccurrenceIterator occurrences = new OccurrenceIterator(timetable.get(), from, to);
+            if (!occurrences.hasNext()) {
+                out.println("No occurrences in this range.");
+                return;
+            }
+            StringBuilder line = new StringBuilder();
+            while (occurrences.hasNext()) {
+                OccurrenceIterator.Occurrence o = occurrences.next();
+                Lecture lec = o.lecture();
+                line.setLength(0);
+                line.append(o.date()).append(",").append(lec.getDay()).append(",").append(lec.getTime()).append(": ")
+                        .append(lec.getClassName()).append(" (")
+                        .append(lec.getModule()).append(", ")
+                        .append(lec.getLectureType()).append(")\n");
+                out.print(line);
+            }
+            out.println();
+        }
+
         // ---------- IMPORT_CSV ----------
         // Follows protocol: after "IMPORT_CSV", expect "BEGIN_CSV" then CSV lines then "END_CSV".
-        private void handleImportCSV() {
+        // "IMPORT_CSV,MERGE" takes the same block but only applies the slots that differ (see mergeCSV).
+        void handleImportCSV() {
+            handleImportCSV(false);
+        }
+
+        void handleImportCSV(boolean merge) {
             try {
+                // A client that stops sending mid-block is closed after the read timeout, not the idle one.
+                if (session != null)
+                    session.receiving();
                 String marker = in.readLine();
                 if (marker == null || !marker.equals("BEGIN_CSV")) {
-                    out.println("IMPORT_CSV error: Expected BEGIN_CSV marker.");
+                    error("IMPORT_CSV error: Expected BEGIN_CSV marker.");
                     return;
                 }
                 StringBuilder csvData = new StringBuilder();
@@ -390,19 +1038,146 @@ public class TimetableServer extends Application {
                         break;
                     csvData.append(line).append("\n");
                 }
+                if (session != null)
+                    session.executing();
+                // The CSV block is consumed first so a rejected import leaves the stream in sync.
+                if (rejectIfReadOnly())
+                    return;
+                if (merge) {
+                    int[] counts = mergeCSV(csvData.toString());
+                    out.println(String.format("Timetable imported (merged): %d inserted, %d updated, %d removed.",
+                            counts[0], counts[1], counts[2]));
+                    return;
+                }
                 // Parse CSV and replace the timetable.
                 parseCSVAndReplaceTimetable(csvData.toString());
-                historyLog.add(String.format("Timetable imported via CSV (replaced current timetable): %s", new java.util.Date()));
+                recordHistory(String.format("Timetable imported via CSV (replaced current timetable): %s", new java.util.Date()));
                 out.println("Timetable imported successfully.");
             } catch (Exception ex) {
-                out.println("IMPORT_CSV failed: " + ex.getMessage());
+                error("IMPORT_CSV failed: " + ex.getMessage());
+            }
+        }
+
+        // ---------- EXPORT_ICS ----------
+        // EXPORT_ICS[,yyyy-mm-dd]: the timetable as an iCalendar (see IcsCalendar), written event by event and
+        // ending with an empty line. Lectures without a start date begin in the week of the given date (default:
+        // this week).
+        void handleExportIcs(String command) {
+            java.time.LocalDate anchor;
+            try {
+                String[] parts = command.split(",");
+                anchor = parts.length > 1 ? java.time.LocalDate.parse(parts[1].trim()) : java.time.LocalDate.now();
+            } catch (Exception e) {
+                error("Error: invalid EXPORT_ICS command format.");
+                return;
+            }
+            try {
+                IcsCalendar.write(timetable.get(), anchor, out);
+            } catch (IOException e) {
+                // PrintWriter does not throw.
+            }
+            out.println();
+        }
+
+        // ---------- IMPORT_ICS ----------
+        // "IMPORT_ICS" is followed directly by a calendar, BEGIN:VCALENDAR to END:VCALENDAR. The dispatcher has
+        // read it in full (readBlock); it is parsed one event at a time and merged like IMPORT_CSV,MERGE: each event's slot is inserted or
+        // updated, including its recurrence; slots without an event are left alone. All or nothing: one bad event
+        // rejects the calendar.
+        void handleImportIcs() {
+            Map<String, Map<String, Lecture>> incoming = new HashMap<>();
+            List<String[]> slots = new ArrayList<>();
+            try {
+                if (session != null)
+                    session.receiving();
+                IcsCalendar.read(in, lecture -> {
+                    if (incoming.computeIfAbsent(lecture.getDay(), d -> new HashMap<>())
+                            .putIfAbsent(lecture.getTime(), lecture) != null)
+                        throw new IllegalArgumentException("another event already uses " + lecture.getDay() + " "
+                                + lecture.getTime() + ".");
+                    slots.add(new String[]{lecture.getDay(), lecture.getTime()});
+                });
+                if (session != null)
+                    session.executing();
+                if (rejectIfReadOnly())
+                    return;
+                int[] counts = mergeTimetable(incoming, slots, true, "ICS import");
+                out.println(String.format("Calendar imported (merged): %d inserted, %d updated, %d removed.",
+                        counts[0], counts[1], counts[2]));
+            } catch (Exception ex) {
+                error("IMPORT_ICS failed: " + ex.getMessage());
+            }
+        }
+
+        // ---------- STATS ----------
+        void handleStats() {
+            out.println(metrics.report());
+        }
+
+        // ---------- STATS_HOURS ----------
+        void handleStatsHours() {
+            out.println(aggregates.report());
+        }
+
+        // ---------- VERSION ----------
+        // Version token of the newest mutation applied here; pass it to MIN_VERSION on a replica.
+        void handleVersion() {
+            out.println("VERSION " + replicationLog.version());
+        }
+
+        // ---------- MIN_VERSION ----------
+        // Read-your-writes: waits (up to 5s) until this server has applied the given version.
+        void handleMinVersion(String command) {
+            try {
+                long wanted = Long.parseLong(command.split(",")[1].trim());
+                if (replicationLog.awaitVersion(wanted, 5000))
+                    out.println("OK " + replicationLog.version());
+                else
+                    error("STALE " + replicationLog.version());
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                error("Invalid MIN_VERSION command format.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error("STALE " + replicationLog.version());
+            }
+        }
+
+        // ---------- PROMOTE ----------
+        // Failover: a replica stops following its primary and starts accepting writes. Loopback only, unless
+        // PROMOTE_REMOTE.
+        void handlePromote() {
+            if (!PROMOTE_REMOTE && (clientSocket == null || !clientSocket.getInetAddress().isLoopbackAddress())) {
+                error("Error: PROMOTE is only accepted from the server's own host.");
+                return;
+            }
+            if (!readOnly) {
+                out.println("Already primary.");
+                return;
+            }
+            if (follower != null)
+                follower.stop();
+            readOnly = false;
+            AsyncLog.warn("Promoted to primary at version " + replicationLog.version());
+            out.println("Promoted to primary at version " + replicationLog.version() + ".");
+        }
+
+        // ---------- COMPRESS ----------
+        // Capability handshake. The reply is the last plain line; everything after it is framed in both
+        // directions. The client sends nothing until it has the reply, so `in` holds no read-ahead to lose.
+        void handleCompress(String command) {
+            if (wireIn == null || !StreamCompression.accepts(command)) {
+                out.println(StreamCompression.DECLINE);
+                return;
             }
+            out.println(StreamCompression.ACCEPT);
+            in = new BufferedReader(new InputStreamReader(new StreamCompression.FrameInputStream(wireIn)));
+            out = new PrintWriter(new StreamCompression.FrameOutputStream(wireOut), true);
         }
 
         // ---------- STOP_CONNECTION ----------
         private void handleStopConnection() {
             out.println("Connection Stopped");
-            System.out.println("Connection stopped.");
+            AsyncLog.info("Connection stopped.");
         }
 
         private void closeClientConnection() {
@@ -410,20 +1185,66 @@ public class TimetableServer extends Application {
                 if (clientSocket != null)
                     clientSocket.close();
             } catch (IOException e) {
-                e.printStackTrace();
+                AsyncLog.error("Unable to close client socket", e);
             }
         }
     }
 
+    //---------------------- HISTORICAL SNAPSHOTS ----------------------
+    // The timetable at `target`: a log version (as reported by VERSION), or a time as an ISO instant
+    // (2026-10-13T14:00:00Z) or local date-time (2026-10-13T14:00) in the server's zone.
+    // Throws IllegalArgumentException, with a message for the client, if there is no such snapshot.
+    static TimetableSnapshot snapshotAsOf(String target) {
+        TimetableSnapshot snapshot;
+        if (!target.isEmpty() && target.chars().allMatch(Character::isDigit)) {
+            long version = Long.parseLong(target);
+            if (version > replicationLog.version())
+                throw new IllegalArgumentException("version " + version + " does not exist yet.");
+            snapshot = history.asOfVersion(version);
+        } else {
+            try {
+                snapshot = history.asOfTime(parseInstant(target));
+            } catch (java.time.format.DateTimeParseException e) {
+                throw new IllegalArgumentException("invalid AS_OF timestamp " + target + ".");
+            }
+        }
+        if (snapshot == null)
+            throw new IllegalArgumentException("history before version " + history.oldestVersion() + " is no longer retained.");
+        return snapshot;
+    }
+
+    private static long parseInstant(String text) {
+        try {
+            return java.time.OffsetDateTime.parse(text).toInstant().toEpochMilli();
+        } catch (java.time.format.DateTimeParseException e) {
+            return java.time.LocalDateTime.parse(text).atZone(java.time.ZoneId.systemDefault())
+                    .toInstant().toEpochMilli();
+        }
+    }
+
     //---------------------- EARLY_LECTURES SHIFTING ----------------------
-    private static synchronized String shiftEarlyLectures() {
+    static String shiftEarlyLectures() {
+        lockStore();
+        try {
+            return shiftEarlyLecturesLocked();
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    // Each day's moves are worked out in parallel against one snapshot, then committed as a single MOVES
+    // record, so readers see either the whole shift or none of it.
+    private static String shiftEarlyLecturesLocked() {
         String[] earlySlots = {"9-10", "10-11", "11-12", "12-1"};
         ExecutorService executor = Executors.newFixedThreadPool(5);
-        List<Future<String>> futures = new ArrayList<>();
+        TimetableSnapshot snapshot = timetable.get();
+        List<String> days = new ArrayList<>(snapshot.days());
+        List<Future<List<String[]>>> futures = new ArrayList<>();
 
-        for (String day : timetable.keySet()) {
-            Callable<String> task = () -> {
-                ConcurrentHashMap<String, Lecture> daySchedule = timetable.get(day);
+        for (String day : days) {
+            Callable<List<String[]>> task = () -> {
+                Map<String, Lecture> daySchedule = new HashMap<>(snapshot.day(day));
+                List<String[]> moves = new ArrayList<>();
                 for (String earlySlot : earlySlots) {
                     if (!daySchedule.containsKey(earlySlot)) {
                         String candidate = null;
@@ -435,37 +1256,46 @@ public class TimetableServer extends Application {
                                     break;
                                 }
                             }
-                            if (!isEarly) {
+                            // A lecture whose room or lecturer is held at the early slot stays where it is.
+                            if (!isEarly && resources.clash(daySchedule.get(timeKey), day, earlySlot) == null) {
                                 if (candidate == null || compareTime(timeKey, candidate) < 0)
                                     candidate = timeKey;
                             }
                         }
                         if (candidate != null) {
-                            Lecture lecture = daySchedule.remove(candidate);
-                            Lecture shiftedLecture = new Lecture(earlySlot, lecture.getDay(),
-                                    lecture.getClassName(), lecture.getModule(), lecture.getLectureType());
-                            daySchedule.put(earlySlot, shiftedLecture);
-                            synchronized (historyLog) {
-                                historyLog.add(String.format("Lecture early shift: %s moved from %s to %s on %s : %s",
-                                        lecture.getModule(), candidate, earlySlot, day, new java.util.Date()));
-                            }
+                            daySchedule.put(earlySlot, daySchedule.remove(candidate));
+                            moves.add(new String[]{day, candidate, earlySlot});
                         }
                     }
                 }
-                return "Day " + day + " processed.";
+                return moves;
             };
             futures.add(executor.submit(task));
         }
 
         StringBuilder summary = new StringBuilder();
-        for (Future<String> f : futures) {
+        List<String[]> moves = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
             try {
-                summary.append(f.get()).append("\n");
+                moves.addAll(futures.get(i).get());
+                summary.append("Day ").append(days.get(i)).append(" processed.\n");
             } catch (Exception e) {
                 summary.append("Error shifting lectures.\n");
             }
         }
         executor.shutdown();
+
+        if (!moves.isEmpty()) {
+            List<String> fields = new ArrayList<>();
+            for (String[] move : moves)
+                fields.addAll(List.of(move));
+            // Same days and lectures, so the aggregates are unchanged.
+            commit("MOVES", fields.toArray(new String[0]));
+            for (String[] move : moves) {
+                recordHistory(String.format("Lecture early shift: %s moved from %s to %s on %s : %s",
+                        snapshot.get(move[0], move[1]).getModule(), move[1], move[2], move[0], new java.util.Date()));
+            }
+        }
         return summary.toString();
     }
 
@@ -484,7 +1314,114 @@ public class TimetableServer extends Application {
     // Expects CSV text with header:
     // Time,Monday,Tuesday,Wednesday,Thursday,Friday
     // and each row contains exactly 6 fields. Uses a custom parser to handle quoted fields.
-    private static synchronized void parseCSVAndReplaceTimetable(String csvText) throws Exception {
+    static void parseCSVAndReplaceTimetable(String csvText) throws Exception {
+        lockStore();
+        try {
+            Map<String, Map<String, Lecture>> newTimetable = parseCSV(csvText);
+            checkResources(newTimetable);
+            // Replicas re-parse the same text; locally the already validated map is installed.
+            synchronized (replicationLog) {
+                installTimetable(newTimetable, replicationLog.append("REPLACE", csvText).version());
+            }
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    // MERGE import: for every row (time) present in the CSV, each day's slot is compared with the store. Rows the
+    // CSV leaves out are not touched, and a slot whose class, module and type are unchanged keeps its lecture
+    // (and recurrence rule, which CSV cannot express). Returns {inserted, updated, removed}.
+    static int[] mergeCSV(String csvText) throws Exception {
+        Set<String> rows = new LinkedHashSet<>();
+        Map<String, Map<String, Lecture>> incoming = parseCSV(csvText, rows);
+        List<String[]> slots = new ArrayList<>();
+        for (String day : CSV_DAYS) {
+            for (String time : rows)
+                slots.add(new String[]{day, time});
+        }
+        return mergeTimetable(incoming, slots, false, "CSV merge");
+    }
+
+    // Brings the given slots in line with `incoming` (a slot missing there is cleared). Only the differences are
+    // applied, as one PATCH record: one new snapshot, aggregate updates and history events for the changed slots
+    // only. With compareRules, a lecture whose recurrence differs also counts as updated.
+    static int[] mergeTimetable(Map<String, Map<String, Lecture>> incoming, List<String[]> slots,
+                                boolean compareRules, String source) {
+        int[] counts = new int[3];
+        lockStore();
+        try {
+            checkResources(incoming);
+            TimetableSnapshot current = timetable.get();
+            List<String> fields = new ArrayList<>();
+            List<String> entries = new ArrayList<>();
+            for (String[] slot : slots) {
+                String day = slot[0], time = slot[1];
+                Lecture before = current.get(day, time);
+                Lecture after = incoming.getOrDefault(day, Map.of()).get(time);
+                if (after == null ? before == null : before != null && sameLecture(before, after, compareRules))
+                    continue;
+                String action;
+                if (after == null) {
+                    fields.addAll(List.of(day, time, "", "", "", "", "", ""));
+                    action = "removed";
+                    counts[2]++;
+                } else {
+                    String rule = after.getRecurrence() == Recurrence.WEEKLY ? "" : after.getRecurrence().encode();
+                    fields.addAll(List.of(day, time, after.getClassName(), after.getModule(), after.getLectureType(), rule,
+                            after.getRoom(), after.getLecturer()));
+                    action = before == null ? "inserted" : "updated";
+                    counts[before == null ? 0 : 1]++;
+                }
+                Lecture shown = after != null ? after : before;
+                entries.add(String.format("Lecture %s via %s: %s | %s | %s | %s | %s : %s", action, source,
+                        day, time, shown.getClassName(), shown.getModule(), shown.getLectureType(), new java.util.Date()));
+            }
+            if (!fields.isEmpty()) {
+                commit("PATCH", fields.toArray(new String[0]));
+                for (String entry : entries)
+                    recordHistory(entry);
+            }
+        } finally {
+            storeLock.unlock();
+        }
+        return counts;
+    }
+
+    private static boolean sameLecture(Lecture a, Lecture b, boolean compareRules) {
+        return a.getClassName().equals(b.getClassName()) && a.getModule().equals(b.getModule())
+                && a.getLectureType().equals(b.getLectureType())
+                && a.getRoom().equals(b.getRoom()) && a.getLecturer().equals(b.getLecturer())
+                && (!compareRules || a.getRecurrence().encode().equals(b.getRecurrence().encode()));
+    }
+
+    // Imports are checked against the holds before anything is committed: one clash rejects the whole import.
+    private static void checkResources(Map<String, Map<String, Lecture>> incoming) {
+        for (Map<String, Lecture> daySchedule : incoming.values()) {
+            for (Lecture lecture : daySchedule.values()) {
+                String clash = resources.clash(lecture, lecture.getDay(), lecture.getTime());
+                if (clash != null)
+                    throw new IllegalArgumentException("Clash: " + clash + ".");
+            }
+        }
+    }
+
+    private static void installTimetable(Map<String, ? extends Map<String, Lecture>> newTimetable, long version) {
+        TimetableSnapshot snapshot = TimetableSnapshot.of(newTimetable, version);
+        timetable.set(snapshot);
+        aggregates.rebuild(snapshot.asMap());
+        resources.rebuild(snapshot.asMap());
+        history.checkpoint(snapshot, version);
+    }
+
+    private static final String[] CSV_DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
+
+    // Validates the CSV and builds the timetable it describes, without touching the current one.
+    static Map<String, Map<String, Lecture>> parseCSV(String csvText) throws Exception {
+        return parseCSV(csvText, new HashSet<>());
+    }
+
+    // As above; also collects the time slots that have a row in the CSV.
+    static Map<String, Map<String, Lecture>> parseCSV(String csvText, Set<String> rows) throws Exception {
         String[] lines = csvText.split("\n");
         if (lines.length < 2)
             throw new Exception("CSV does not contain header and at least one data row.");
@@ -495,7 +1432,7 @@ public class TimetableServer extends Application {
             throw new Exception("CSV header is incorrect. Expected: Time,Monday,Tuesday,Wednesday,Thursday,Friday");
 
         String[] allowedTimes = {"9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5"};
-        ConcurrentHashMap<String, ConcurrentHashMap<String, Lecture>> newTimetable = new ConcurrentHashMap<>();
+        Map<String, Map<String, Lecture>> newTimetable = new HashMap<>();
 
         // Process each data row.
         for (int i = 1; i < lines.length; i++) {
@@ -515,16 +1452,10 @@ public class TimetableServer extends Application {
             }
             if (!validTime)
                 throw new Exception("Invalid time slot on row " + (i+1) + ": " + time);
+            rows.add(time);
 
             for (int d = 0; d < 5; d++) {
-                String day = "";
-                switch(d) {
-                    case 0: day = "Monday"; break;
-                    case 1: day = "Tuesday"; break;
-                    case 2: day = "Wednesday"; break;
-                    case 3: day = "Thursday"; break;
-                    case 4: day = "Friday"; break;
-                }
+                String day = CSV_DAYS[d];
                 String cell = cols[d+1].trim();
                 // Remove surrounding quotes if any.
                 if ((cell.startsWith("\"") && cell.endsWith("\"")) || (cell.startsWith("'") && cell.endsWith("'"))) {
@@ -532,31 +1463,32 @@ public class TimetableServer extends Application {
                 }
                 if (cell.equals("---") || cell.isEmpty())
                     continue;
-                // Expected format: LectureName(Module,LectureType)
+                // Expected format: LectureName(Module,LectureType[,Room[,Lecturer]])
                 int idxOpen = cell.indexOf("(");
                 int idxClose = cell.lastIndexOf(")");
                 if (idxOpen < 0 || idxClose < 0 || idxClose < idxOpen)
                     throw new Exception("Invalid lecture format in row " + (i+1) + " for " + day + ": " + cell);
                 String lectureName = cell.substring(0, idxOpen).trim();
                 String inside = cell.substring(idxOpen + 1, idxClose).trim();
-                String[] parts = inside.split(",", 2);
+                String[] parts = inside.split(",", 4);
                 if (parts.length < 2)
                     throw new Exception("Invalid lecture details in row " + (i+1) + " for " + day + ": " + cell);
                 String module = parts[0].trim();
                 String lectureType = parts[1].trim();
-                newTimetable.putIfAbsent(day, new ConcurrentHashMap<>());
+                newTimetable.putIfAbsent(day, new HashMap<>());
                 if (newTimetable.get(day).containsKey(time))
                     throw new Exception("Duplicate lecture for " + day + " at " + time);
-                Lecture lec = new Lecture(time, day, lectureName, module, lectureType);
+                Lecture lec = new Lecture(time, day, lectureName, module, lectureType)
+                        .withResources(parts.length > 2 ? parts[2] : "", parts.length > 3 ? parts[3] : "");
                 newTimetable.get(day).put(time, lec);
             }
         }
-        timetable = newTimetable;
+        return newTimetable;
     }
 
     //---------------------- Helper: Parse CSV Line ----------------------
     // Splits a CSV line into exactly expectedFields fields, respecting quotes.
-    private static String[] parseCSVLine(String line, int expectedFields) throws Exception {
+    static String[] parseCSVLine(String line, int expectedFields) throws Exception {
         List<String> fields = new ArrayList<>();
         StringBuilder sb = new StringBuilder();
         boolean inQuotes = false;
@@ -577,26 +1509,286 @@ public class TimetableServer extends Application {
         return fields.toArray(new String[0]);
     }
 
+    //---------------------- STATE MUTATION & REPLICATION ----------------------
+    static void lockStore() {
+        long waitStart = System.nanoTime();
+        storeLock.lock();
+        metrics.recordLockWait(System.nanoTime() - waitStart);
+    }
+
+    // Logs a mutation and applies it. Callers hold storeLock.
+    static void commit(String type, String... fields) {
+        synchronized (replicationLog) {
+            applyRecord(replicationLog.append(type, fields));
+        }
+    }
+
+    static void recordHistory(String entry) {
+        commit("HIST", entry);
+    }
+
+    // The only place committed records change state; shared by the primary and by replicas.
+    // Timetable changes publish a new snapshot stamped with the record's version.
+    static void applyRecord(ReplicationLog.Record record) {
+        String[] f = record.fields();
+        long version = record.version();
+        TimetableSnapshot current = timetable.get();
+        switch (record.type()) {
+            case "PUT": {          // day, time, class, module, type[, recurrence[, room, lecturer]]
+                Lecture lecture = withRule(new Lecture(f[1], f[0], f[2], f[3], f[4]), f, 5);
+                timetable.set(current.with(lecture, version));
+                aggregates.lectureAdded(lecture);
+                resources.lectureAdded(lecture);
+                break;
+            }
+            case "DEL": {          // day, time
+                Lecture lecture = current.get(f[0], f[1]);
+                timetable.set(current.without(f[0], f[1], version));
+                removedLectures.put(f[0] + "," + f[1], lecture);
+                aggregates.lectureRemoved(lecture);
+                resources.lectureRemoved(lecture);
+                break;
+            }
+            case "RESTORE": {      // day, time
+                Lecture lecture = removedLectures.remove(f[0] + "," + f[1]);
+                timetable.set(current.with(lecture, version));
+                aggregates.lectureAdded(lecture);
+                resources.lectureAdded(lecture);
+                break;
+            }
+            case "MOVES": {        // day, from, to, day, from, to, ...
+                List<String[]> moves = new ArrayList<>();
+                for (int i = 0; i + 2 < f.length; i += 3) {
+                    moves.add(new String[]{f[i], f[i + 1], f[i + 2]});
+                    Lecture lecture = current.get(f[i], f[i + 1]);
+                    resources.lectureRemoved(lecture);
+                    resources.lectureAdded(lecture.withTime(f[i + 2]));
+                }
+                timetable.set(current.moved(moves, version));
+                break;
+            }
+            case "RULE": {         // day, time, encoded recurrence
+                Lecture lecture = current.get(f[0], f[1]).withRecurrence(Recurrence.decode(f[2]));
+                timetable.set(current.with(lecture, version));
+                break;
+            }
+            case "UNDOABLE": {     // snapshot only: day, time, class, module, type[, recurrence[, room, lecturer]]
+                removedLectures.put(f[0] + "," + f[1], withRule(new Lecture(f[1], f[0], f[2], f[3], f[4]), f, 5));
+                break;
+            }
+            case "PATCH": {        // day, time, class, module, type, recurrence, room, lecturer, ... (empty class: slot cleared)
+                Map<String, Map<String, Lecture>> changes = new HashMap<>();
+                for (int i = 0; i + 7 < f.length; i += 8) {
+                    Lecture before = current.get(f[i], f[i + 1]);
+                    Lecture after = f[i + 2].isEmpty() ? null
+                            : withRule(new Lecture(f[i + 1], f[i], f[i + 2], f[i + 3], f[i + 4]), f, i + 5);
+                    if (before != null) {
+                        aggregates.lectureRemoved(before);
+                        resources.lectureRemoved(before);
+                    }
+                    if (after != null) {
+                        aggregates.lectureAdded(after);
+                        resources.lectureAdded(after);
+                    }
+                    else if (before != null)
+                        removedLectures.put(f[i] + "," + f[i + 1], before);
+                    changes.computeIfAbsent(f[i], d -> new HashMap<>()).put(f[i + 1], after);
+                }
+                timetable.set(current.patched(changes, version));
+                break;
+            }
+            case "REPLACE":        // csv text
+                try {
+                    installTimetable(parseCSV(f[0]), version);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Replicated import failed: " + e.getMessage(), e);
+                }
+                break;
+            case "HIST":           // history entry
+                historyLog.add(f[0]);
+                break;
+            case "HOLD":           // kind, name, day, time, holder
+                resources.hold(ResourceIndex.Kind.parse(f[0]), f[1], f[2], f[3], f[4]);
+                break;
+            case "UNHOLD":         // kind, name, day, time
+                resources.release(ResourceIndex.Kind.parse(f[0]), f[1], f[2], f[3]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record type: " + record.type());
+        }
+        // Replacements checkpoint themselves in installTimetable; everything else is recorded as slot events.
+        TimetableSnapshot updated = timetable.get();
+        if (updated != current && !record.type().equals("REPLACE"))
+            history.record(current, updated, version);
+    }
+
+    // One GET_LECTURES line: "day,time: class (module, type)[ @ room[, lecturer]]".
+    static String listingLine(String day, String time, Lecture lec) {
+        return day + "," + time + ": " + lec.getClassName() + " (" + lec.getModule() + ", "
+                + lec.getLectureType() + ")" + resourceSuffix(lec);
+    }
+
+    // " @ room, lecturer" at the end of a listing line, when the lecture has either ("-" for no room).
+    static String resourceSuffix(Lecture l) {
+        if (l.getRoom().isEmpty() && l.getLecturer().isEmpty())
+            return "";
+        String room = l.getRoom().isEmpty() ? "-" : l.getRoom();
+        return l.getLecturer().isEmpty() ? " @ " + room : " @ " + room + ", " + l.getLecturer();
+    }
+
+    // The optional trailing lecture fields of a record: recurrence at `index` (empty for weekly), then room and
+    // lecturer.
+    private static Lecture withRule(Lecture lecture, String[] fields, int index) {
+        if (fields.length > index && !fields[index].isEmpty())
+            lecture = lecture.withRecurrence(Recurrence.decode(fields[index]));
+        return fields.length > index + 2 ? lecture.withResources(fields[index + 1], fields[index + 2]) : lecture;
+    }
+
+    // Record fields for a lecture; the recurrence and resources are only included when it has them.
+    private static String[] lectureFields(Lecture l) {
+        String[] fields = {l.getDay(), l.getTime(), l.getClassName(), l.getModule(), l.getLectureType()};
+        boolean weekly = l.getRecurrence() == Recurrence.WEEKLY;
+        boolean hasResources = !l.getRoom().isEmpty() || !l.getLecturer().isEmpty();
+        if (weekly && !hasResources)
+            return fields;
+        fields = Arrays.copyOf(fields, hasResources ? 8 : 6);
+        fields[5] = weekly ? "" : l.getRecurrence().encode();
+        if (hasResources) {
+            fields[6] = l.getRoom();
+            fields[7] = l.getLecturer();
+        }
+        return fields;
+    }
+
+    // Replica: applies the next record from the primary, keeping the primary's version numbers.
+    static void applyReplicated(ReplicationLog.Record record) {
+        lockStore();
+        try {
+            synchronized (replicationLog) {
+                replicationLog.appendReplicated(record);
+                applyRecord(record);
+            }
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    // Full state at one version, for replicas too far behind to catch up from the log tail.
+    static Map.Entry<Long, List<ReplicationLog.Record>> snapshot() {
+        lockStore();
+        try {
+            synchronized (replicationLog) {
+                long version = replicationLog.version();
+                List<ReplicationLog.Record> records = new ArrayList<>();
+                for (Map<String, Lecture> daySchedule : timetable.get().asMap().values()) {
+                    for (Lecture l : daySchedule.values())
+                        records.add(new ReplicationLog.Record(version, "PUT", lectureFields(l)));
+                }
+                for (Lecture l : removedLectures.values()) {
+                    records.add(new ReplicationLog.Record(version, "UNDOABLE", lectureFields(l)));
+                }
+                for (String[] hold : resources.holds())
+                    records.add(new ReplicationLog.Record(version, "HOLD", hold));
+                synchronized (historyLog) {
+                    for (String entry : historyLog)
+                        records.add(new ReplicationLog.Record(version, "HIST", new String[]{entry}));
+                }
+                return Map.entry(version, records);
+            }
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    // Replica: replaces all local state with a snapshot taken at `version`.
+    static void installSnapshot(long version, List<ReplicationLog.Record> records) {
+        lockStore();
+        try {
+            synchronized (replicationLog) {
+                installTimetable(Map.of(), version);
+                resources.clearHolds();
+                removedLectures.clear();
+                historyLog.clear();
+                for (ReplicationLog.Record record : records)
+                    applyRecord(record);
+                replicationLog.resetTo(version);
+                // The primary's earlier history is not part of a snapshot; AS_OF reads start here.
+                history.reset(timetable.get(), version);
+            }
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
     //---------------------- Lecture Class ----------------------
+    // Compact and immutable: day and slot are byte ordinals and type/class/module are int ids into shared
+    // dictionaries, so a lecture is one small object and each distinct name is stored once per process.
+    // Day and slot only accept the known values; any lecture type is interned like a name.
+    // The recurrence maps the weekly slot onto real dates; plain weekly lectures share Recurrence.WEEKLY.
     static class Lecture {
-        private final String time;
-        private final String day;
-        private final String className;
-        private final String module;
-        private final String lectureType;
+        private static final StringDictionary DAYS = StringDictionary.closed("day",
+                "Monday", "Tuesday", "Wednesday", "Thursday", "Friday");
+        private static final StringDictionary SLOTS = StringDictionary.closed("time slot",
+                "9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5", "5-6");
+        private static final StringDictionary TYPES = new StringDictionary(Integer.MAX_VALUE, "Lecture", "Lab", "Tutorial");
+        private static final StringDictionary CLASSES = new StringDictionary(Integer.MAX_VALUE);
+        private static final StringDictionary MODULES = new StringDictionary(Integer.MAX_VALUE);
+        // Id 0 is "": no room / no lecturer.
+        private static final StringDictionary ROOMS = new StringDictionary(Integer.MAX_VALUE, "");
+        private static final StringDictionary LECTURERS = new StringDictionary(Integer.MAX_VALUE, "");
+
+        private final byte day;
+        private final byte slot;
+        private final int lectureType;
+        private final int className;
+        private final int module;
+        private final int room;
+        private final int lecturer;
+        private final Recurrence recurrence;
 
+        // Throws IllegalArgumentException for an unknown day or slot.
         public Lecture(String time, String day, String className, String module, String lectureType) {
-            this.time = time;
+            this((byte) DAYS.idOf(day), (byte) SLOTS.idOf(time), TYPES.idOf(lectureType),
+                    CLASSES.idOf(className), MODULES.idOf(module), 0, 0, Recurrence.WEEKLY);
+        }
+
+        private Lecture(byte day, byte slot, int lectureType, int className, int module, int room, int lecturer,
+                        Recurrence recurrence) {
             this.day = day;
+            this.slot = slot;
+            this.lectureType = lectureType;
             this.className = className;
             this.module = module;
-            this.lectureType = lectureType;
+            this.room = room;
+            this.lecturer = lecturer;
+            this.recurrence = recurrence;
         }
 
-        public String getTime() { return time; }
-        public String getDay() { return day; }
-        public String getClassName() { return className; }
-        public String getModule() { return module; }
-        public String getLectureType() { return lectureType; }
+        // The same lecture in another slot of the same day (early shift); keeps its recurrence and resources.
+        public Lecture withTime(String time) {
+            return new Lecture(day, (byte) SLOTS.idOf(time), lectureType, className, module, room, lecturer, recurrence);
+        }
+
+        public Lecture withRecurrence(Recurrence recurrence) {
+            return new Lecture(day, slot, lectureType, className, module, room, lecturer, recurrence);
+        }
+
+        // Room and lecturer, "" for none.
+        public Lecture withResources(String room, String lecturer) {
+            return new Lecture(day, slot, lectureType, className, module, ROOMS.idOf(room.trim()),
+                    LECTURERS.idOf(lecturer.trim()), recurrence);
+        }
+
+        // Position of the slot in the day (dictionary order, which is chronological for the standard slots).
+        int slotOrdinal() { return slot & 0xff; }
+
+        public String getTime() { return SLOTS.nameOf(slot & 0xff); }
+        public String getDay() { return DAYS.nameOf(day & 0xff); }
+        public String getClassName() { return CLASSES.nameOf(className); }
+        public String getModule() { return MODULES.nameOf(module); }
+        public String getLectureType() { return TYPES.nameOf(lectureType); }
+        public String getRoom() { return ROOMS.nameOf(room); }
+        public String getLecturer() { return LECTURERS.nameOf(lecturer); }
+        public Recurrence getRecurrence() { return recurrence; }
     }
-}
\ No newline at end of file
+}
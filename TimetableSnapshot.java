@@ -0,0 +1,134 @@
+package com.example.timetableapp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// One immutable version of the timetable (day -> time slot -> lecture).
+// Writers never modify a snapshot: with/without/moved return a new one that copies only the days being changed
+// plus the small day index, and shares every other day's map with its predecessor. The server publishes the
+// latest snapshot through a single AtomicReference, so a reader takes one reference and renders one complete
+// version with no locks and no chance of seeing a half-applied import or early shift.
+public final class TimetableSnapshot {
+    public static final TimetableSnapshot EMPTY = new TimetableSnapshot(0, Map.of(), 0);
+
+    private final long version;
+    private final Map<String, Map<String, TimetableServer.Lecture>> days;   // all levels unmodifiable
+    private final int size;
+
+    private TimetableSnapshot(long version, Map<String, Map<String, TimetableServer.Lecture>> days, int size) {
+        this.version = version;
+        this.days = days;
+        this.size = size;
+    }
+
+    // Copies a mutable day -> slot -> lecture map (e.g. a parsed CSV) into a snapshot.
+    public static TimetableSnapshot of(Map<String, ? extends Map<String, TimetableServer.Lecture>> timetable, long version) {
+        // Re-keyed by the lectures' own (dictionary) strings, so keys share storage with the lectures.
+        Map<String, Map<String, TimetableServer.Lecture>> days = new HashMap<>();
+        int size = 0;
+        for (Map<String, TimetableServer.Lecture> slots : timetable.values()) {
+            for (TimetableServer.Lecture lecture : slots.values()) {
+                days.computeIfAbsent(lecture.getDay(), d -> new HashMap<>()).put(lecture.getTime(), lecture);
+                size++;
+            }
+        }
+        days.replaceAll((day, slots) -> Map.copyOf(slots));
+        return new TimetableSnapshot(version, Map.copyOf(days), size);
+    }
+
+    // Version of the replication log record that produced this snapshot.
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Set<String> days() {
+        return days.keySet();
+    }
+
+    // The slots of one day (empty if none); unmodifiable.
+    public Map<String, TimetableServer.Lecture> day(String day) {
+        return days.getOrDefault(day, Map.of());
+    }
+
+    public TimetableServer.Lecture get(String day, String time) {
+        return day(day).get(time);
+    }
+
+    public boolean contains(String day, String time) {
+        return day(day).containsKey(time);
+    }
+
+    // The whole timetable as nested unmodifiable maps.
+    public Map<String, Map<String, TimetableServer.Lecture>> asMap() {
+        return days;
+    }
+
+    public TimetableSnapshot with(TimetableServer.Lecture lecture, long version) {
+        Map<String, TimetableServer.Lecture> slots = new HashMap<>(day(lecture.getDay()));
+        boolean added = slots.put(lecture.getTime(), lecture) == null;
+        return withDay(lecture.getDay(), slots, size + (added ? 1 : 0), version);
+    }
+
+    public TimetableSnapshot without(String day, String time, long version) {
+        if (!contains(day, time))
+            return this;
+        Map<String, TimetableServer.Lecture> slots = new HashMap<>(day(day));
+        slots.remove(time);
+        return withDay(day, slots, size - 1, version);
+    }
+
+    // Applies a batch of moves, possibly across several days, as one new version: {day, from, to} triples.
+    public TimetableSnapshot moved(List<String[]> moves, long version) {
+        Map<String, Map<String, TimetableServer.Lecture>> touched = new HashMap<>();
+        for (String[] move : moves) {
+            Map<String, TimetableServer.Lecture> slots = touched.computeIfAbsent(move[0], d -> new HashMap<>(day(d)));
+            TimetableServer.Lecture lecture = slots.remove(move[1]).withTime(move[2]);
+            slots.put(lecture.getTime(), lecture);
+        }
+        Map<String, Map<String, TimetableServer.Lecture>> newDays = new HashMap<>(days);
+        touched.forEach((day, slots) -> newDays.put(day, Map.copyOf(slots)));
+        return new TimetableSnapshot(version, Map.copyOf(newDays), size);
+    }
+
+    // Applies slot changes (day -> time -> lecture, null to clear the slot) as one new version.
+    public TimetableSnapshot patched(Map<String, Map<String, TimetableServer.Lecture>> changes, long version) {
+        Map<String, Map<String, TimetableServer.Lecture>> newDays = new HashMap<>(days);
+        int newSize = size;
+        for (Map.Entry<String, Map<String, TimetableServer.Lecture>> e : changes.entrySet()) {
+            Map<String, TimetableServer.Lecture> slots = new HashMap<>(day(e.getKey()));
+            newSize -= slots.size();
+            e.getValue().forEach((time, lecture) -> {
+                if (lecture == null)
+                    slots.remove(time);
+                else
+                    slots.put(time, lecture);
+            });
+            newSize += slots.size();
+            if (slots.isEmpty())
+                newDays.remove(e.getKey());
+            else
+                newDays.put(e.getKey(), Map.copyOf(slots));
+        }
+        return new TimetableSnapshot(version, Map.copyOf(newDays), newSize);
+    }
+
+    // Path copy: a new day index pointing at the new day map and at every other day's existing map.
+    private TimetableSnapshot withDay(String day, Map<String, TimetableServer.Lecture> slots, int newSize, long version) {
+        Map<String, Map<String, TimetableServer.Lecture>> newDays = new HashMap<>(days);
+        if (slots.isEmpty())
+            newDays.remove(day);
+        else
+            newDays.put(day, Map.copyOf(slots));
+        return new TimetableSnapshot(version, Map.copyOf(newDays), newSize);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.timetableapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// AS_OF reconstruction against histories of increasing length: the cost should stay flat (one checkpoint plus at
+// most checkpointEvery replayed events) rather than grow with the number of recorded changes.
+// Compare with RenderBenchmark for the cost of rendering the result.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsOfBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int changes;
+
+    private final TimetableHistory history = new TimetableHistory();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Random adds and removes over a full week, each recorded as the server would after applying it.
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        TimetableSnapshot current = TimetableSnapshot.EMPTY;
+        for (int v = 1; v <= changes; v++) {
+            String day = BenchmarkFixtures.DAYS[random.nextInt(5)];
+            String time = BenchmarkFixtures.TIMES[random.nextInt(9)];
+            TimetableSnapshot next = current.contains(day, time)
+                    ? current.without(day, time, v)
+                    : current.with(new TimetableServer.Lecture(time, day, "Class" + v % 30, "Module" + v % 7, "Lecture"), v);
+            history.record(current, next, v);
+            current = next;
+        }
+    }
+
+    @Benchmark
+    public TimetableSnapshot asOfVersion() {
+        return history.asOfVersion(1 + ThreadLocalRandom.current().nextInt(changes));
+    }
+
+    @Benchmark
+    public TimetableSnapshot asOfTime() {
+        return history.asOfTime(System.currentTimeMillis());
+    }
+}
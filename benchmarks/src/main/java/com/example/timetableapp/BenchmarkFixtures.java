@@ -0,0 +1,59 @@
+package com.example.timetableapp;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+// Shared helpers for seeding the server's static state between benchmark runs.
+final class BenchmarkFixtures {
+
+    static final String[] DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
+    static final String[] TIMES = {"9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5", "5-6"};
+    static final String[] CSV_TIMES = {"9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5"};
+
+    private BenchmarkFixtures() {
+    }
+
+    // Handler whose responses are discarded, so only the server-side work is measured.
+    static TimetableServer.ClientHandler newHandler() {
+        return new TimetableServer.ClientHandler(null, new PrintWriter(Writer.nullWriter()));
+    }
+
+    static void clearState() {
+        TimetableServer.timetable.set(TimetableSnapshot.EMPTY);
+        TimetableServer.historyLog.clear();
+    }
+
+    // Fills the first `count` slots in day-major order (max 45).
+    static void fillTimetable(int count) {
+        clearState();
+        Map<String, Map<String, TimetableServer.Lecture>> week = new HashMap<>();
+        int placed = 0;
+        for (String day : DAYS) {
+            for (String time : TIMES) {
+                if (placed++ >= count)
+                    break;
+                week.computeIfAbsent(day, d -> new HashMap<>())
+                        .put(time, new TimetableServer.Lecture(time, day, "Class" + placed, "Module" + (placed % 7), "Lecture"));
+            }
+        }
+        TimetableServer.timetable.set(TimetableSnapshot.of(week, 0));
+    }
+
+    // A valid import file: one full row per allowed time, followed by `fillerRows` empty rows.
+    static String csv(int fillerRows) {
+        StringBuilder sb = new StringBuilder("Time,Monday,Tuesday,Wednesday,Thursday,Friday\n");
+        for (String time : CSV_TIMES) {
+            sb.append(time);
+            for (int d = 0; d < DAYS.length; d++) {
+                sb.append(",\"Class").append(d).append("(Module").append(d).append(",Lab)\"");
+            }
+            sb.append("\n");
+        }
+        for (int i = 0; i < fillerRows; i++) {
+            sb.append(CSV_TIMES[i % CSV_TIMES.length]).append(",---,---,---,---,---\n");
+        }
+        return sb.toString();
+    }
+}
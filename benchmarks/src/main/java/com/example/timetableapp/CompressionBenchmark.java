@@ -0,0 +1,139 @@
+package com.example.timetableapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// One response through the connection codec and back: encode, cross a simulated link, decode.
+// mode=plain is the text protocol as-is, mode=deflate is StreamCompression's framing with a long-lived
+// Deflater/Inflater pair, as on a real connection. linkMbps adds the transfer time of the encoded bytes
+// (0 = no link, i.e. codec CPU cost only). The wireBytes/payloadBytes counters give the size saving.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+
+    @Param({"ADD_LECTURE", "GET_LECTURES", "VIEW_HISTORY", "IMPORT_CSV"})
+    public String message;
+
+    @Param({"plain", "deflate"})
+    public String mode;
+
+    @Param({"0", "10", "100"})
+    public int linkMbps;
+
+    private byte[] payload;
+    private final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    private final Feed feed = new Feed();
+    private StreamCompression.FrameOutputStream encoder;
+    private StreamCompression.FrameInputStream decoder;
+    private byte[] decoded;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long wireBytes;
+        public long payloadBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        payload = sample(message).getBytes(StandardCharsets.UTF_8);
+        decoded = new byte[payload.length];
+        encoder = new StreamCompression.FrameOutputStream(wire);
+        decoder = new StreamCompression.FrameInputStream(feed);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        encoder.close();
+        decoder.close();
+    }
+
+    @Benchmark
+    public byte[] roundTrip(Bytes bytes) throws IOException {
+        wire.reset();
+        if (mode.equals("plain")) {
+            wire.write(payload);
+        } else {
+            encoder.write(payload, 0, payload.length);
+            encoder.flush();
+        }
+        byte[] sent = wire.toByteArray();
+        if (linkMbps > 0)
+            LockSupport.parkNanos(sent.length * 8L * 1000 / linkMbps);
+        feed.set(sent);
+        InputStream in = mode.equals("plain") ? feed : decoder;
+        int n = 0;
+        while (n < decoded.length)
+            n += in.read(decoded, n, decoded.length - n);
+        bytes.wireBytes += sent.length;
+        bytes.payloadBytes += payload.length;
+        return decoded;
+    }
+
+    // Response or request text as the server and client actually produce it.
+    private static String sample(String message) {
+        StringBuilder sb = new StringBuilder();
+        switch (message) {
+            case "ADD_LECTURE":
+                return "Lecture added successfully.\n";
+            case "GET_LECTURES":
+                int i = 0;
+                for (String day : BenchmarkFixtures.DAYS) {
+                    for (String time : BenchmarkFixtures.TIMES) {
+                        sb.append(day).append(",").append(time).append(": Class").append(i++ % 30)
+                                .append(" (Module").append(i % 7).append(", ").append(i % 3 == 0 ? "Lab" : "Lecture")
+                                .append(")\n");
+                    }
+                }
+                return sb.append("\n").toString();
+            case "VIEW_HISTORY":
+                for (int e = 0; e < 500; e++) {
+                    sb.append(String.format("Lecture added: %s | %s | %s | %s | %s : %s%n",
+                            BenchmarkFixtures.DAYS[e % 5], BenchmarkFixtures.TIMES[e % 9], "Class" + e % 30,
+                            "Module" + e % 7, e % 3 == 0 ? "Lab" : "Lecture", new Date()));
+                }
+                return sb.append("\n").toString();
+            case "IMPORT_CSV":
+                return "IMPORT_CSV\nBEGIN_CSV\n" + BenchmarkFixtures.csv(0) + "END_CSV\n";
+            default:
+                throw new IllegalArgumentException(message);
+        }
+    }
+
+    // Input stream over whatever was last put on the simulated wire.
+    private static class Feed extends InputStream {
+        private byte[] data = new byte[0];
+        private int pos;
+
+        void set(byte[] data) {
+            this.data = data;
+            this.pos = 0;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= data.length)
+                return -1;
+            int n = Math.min(len, data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.timetableapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// parseCSVAndReplaceTimetable on a minimal file and on one padded with thousands of rows,
+// and parseCSVLine on short and very wide lines.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvImportBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CsvFile {
+        @Param({"0", "100000"})
+        public int fillerRows;
+        String text;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            text = BenchmarkFixtures.csv(fillerRows);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CsvLine {
+        @Param({"16", "16384"})
+        public int cellWidth;
+        String line;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            String cell = "\"" + "x".repeat(Math.max(0, cellWidth - 8)) + "(M,Lab)\"";
+            StringBuilder sb = new StringBuilder("9-10");
+            for (int d = 0; d < 5; d++) {
+                sb.append(",").append(cell);
+            }
+            line = sb.toString();
+        }
+    }
+
+    @Benchmark
+    public void parseAndReplace(CsvFile file) throws Exception {
+        TimetableServer.parseCSVAndReplaceTimetable(file.text);
+    }
+
+    @Benchmark
+    public String[] parseLine(CsvLine line) throws Exception {
+        return TimetableServer.parseCSVLine(line.line, 6);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.timetableapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// EARLY_LECTURES on a week where every lecture sits in the afternoon, so each call does a full shift.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EarlyShiftBenchmark {
+
+    private static final String[] LATE_SLOTS = {"2-3", "3-4", "4-5", "5-6"};
+
+    @Setup(Level.Invocation)
+    public void lateWeek() {
+        BenchmarkFixtures.clearState();
+        Map<String, Map<String, TimetableServer.Lecture>> week = new HashMap<>();
+        for (String day : BenchmarkFixtures.DAYS) {
+            Map<String, TimetableServer.Lecture> schedule = new HashMap<>();
+            for (String time : LATE_SLOTS) {
+                schedule.put(time, new TimetableServer.Lecture(time, day, "Class", "Module", "Lecture"));
+            }
+            week.put(day, schedule);
+        }
+        TimetableServer.timetable.set(TimetableSnapshot.of(week, 0));
+    }
+
+    @Benchmark
+    public String shiftEarlyLectures() {
+        return TimetableServer.shiftEarlyLectures();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.timetableapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// History append (formatted entry into the synchronized log) and VIEW_HISTORY over logs of different lengths.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class EmptyLog {
+        @Setup(Level.Iteration)
+        public void reset() {
+            BenchmarkFixtures.clearState();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilledLog {
+        @Param({"10", "10000"})
+        public int entries;
+        TimetableServer.ClientHandler handler;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            BenchmarkFixtures.clearState();
+            for (int i = 0; i < entries; i++) {
+                TimetableServer.historyLog.add(String.format("Lecture added: %s | %s | %s | %s | %s : %s",
+                        "Monday", "9-10", "Class" + i, "Module", "Lecture", new Date()));
+            }
+            handler = BenchmarkFixtures.newHandler();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append1Thread(EmptyLog log) {
+        append();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void append4Threads(EmptyLog log) {
+        append();
+    }
+
+    private static void append() {
+        TimetableServer.historyLog.add(String.format("Lecture added: %s | %s | %s | %s | %s : %s",
+                "Monday", "9-10", "Class", "Module", "Lecture", new Date()));
+    }
+
+    @Benchmark
+    public void read(FilledLog log) {
+        log.handler.handleViewHistory();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.timetableapp;
+
+// Retained heap of N lectures built the way the server builds them: from freshly split protocol/CSV text,
+// so every field arrives as its own String. Not a JMH benchmark; run it directly:
+//   java -cp ... com.example.timetableapp.LectureFootprint [count]
+public class LectureFootprint {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        // Same distinct-value mix as BenchmarkFixtures: 30 classes, 7 modules, 3 types.
+        String[] types = {"Lecture", "Lab", "Tutorial"};
+        long before = usedHeap();
+        TimetableServer.Lecture[] lectures = new TimetableServer.Lecture[count];
+        for (int i = 0; i < count; i++) {
+            String line = "ADD_LECTURE," + BenchmarkFixtures.TIMES[i % 9] + "," + BenchmarkFixtures.DAYS[i % 5]
+                    + ",Class" + i % 30 + ",Module" + i % 7 + "," + types[i % 3];
+            String[] p = line.split(",");
+            lectures[i] = new TimetableServer.Lecture(p[1], p[2], p[3], p[4], p[5]);
+        }
+        long after = usedHeap();
+        System.out.printf("%d lectures: %.2f MB retained, %d bytes/lecture%n",
+                count, (after - before) / 1e6, (after - before) / count);
+        if (lectures[count - 1] == null)
+            throw new AssertionError();
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
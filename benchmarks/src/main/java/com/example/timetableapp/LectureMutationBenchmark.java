@@ -0,0 +1,71 @@
+package com.example.timetableapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// ADD_LECTURE followed by REMOVE_LECTURE on a random slot, at increasing thread counts.
+// Each thread owns its handler, mirroring one ClientHandler per connection. Use -t to try other counts.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LectureMutationBenchmark {
+
+    @State(Scope.Thread)
+    public static class Connection {
+        TimetableServer.ClientHandler handler;
+        SplittableRandom random;
+        String[] addCommands;
+        String[] removeCommands;
+
+        @Setup
+        public void setup() {
+            handler = BenchmarkFixtures.newHandler();
+            random = new SplittableRandom(Thread.currentThread().threadId());
+            int slots = BenchmarkFixtures.DAYS.length * BenchmarkFixtures.TIMES.length;
+            addCommands = new String[slots];
+            removeCommands = new String[slots];
+            int i = 0;
+            for (String day : BenchmarkFixtures.DAYS) {
+                for (String time : BenchmarkFixtures.TIMES) {
+                    addCommands[i] = "ADD_LECTURE," + time + "," + day + ",Class" + i + ",Module" + i + ",Lecture";
+                    removeCommands[i] = "REMOVE_LECTURE," + day + "," + time;
+                    i++;
+                }
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        BenchmarkFixtures.clearState();
+    }
+
+    private static void addThenRemove(Connection c) {
+        int slot = c.random.nextInt(c.addCommands.length);
+        c.handler.handleAddLecture(c.addCommands[slot]);
+        c.handler.handleRemoveLecture(c.removeCommands[slot]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addRemove1Thread(Connection c) {
+        addThenRemove(c);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addRemove4Threads(Connection c) {
+        addThenRemove(c);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void addRemoveMaxThreads(Connection c) {
+        addThenRemove(c);
+    }
+}
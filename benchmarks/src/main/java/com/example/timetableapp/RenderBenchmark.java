@@ -0,0 +1,36 @@
+package com.example.timetableapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// VIEW_TIMETABLE and GET_LECTURES rendering against an empty, partly filled and full week.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    @Param({"0", "20", "45"})
+    public int lectures;
+
+    private TimetableServer.ClientHandler handler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkFixtures.fillTimetable(lectures);
+        handler = BenchmarkFixtures.newHandler();
+    }
+
+    @Benchmark
+    public void viewTimetable() {
+        handler.handleViewTimetable();
+    }
+
+    @Benchmark
+    public void getLectures() {
+        handler.handleGetLectures();
+    }
+}
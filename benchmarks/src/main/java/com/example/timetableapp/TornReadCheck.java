@@ -0,0 +1,74 @@
+package com.example.timetableapp;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Regression check for torn reads. Not a JMH benchmark; run it directly:
+//   java -cp ... com.example.timetableapp.TornReadCheck [seconds]
+// One thread keeps replacing the timetable with two full weeks in turn (the IMPORT_CSV path) while this thread
+// renders VIEW_TIMETABLE, which reads without the store lock. Every render must show exactly one of the two weeks;
+// a mix of both is a torn read. Exits with status 1 if any render was torn.
+public class TornReadCheck {
+    private static final int CELLS = BenchmarkFixtures.CSV_TIMES.length * BenchmarkFixtures.DAYS.length;
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        String[] weeks = {csv("Even"), csv("Odd")};
+        BenchmarkFixtures.clearState();
+        TimetableServer.parseCSVAndReplaceTimetable(weeks[0]);
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread importer = new Thread(() -> {
+            try {
+                for (int i = 1; !done.get(); i++)
+                    TimetableServer.parseCSVAndReplaceTimetable(weeks[i % 2]);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, "importer");
+        importer.start();
+
+        StringWriter reply = new StringWriter();
+        TimetableServer.ClientHandler viewer = new TimetableServer.ClientHandler(null, new PrintWriter(reply, true));
+        long renders = 0, torn = 0;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            reply.getBuffer().setLength(0);
+            viewer.handleViewTimetable();
+            String view = reply.toString();
+            int even = count(view, "Even"), odd = count(view, "Odd");
+            if (!(even == CELLS && odd == 0 || odd == CELLS && even == 0)) {
+                if (torn++ < 3)
+                    System.out.println("Torn render (" + even + " even, " + odd + " odd):\n" + view);
+            }
+            renders++;
+        }
+        done.set(true);
+        importer.join();
+
+        System.out.printf("%d renders, %d torn%n", renders, torn);
+        if (torn > 0)
+            System.exit(1);
+    }
+
+    private static int count(String text, String token) {
+        int n = 0;
+        for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + token.length()))
+            n++;
+        return n;
+    }
+
+    // A full week in which every cell's class name starts with `prefix`.
+    private static String csv(String prefix) {
+        StringBuilder sb = new StringBuilder("Time,Monday,Tuesday,Wednesday,Thursday,Friday\n");
+        for (String time : BenchmarkFixtures.CSV_TIMES) {
+            sb.append(time);
+            for (int d = 0; d < BenchmarkFixtures.DAYS.length; d++)
+                sb.append(",\"").append(prefix).append(time).append("(Module,Lab)\"");
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
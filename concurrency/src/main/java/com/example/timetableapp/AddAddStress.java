@@ -0,0 +1,45 @@
+package com.example.timetableapp;
+
+// Two ADD_LECTUREs for the same empty slot: exactly one wins, the other sees the slot taken, and the store and
+// history agree on the winner.
+class AddAddStress extends StressCase {
+
+    private final Connection first = new Connection();
+    private final Connection second = new Connection();
+
+    AddAddStress() {
+        super("ADD_LECTURE vs ADD_LECTURE on the same slot");
+        acceptable("added, taken | 9-10=ClassA, history=1", "actor1 added first; actor2 found the slot taken");
+        acceptable("taken, added | 9-10=ClassB, history=1", "actor2 added first; actor1 found the slot taken");
+    }
+
+    @Override
+    void reset() {
+        clearState();
+    }
+
+    @Override
+    String actor1() {
+        first.handler.handleAddLecture("ADD_LECTURE,9-10,Monday,ClassA,ModuleA,Lecture");
+        return outcome(first.reply());
+    }
+
+    @Override
+    String actor2() {
+        second.handler.handleAddLecture("ADD_LECTURE,9-10,Monday,ClassB,ModuleB,Lab");
+        return outcome(second.reply());
+    }
+
+    @Override
+    String arbiter() {
+        return describeDay("Monday") + ", history=" + TimetableServer.historyLog.size();
+    }
+
+    private static String outcome(String reply) {
+        if (reply.startsWith("Lecture added successfully."))
+            return "added";
+        if (reply.startsWith("Timeslot already taken!"))
+            return "taken";
+        return reply.trim();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.timetableapp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// EARLY_LECTURES against an ADD_LECTURE into the first early slot. Monday starts with one lecture at 2-3. If the
+// shift runs first the lecture moves to 9-10 and the add finds it taken; if the add runs first the shift works
+// from a snapshot that already has the new lecture and moves ClassL to 10-11 instead. A lecture lost, duplicated
+// or moved over the added one means the shift planned against a stale snapshot.
+class EarlyShiftAddStress extends StressCase {
+
+    private final Connection adder = new Connection();
+
+    EarlyShiftAddStress() {
+        super("EARLY_LECTURES vs ADD_LECTURE on the first early slot");
+        acceptable("shifted, taken | 9-10=ClassL", "shift first moved ClassL to 9-10; the add found it taken");
+        acceptable("shifted, added | 9-10=ClassN 10-11=ClassL", "add first; the shift moved ClassL to the next free slot");
+    }
+
+    @Override
+    void reset() {
+        clearState();
+        Map<String, Map<String, TimetableServer.Lecture>> week = new HashMap<>();
+        week.computeIfAbsent("Monday", d -> new HashMap<>())
+                .put("2-3", new TimetableServer.Lecture("2-3", "Monday", "ClassL", "ModuleL", "Lecture"));
+        TimetableServer.timetable.set(TimetableSnapshot.of(week, 0));
+    }
+
+    @Override
+    String actor1() {
+        TimetableServer.shiftEarlyLectures();
+        return "shifted";
+    }
+
+    @Override
+    String actor2() {
+        adder.handler.handleAddLecture("ADD_LECTURE,9-10,Monday,ClassN,ModuleN,Lab");
+        String reply = adder.reply();
+        if (reply.startsWith("Lecture added successfully."))
+            return "added";
+        if (reply.startsWith("Timeslot already taken!"))
+            return "taken";
+        return reply.trim();
+    }
+
+    @Override
+    String arbiter() {
+        return describeDay("Monday");
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.timetableapp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// IMPORT_CSV against VIEW_TIMETABLE. The view reads without the store lock, so it must still see one whole week:
+// every cell from the old timetable or every cell from the imported one, never a mix (a torn read).
+// The harness form of the benchmarks module's TornReadCheck: one import per round, with every outcome counted.
+class ImportViewStress extends StressCase {
+
+    private static final String[] CSV_TIMES = {"9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5"};
+    private static final int CELLS = CSV_TIMES.length * DAYS.length;
+    private static final String NEW_WEEK = csv("New");
+
+    private final Connection viewer = new Connection();
+
+    ImportViewStress() {
+        super("IMPORT_CSV vs VIEW_TIMETABLE (torn reads)");
+        acceptable("imported, old | new week", "view before the import: the whole old week");
+        acceptable("imported, new | new week", "view after the import: the whole new week");
+    }
+
+    @Override
+    void reset() {
+        clearState();
+        Map<String, Map<String, TimetableServer.Lecture>> week = new HashMap<>();
+        for (String day : DAYS) {
+            Map<String, TimetableServer.Lecture> schedule = new HashMap<>();
+            for (String time : CSV_TIMES)
+                schedule.put(time, new TimetableServer.Lecture(time, day, "Old" + time, "Module", "Lecture"));
+            week.put(day, schedule);
+        }
+        TimetableServer.timetable.set(TimetableSnapshot.of(week, 0));
+    }
+
+    @Override
+    String actor1() throws Exception {
+        TimetableServer.parseCSVAndReplaceTimetable(NEW_WEEK);
+        return "imported";
+    }
+
+    @Override
+    String actor2() {
+        viewer.handler.handleViewTimetable();
+        String view = viewer.reply();
+        int old = count(view, "Old");
+        int imported = count(view, "New");
+        if (old == CELLS && imported == 0)
+            return "old";
+        if (imported == CELLS && old == 0)
+            return "new";
+        return "torn (" + old + " old, " + imported + " new)";
+    }
+
+    @Override
+    String arbiter() {
+        TimetableSnapshot snapshot = TimetableServer.timetable.get();
+        int imported = 0;
+        for (String day : DAYS) {
+            for (String time : CSV_TIMES) {
+                TimetableServer.Lecture lecture = snapshot.get(day, time);
+                if (lecture != null && lecture.getClassName().startsWith("New"))
+                    imported++;
+            }
+        }
+        return imported == CELLS && snapshot.size() == CELLS
+                ? "new week" : imported + " new cells, size " + snapshot.size();
+    }
+
+    private static int count(String text, String token) {
+        int n = 0;
+        for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + token.length()))
+            n++;
+        return n;
+    }
+
+    private static String csv(String prefix) {
+        StringBuilder sb = new StringBuilder("Time,Monday,Tuesday,Wednesday,Thursday,Friday\n");
+        for (String time : CSV_TIMES) {
+            sb.append(time);
+            for (int d = 0; d < DAYS.length; d++)
+                sb.append(",\"").append(prefix).append(time).append("(Module,Lab)\"");
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
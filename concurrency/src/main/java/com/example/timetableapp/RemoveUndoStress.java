@@ -0,0 +1,57 @@
+package com.example.timetableapp;
+
+// REMOVE_LECTURE against UNDO_REMOVE on the same slot. Before each round the slot holds ClassA and the undo map
+// already holds an earlier removal of it, so the undo has something to restore whichever way the race goes:
+// either the remove lands first and the undo puts the lecture back, or the undo finds the slot still occupied
+// and the remove then empties it. An undo that restores over a lecture, or a restore the store loses, is a bug.
+class RemoveUndoStress extends StressCase {
+
+    private final Connection setup = new Connection();
+    private final Connection remover = new Connection();
+    private final Connection undoer = new Connection();
+
+    RemoveUndoStress() {
+        super("REMOVE_LECTURE vs UNDO_REMOVE on the same slot");
+        acceptable("removed, restored | 9-10=ClassA, history=2", "remove first, then the undo restored the lecture");
+        acceptable("removed, occupied | empty, history=1", "undo first found the slot occupied, then the remove");
+    }
+
+    @Override
+    void reset() {
+        clearState();
+        setup.handler.handleAddLecture("ADD_LECTURE,9-10,Monday,ClassA,ModuleA,Lecture");
+        setup.handler.handleRemoveLecture("REMOVE_LECTURE,Monday,9-10");
+        setup.handler.handleAddLecture("ADD_LECTURE,9-10,Monday,ClassA,ModuleA,Lecture");
+        setup.reply();
+        TimetableServer.historyLog.clear();
+    }
+
+    @Override
+    String actor1() {
+        remover.handler.handleRemoveLecture("REMOVE_LECTURE,Monday,9-10");
+        String reply = remover.reply();
+        if (reply.startsWith("Lecture removed successfully."))
+            return "removed";
+        if (reply.startsWith("No lecture scheduled"))
+            return "nothing to remove";
+        return reply.trim();
+    }
+
+    @Override
+    String actor2() {
+        undoer.handler.handleUndoRemove("UNDO_REMOVE,Monday,9-10");
+        String reply = undoer.reply();
+        if (reply.startsWith("Undo successful"))
+            return "restored";
+        if (reply.startsWith("Undo failed: Timeslot already occupied."))
+            return "occupied";
+        if (reply.startsWith("No lecture to undo."))
+            return "nothing to undo";
+        return reply.trim();
+    }
+
+    @Override
+    String arbiter() {
+        return describeDay("Monday") + ", history=" + TimetableServer.historyLog.size();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.timetableapp;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One race on the server's shared store, in the shape of a jcstress test: reset() sets up the state, actor1()
+// and actor2() then run at the same moment on two threads, and arbiter() looks at the store once both are done.
+// The observed outcome "actor1, actor2 | arbiter" must be one of the declared acceptable outcomes; any other is
+// forbidden and fails the run. The store is static, so cases run one iteration at a time rather than over many
+// independent state objects as jcstress would.
+abstract class StressCase {
+
+    static final String[] DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
+    static final String[] TIMES = {"9-10", "10-11", "11-12", "12-1", "1-2", "2-3", "3-4", "4-5", "5-6"};
+
+    private final String description;
+    private final Map<String, String> acceptable = new LinkedHashMap<>();
+
+    StressCase(String description) {
+        this.description = description;
+    }
+
+    protected final void acceptable(String outcome, String interpretation) {
+        acceptable.put(outcome, interpretation);
+    }
+
+    String description() {
+        return description;
+    }
+
+    Map<String, String> acceptable() {
+        return Collections.unmodifiableMap(acceptable);
+    }
+
+    abstract void reset() throws Exception;
+
+    abstract String actor1() throws Exception;
+
+    abstract String actor2() throws Exception;
+
+    abstract String arbiter();
+
+    //---------------------- Helpers ----------------------
+    static void clearState() {
+        TimetableServer.timetable.set(TimetableSnapshot.EMPTY);
+        TimetableServer.historyLog.clear();
+        TimetableServer.resources.rebuild(Map.of());
+        TimetableServer.resources.clearHolds();
+    }
+
+    // "time=class" for each lecture of the day in slot order, or "empty".
+    static String describeDay(String day) {
+        TimetableSnapshot snapshot = TimetableServer.timetable.get();
+        StringBuilder sb = new StringBuilder();
+        for (String time : TIMES) {
+            TimetableServer.Lecture lecture = snapshot.get(day, time);
+            if (lecture != null) {
+                if (sb.length() > 0)
+                    sb.append(' ');
+                sb.append(time).append('=').append(lecture.getClassName());
+            }
+        }
+        return sb.length() == 0 ? "empty" : sb.toString();
+    }
+
+    // An in-process connection: the handler writes its replies to a buffer instead of a socket.
+    static final class Connection {
+        private final StringWriter buffer = new StringWriter();
+        final TimetableServer.ClientHandler handler =
+                new TimetableServer.ClientHandler(null, new PrintWriter(buffer, true));
+
+        // Everything written since the last call.
+        String reply() {
+            String text = buffer.toString();
+            buffer.getBuffer().setLength(0);
+            return text;
+        }
+    }
+}
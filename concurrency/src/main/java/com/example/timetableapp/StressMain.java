@@ -0,0 +1,106 @@
+package com.example.timetableapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Entry point of concurrency.jar: runs each stress case for -Dstress.iterations rounds (default 20000) and
+// prints how often each outcome was seen, jcstress style. Exits with status 1 if any forbidden outcome shows up.
+// Arguments pick cases by class name (e.g. AddAddStress); no arguments runs them all.
+public class StressMain {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = Integer.getInteger("stress.iterations", 20_000);
+        // Every round commits records; keep the in-memory log and history small before the server classes load.
+        System.setProperty("timetable.replication.retain", System.getProperty("timetable.replication.retain", "1000"));
+        System.setProperty("timetable.history.retain", System.getProperty("timetable.history.retain", "1000"));
+
+        List<StressCase> cases = new ArrayList<>(List.of(
+                new AddAddStress(), new RemoveUndoStress(), new EarlyShiftAddStress(), new ImportViewStress()));
+        if (args.length > 0)
+            cases.removeIf(c -> !List.of(args).contains(c.getClass().getSimpleName()));
+
+        List<String> failed = new ArrayList<>();
+        for (StressCase stressCase : cases) {
+            Map<String, Long> outcomes = run(stressCase, iterations);
+            if (!report(stressCase, outcomes, iterations))
+                failed.add(stressCase.getClass().getSimpleName());
+        }
+        if (!failed.isEmpty()) {
+            System.out.println("FAILED: " + String.join(", ", failed));
+            System.exit(1);
+        }
+        System.out.println("All " + cases.size() + " cases passed.");
+    }
+
+    // Both actors wait for the round number, so they start together; the main thread resets the state between
+    // rounds while they are parked. A short random spin before each actor varies which one gets in first.
+    static Map<String, Long> run(StressCase stressCase, int iterations) throws Exception {
+        AtomicInteger round = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        String[] results = new String[2];
+        for (int index = 0; index < 2; index++) {
+            int actor = index;
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= iterations; i++) {
+                    await(round, i);
+                    for (int spins = ThreadLocalRandom.current().nextInt(64); spins > 0; spins--)
+                        Thread.onSpinWait();
+                    String result;
+                    try {
+                        result = actor == 0 ? stressCase.actor1() : stressCase.actor2();
+                    } catch (Exception e) {
+                        result = e.toString();
+                    }
+                    results[actor] = result;
+                    finished.incrementAndGet();
+                }
+            }, "actor" + (actor + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Map<String, Long> outcomes = new TreeMap<>();
+        for (int i = 1; i <= iterations; i++) {
+            stressCase.reset();
+            finished.set(0);
+            round.set(i);
+            await(finished, 2);
+            String outcome = results[0] + ", " + results[1] + " | " + stressCase.arbiter();
+            outcomes.merge(outcome, 1L, Long::sum);
+        }
+        return outcomes;
+    }
+
+    // Spins briefly, then yields, so the harness still makes progress on a single core.
+    private static void await(AtomicInteger counter, int target) {
+        for (int spins = 0; counter.get() < target; spins++) {
+            if (spins < 100)
+                Thread.onSpinWait();
+            else
+                Thread.yield();
+        }
+    }
+
+    // Prints the outcome table and returns false if a forbidden outcome was observed.
+    private static boolean report(StressCase stressCase, Map<String, Long> outcomes, int iterations) {
+        Map<String, String> acceptable = stressCase.acceptable();
+        boolean ok = acceptable.keySet().containsAll(outcomes.keySet());
+        System.out.printf("[%s] %s (%s, %d rounds)%n", ok ? "OK" : "FAILED", stressCase.description(),
+                stressCase.getClass().getSimpleName(), iterations);
+        System.out.printf("  %12s  %-11s %s%n", "Occurrences", "Expectation", "Outcome");
+        for (Map.Entry<String, String> entry : acceptable.entrySet()) {
+            System.out.printf("  %12d  %-11s %s  (%s)%n", outcomes.getOrDefault(entry.getKey(), 0L), "ACCEPTABLE",
+                    entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Long> entry : outcomes.entrySet()) {
+            if (!acceptable.containsKey(entry.getKey()))
+                System.out.printf("  %12d  %-11s %s%n", entry.getValue(), "FORBIDDEN", entry.getKey());
+        }
+        System.out.println();
+        return ok;
+    }
+}
@@ -1,6 +1,8 @@
 module com.example.timetableapp {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management;
+    requires jdk.httpserver;
 
 
     opens com.example.timetableapp to javafx.fxml;